@@ -0,0 +1,82 @@
+package edu.unibi.benchmark;
+
+import edu.unibi.properties.PropertiesController;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+/**
+ * Helpers shared by the benchmarks.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class BenchmarkUtilities
+{
+    private static PrintStream console = null;
+
+    /**
+     * Creates a temporary working directory.
+     * @return
+     * @throws IOException
+     */
+    public static File CreateDirectory() throws IOException {
+        return Files.createTempDirectory("singularity-jmh").toFile();
+    }
+
+    /**
+     * Deletes a file or directory including its content.
+     * @param file
+     */
+    public static void Delete(File file) {
+        if (file == null) {
+            return;
+        }
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                Delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Creates properties holding the defaults only.
+     * @param directory directory without a properties file
+     * @return
+     */
+    public static PropertiesController CreateProperties(File directory) {
+        return new PropertiesController(new File(directory , "benchmark.properties"));
+    }
+
+    /**
+     * Discards everything printed to System.out, so the messages of the
+     * Logger do not distort the measurements. JMH reports through its own
+     * channel and is not affected.
+     */
+    public static synchronized void Silence() {
+        if (console == null) {
+            console = System.out;
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] buffer, int offset, int length) {
+                }
+            }));
+        }
+    }
+
+    /**
+     * Restores System.out.
+     */
+    public static synchronized void Restore() {
+        if (console != null) {
+            System.setOut(console);
+            console = null;
+        }
+    }
+}
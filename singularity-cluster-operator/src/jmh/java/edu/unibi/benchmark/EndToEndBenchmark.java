@@ -0,0 +1,256 @@
+package edu.unibi.benchmark;
+
+import edu.unibi.cluster.ClusterController;
+import edu.unibi.cluster.ClusterState;
+import edu.unibi.cluster.IClusterListener;
+import edu.unibi.cluster.tasks.impl.SingularityBlastp;
+import edu.unibi.main.Headless;
+import edu.unibi.main.Logger;
+import edu.unibi.main.Utilities;
+import edu.unibi.properties.PropertiesController;
+import edu.unibi.simulation.SimulatedSingularity;
+import edu.unibi.simulation.SimulatedSwift;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Profiles the client end to end without a cloud: starts a simulated
+ * Singularity and Swift in-process, attaches the ClusterController to them
+ * as to a running cluster and runs BLASTP jobs through the JobQueue. Thereby
+ * mapping, upload, submission, monitoring, download and reduction run
+ * unchanged against hundreds of simulated slaves. Prints the wall time,
+ * the throughput and the statistics of both simulated services; the jobs'
+ * metrics are written as configured by 'metrics-directory'.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class EndToEndBenchmark implements IClusterListener
+{
+    private static final String usage =
+              "Usage: java -cp <classpath> edu.unibi.benchmark.EndToEndBenchmark [options]\n"
+            + "  -i, --input <file>        input file of the jobs (default: blastp.input)\n"
+            + "  -j, --jobs <count>        number of jobs run on the input (default 1)\n"
+            + "  -n, --slaves <count>      number of simulated slaves (default 100)\n"
+            + "  -p, --properties <file>   properties file (default: openstack.properties, if present)\n"
+            + "  -t, --timeout <minutes>   aborts after the given time (default 60)\n"
+            + "  -D<key>=<value>           sets any property, e.g. -Dsimulation-task-failure-rate=0.05\n"
+            + "Exit status: 0 all jobs succeeded, 1 any job failed, 2 invalid arguments,\n"
+            + "             3 the simulation could not be started, 4 timed out";
+
+    private final BlockingQueue<Boolean> finished = new LinkedBlockingQueue();
+
+    /**
+     * Runs the benchmark and exits with the outcome's status.
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        System.exit(Run(args));
+    }
+
+    /**
+     * Parses the arguments, then runs all jobs against the simulated
+     * services.
+     * @param args the command line arguments
+     * @return the exit status
+     */
+    public static int Run(String[] args) {
+
+        File inputFile = new File("blastp.input").isFile() ? new File("blastp.input") : new File("../blastp.input");
+        File propertiesFile = new File("openstack.properties");
+        int jobs = 1;
+        int slaves = 100;
+        long timeoutMinutes = 60;
+        Properties overrides = new Properties();
+
+        // Parse arguments
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.startsWith("-D") && arg.contains("=")) {
+                    overrides.put(arg.substring(2 , arg.indexOf('=')) , arg.substring(arg.indexOf('=') + 1));
+                    continue;
+                }
+                if ("-h".equals(arg) || "--help".equals(arg)) {
+                    System.out.println(usage);
+                    return Headless.EXIT_USAGE;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of '" + arg + "'.");
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "-i": case "--input":      inputFile = new File(value); break;
+                    case "-j": case "--jobs":       jobs = Integer.parseInt(value); break;
+                    case "-n": case "--slaves":     slaves = Integer.parseInt(value); break;
+                    case "-p": case "--properties": propertiesFile = new File(value); break;
+                    case "-t": case "--timeout":    timeoutMinutes = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Unknown argument '" + arg + "'.");
+                }
+            }
+            if (!inputFile.isFile()) {
+                throw new IllegalArgumentException("Input file '" + inputFile + "' does not exist.");
+            }
+            if (jobs < 1 || slaves < 1 || timeoutMinutes < 1) {
+                throw new IllegalArgumentException("Jobs, slaves and timeout have to be positive.");
+            }
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid number: " + ex.getMessage());
+            System.err.println(usage);
+            return Headless.EXIT_USAGE;
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(usage);
+            return Headless.EXIT_USAGE;
+        }
+
+        PropertiesController properties = new PropertiesController(propertiesFile);
+        properties.put("simulation-slaves" , String.valueOf(slaves));
+        overrides.forEach(( Object key , Object value ) -> properties.put(key , value));
+        Logger.configure(properties);
+
+        SimulatedSwift swift = null;
+        SimulatedSingularity singularity = null;
+        File directory = null;
+        try {
+            directory = Files.createTempDirectory("singularity-simulation").toFile();
+            swift = new SimulatedSwift(0 , properties);
+            singularity = new SimulatedSingularity(0 , properties , swift);
+            return new EndToEndBenchmark().Execute(properties , swift , singularity , directory , inputFile , jobs ,
+                                                   timeoutMinutes);
+        } catch (IOException ex) {
+            Logger.log("Exception starting the simulation.");
+            Logger.log(ex.toString());
+            return Headless.EXIT_CLUSTER_FAILED;
+        } catch (InterruptedException ex) {
+            Logger.log("Interrupted.");
+            return Headless.EXIT_TIMEOUT;
+        } finally {
+            if (singularity != null) {
+                singularity.close();
+            }
+            if (swift != null) {
+                swift.close();
+            }
+            if (directory != null) {
+                Delete(directory);
+            }
+        }
+    }
+
+    /**
+     * Points the client at the simulated services, records them as the
+     * running cluster, and runs all jobs.
+     */
+    private int Execute(PropertiesController properties, SimulatedSwift swift, SimulatedSingularity singularity, File directory,
+                        File inputFile, int jobs, long timeoutMinutes) throws IOException, InterruptedException {
+
+        // Credentials are accepted as they are, but have to be present
+        String user = properties.get("openstack-username") != null ? properties.get("openstack-username") : "simulation";
+        properties.put("openstack-username" , user);
+        properties.put("openstack-password" , "simulation");
+        properties.put("openstack-tenantname" , "simulation");
+        properties.put("openstack-endpoint" , swift.getIdentityUrl());
+        properties.put("region" , "RegionOne");
+        properties.put("singularity-port" , String.valueOf(singularity.getPort()));
+        properties.put("webhook-host" , "127.0.0.1");
+        properties.put("slave-instance-count" , properties.get("simulation-slaves"));
+        properties.put("attach-cluster" , "yes");
+
+        File stateFile = new File(directory , "cluster.state");
+        properties.put("cluster-state-file" , stateFile.getAbsolutePath());
+        new ClusterState("simulation" , "127.0.0.1" , user , properties.get("master-instance-type") ,
+                         properties.get("slave-instance-type") , properties.get("slave-instance-count") ,
+                         "SINGULARITY-" + user + "-SIMULATION-").Save(stateFile);
+
+        ClusterController cluster = new ClusterController(this , properties);
+        for (int i = 0; i < jobs; i++) {
+            cluster.SubmitJob(user , new SingularityBlastp(properties) , inputFile , new File(directory , "output-" + (i + 1)));
+        }
+
+        long start = System.nanoTime();
+        if (!cluster.StartCluster() || !cluster.isRunning()) {
+            Logger.log("Could not attach to the simulated cluster.");
+            return Headless.EXIT_CLUSTER_FAILED;
+        }
+        Boolean success = finished.poll(timeoutMinutes , TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+
+        // The simulated cluster is left behind, there is nothing to terminate
+        ClusterState.Delete(stateFile);
+
+        List<String> report = new ArrayList();
+        if (success == null) {
+            report.add("Timed out after " + timeoutMinutes + " min.");
+        } else {
+            long bytes = 0;
+            for (int i = 0; i < jobs; i++) {
+                bytes += new File(directory , "output-" + (i + 1)).length();
+            }
+            double seconds = elapsed / 1e9;
+            report.add(String.format("%d job(s) %s on %s simulated slave(s) in %s (%.2f s)" , jobs ,
+                                     success ? "succeeded" : "failed" , properties.get("simulation-slaves") ,
+                                     Utilities.FormatDuration(elapsed / 1000000) , seconds));
+            report.add(String.format("Input: %.1f MB/s (%.1f MB per job), output: %.1f MB" ,
+                                     jobs * inputFile.length() / 1048576.0 / seconds , inputFile.length() / 1048576.0 ,
+                                     bytes / 1048576.0));
+        }
+        report.add("Singularity: " + singularity.getSummary());
+        report.add("Swift: " + swift.getSummary());
+        Logger.flush();
+        for (String line : report) {
+            System.out.println(line);
+        }
+
+        if (success == null) {
+            return Headless.EXIT_TIMEOUT;
+        }
+        return success ? Headless.EXIT_SUCCESS : Headless.EXIT_TASKS_FAILED;
+    }
+
+    /**
+     * Deletes a file or a directory including its content.
+     */
+    private static void Delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                Delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Override
+    public void ClusterStarted() {
+    }
+
+    @Override
+    public void ClusterStopped() {
+    }
+
+    @Override
+    public void ClusterFailed() {
+        finished.add(false);
+    }
+
+    @Override
+    public void TasksFinished(boolean success) {
+        finished.add(success);
+    }
+
+    /**
+     * Stores results in the temporary directory.
+     * @param defaultFile
+     * @return
+     */
+    @Override
+    public File ChooseOutputFile(File defaultFile) {
+        return defaultFile;
+    }
+}
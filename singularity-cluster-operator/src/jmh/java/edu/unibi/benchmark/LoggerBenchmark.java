@@ -0,0 +1,61 @@
+package edu.unibi.benchmark;
+
+import edu.unibi.main.Logger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the Logger, from a single thread and from
+ * threads logging concurrently, as the transfer and monitor threads do.
+ * The Logger's writer thread passes the messages in batches to a sink
+ * standing in for the GUI's log, the command line output is discarded.
+ * Once the ring buffer is full, the throughput is bounded by the writer.
+ * @author Philo Reipke, University Bielefeld
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3 , time = 2)
+@Measurement(iterations = 5 , time = 2)
+@Fork(1)
+public class LoggerBenchmark
+{
+    private final String message = "Storage: Downloaded 'output-7-3f2a': 12.4 MB, 0.8 s (15.5 MB/s).";
+
+    private volatile int received = 0;
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        BenchmarkUtilities.Silence();
+        Logger.initialize(( List<String> messages ) -> received += messages.size());
+    }
+
+    @Benchmark
+    public void Log() {
+        Logger.log(message);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void LogConcurrently() {
+        Logger.log(message);
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        BenchmarkUtilities.Restore();
+    }
+}
@@ -0,0 +1,82 @@
+package edu.unibi.benchmark;
+
+import edu.unibi.cluster.tasks.impl.SingularityBlastp;
+import edu.unibi.properties.PropertiesController;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures mapping a FASTA input to the shards of a blastp job, balanced by
+ * residues or bytes, using the cached index or streaming the input.
+ * @author Philo Reipke, University Bielefeld
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MapInputBenchmark
+{
+    @Param({ "2000" , "200000" })
+    public long records;
+
+    @Param({ "16" })
+    public int shards;
+
+    @Param({ "residues" , "bytes" })
+    public String balancing;
+
+    @Param({ "yes" , "no" })
+    public String index;
+
+    private File directory;
+    private File inputFile;
+    private File[] targetFiles;
+    private SingularityBlastp task;
+
+    @Setup(Level.Trial)
+    public void Setup() throws IOException {
+
+        BenchmarkUtilities.Silence();
+        directory = BenchmarkUtilities.CreateDirectory();
+        inputFile = new File(directory , "input.fasta");
+        SyntheticData.WriteFasta(SyntheticData.getSeedFile() , records , inputFile , 1);
+
+        targetFiles = new File[shards];
+        for (int i = 0; i < shards; i++) {
+            targetFiles[i] = new File(directory , "input-" + (i + 1));
+        }
+
+        PropertiesController properties = BenchmarkUtilities.CreateProperties(directory);
+        properties.put("shard-balancing" , balancing);
+        properties.put("fasta-index" , index);
+        task = new SingularityBlastp(properties);
+    }
+
+    @Benchmark
+    public long MapInput() throws IOException {
+        task.MapInput(inputFile , targetFiles);
+        return targetFiles[shards - 1].length();
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        BenchmarkUtilities.Delete(directory);
+        BenchmarkUtilities.Restore();
+    }
+}
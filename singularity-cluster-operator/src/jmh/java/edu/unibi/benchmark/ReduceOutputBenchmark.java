@@ -0,0 +1,88 @@
+package edu.unibi.benchmark;
+
+import edu.unibi.cluster.tasks.impl.SingularityBlastp;
+import edu.unibi.properties.PropertiesController;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reducing the tabular outputs of all shards of a blastp job into
+ * the result, appended or merged sorted by query.
+ * @author Philo Reipke, University Bielefeld
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReduceOutputBenchmark
+{
+    @Param({ "2000" , "200000" })
+    public long queries;
+
+    @Param({ "5" })
+    public int hitsPerQuery;
+
+    @Param({ "16" })
+    public int shards;
+
+    @Param({ "concat" , "sorted" })
+    public String mode;
+
+    @Param({ "0" })
+    public int topHits;
+
+    private File directory;
+    private File targetFile;
+    private File[] sourceFiles;
+    private SingularityBlastp task;
+
+    @Setup(Level.Trial)
+    public void Setup() throws IOException {
+
+        BenchmarkUtilities.Silence();
+        directory = BenchmarkUtilities.CreateDirectory();
+        targetFile = new File(directory , "result");
+
+        sourceFiles = new File[shards];
+        long first = 0;
+        for (int i = 0; i < shards; i++) {
+            long count = queries / shards + (i < queries % shards ? 1 : 0);
+            sourceFiles[i] = new File(directory , "output-" + (i + 1));
+            SyntheticData.WriteHits(first , count , hitsPerQuery , sourceFiles[i] , i + 1);
+            first += count;
+        }
+
+        PropertiesController properties = BenchmarkUtilities.CreateProperties(directory);
+        properties.put("reduce-mode" , mode);
+        properties.put("reduce-top-hits" , String.valueOf(topHits));
+        task = new SingularityBlastp(properties);
+    }
+
+    @Benchmark
+    public long ReduceOutput() throws IOException {
+        task.ReduceOutput(targetFile , sourceFiles);
+        return targetFile.length();
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        BenchmarkUtilities.Delete(directory);
+        BenchmarkUtilities.Restore();
+    }
+}
@@ -0,0 +1,246 @@
+package edu.unibi.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates synthetic inputs and outputs of blastp at any scale. Queries are
+ * derived from the records of a seed FASTA file, by default the bundled
+ * blastp.input, so their length distribution matches real queries. Each
+ * copy gets a unique ID and a share of mutated residues. Hits are written in
+ * BLAST tabular format (-outfmt 6) for queries named like the generated ones.
+ * Generation is deterministic for a given random seed.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class SyntheticData
+{
+    private static final String usage =
+              "Usage: java -cp <classpath> edu.unibi.benchmark.SyntheticData <command>\n"
+            + "  fasta <records> <file>                 queries derived from the seed file\n"
+            + "  hits <queries> <hits-per-query> <file> tabular hits of the generated queries\n"
+            + "The seed file is set by -Dbenchmark.seed (default: blastp.input).";
+
+    private static final String residues = "ACDEFGHIKLMNPQRSTVWY";
+    private static final int lineWidth = 60;
+    private static final int bufferSize = 1 << 16;
+    private static final double mutationRate = 0.05;
+
+    /** Prefix of the IDs of generated queries. */
+    public static final String queryPrefix = "synthetic-";
+
+    /**
+     * Generates files from the command line.
+     * @param args the command line arguments
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length == 3 && "fasta".equals(args[0])) {
+            long records = WriteFasta(getSeedFile() , Long.parseLong(args[1]) , new File(args[2]) , 1);
+            System.out.println("Wrote " + records + " records to '" + args[2] + "'.");
+        } else if (args.length == 4 && "hits".equals(args[0])) {
+            long hits = WriteHits(Long.parseLong(args[1]) , Integer.parseInt(args[2]) , new File(args[3]) , 1);
+            System.out.println("Wrote " + hits + " hits to '" + args[3] + "'.");
+        } else {
+            System.err.println(usage);
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Gets the seed file. Uses the system property 'benchmark.seed' if set,
+     * otherwise looks for the bundled blastp.input in the working directory
+     * and its parent.
+     * @return the seed file, NULL if none is available
+     */
+    public static File getSeedFile() {
+
+        String path = System.getProperty("benchmark.seed");
+        if (path != null) {
+            return new File(path);
+        }
+        for (File file : new File[]{ new File("blastp.input") , new File("../blastp.input") }) {
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes a FASTA file of the given number of records. Records of the seed
+     * file are used in turn, each copy being renamed and mutated. Without a
+     * seed file, sequences of random length and residues are written.
+     * @param seedFile FASTA file the records are derived from, may be NULL
+     * @param records number of records to write
+     * @param targetFile
+     * @param randomSeed
+     * @return the number of records written
+     * @throws IOException
+     */
+    public static long WriteFasta(File seedFile, long records, File targetFile, long randomSeed) throws IOException {
+
+        Random random = new Random(randomSeed);
+        List<String> sequences = seedFile != null && seedFile.isFile() ? ReadSequences(seedFile) : new ArrayList();
+        char[] sequence = new char[0];
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(targetFile) , StandardCharsets.US_ASCII) , bufferSize)) {
+
+            for (long record = 0; record < records; record++) {
+
+                int length;
+                if (sequences.isEmpty()) {
+                    length = 50 + random.nextInt(950);
+                    sequence = Grow(sequence , length);
+                    for (int i = 0; i < length; i++) {
+                        sequence[i] = residues.charAt(random.nextInt(residues.length()));
+                    }
+                } else {
+                    String seed = sequences.get((int) (record % sequences.size()));
+                    length = seed.length();
+                    sequence = Grow(sequence , length);
+                    seed.getChars(0 , length , sequence , 0);
+                    if (record >= sequences.size()) {
+                        for (int i = 0; i < length; i++) {
+                            if (random.nextDouble() < mutationRate) {
+                                sequence[i] = residues.charAt(random.nextInt(residues.length()));
+                            }
+                        }
+                    }
+                }
+
+                writer.write('>');
+                writer.write(getQueryId(record));
+                writer.write(" length=" + length + "\n");
+                for (int offset = 0; offset < length; offset += lineWidth) {
+                    writer.write(sequence , offset , Math.min(lineWidth , length - offset));
+                    writer.write('\n');
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Writes hits in BLAST tabular format for the queries of a generated
+     * FASTA file, in order of the queries as blastp does. Values are random
+     * but plausible, e-values spanning many orders of magnitude.
+     * @param queries number of queries
+     * @param hitsPerQuery number of hits per query
+     * @param targetFile
+     * @param randomSeed
+     * @return the number of hits written
+     * @throws IOException
+     */
+    public static long WriteHits(long queries, int hitsPerQuery, File targetFile, long randomSeed) throws IOException {
+        return WriteHits(0 , queries , hitsPerQuery , targetFile , randomSeed);
+    }
+
+    /**
+     * Writes hits in BLAST tabular format for a range of generated queries,
+     * e.g. the queries of a single shard.
+     * @param firstQuery number of the first query, starting at 0
+     * @param queries number of queries
+     * @param hitsPerQuery number of hits per query
+     * @param targetFile
+     * @param randomSeed
+     * @return the number of hits written
+     * @throws IOException
+     */
+    public static long WriteHits(long firstQuery, long queries, int hitsPerQuery, File targetFile, long randomSeed)
+            throws IOException {
+
+        Random random = new Random(randomSeed);
+        StringBuilder line = new StringBuilder(160);
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(targetFile) , StandardCharsets.US_ASCII) , bufferSize)) {
+
+            for (long query = firstQuery; query < firstQuery + queries; query++) {
+                String queryId = getQueryId(query);
+                for (int hit = 0; hit < hitsPerQuery; hit++) {
+
+                    int length = 30 + random.nextInt(600);
+                    double identity = 25 + random.nextDouble() * 75;
+                    int mismatches = (int) (length * (100 - identity) / 100);
+                    int queryStart = 1 + random.nextInt(50);
+                    int subjectStart = 1 + random.nextInt(200);
+                    double evalue = random.nextInt(10) == 0 ? random.nextDouble() * 10
+                                    : Math.pow(10 , -random.nextInt(180)) * (1 + random.nextDouble() * 9);
+                    double bitScore = Math.max(20 , -Math.log10(evalue) * 3.3 + random.nextDouble() * 40);
+
+                    line.setLength(0);
+                    line.append(queryId).append('\t')
+                        .append("sp|").append(String.format(Locale.ROOT , "P%05d" , random.nextInt(100000)))
+                        .append("|SYN").append(random.nextInt(1000)).append("_HUMAN").append('\t')
+                        .append(String.format(Locale.ROOT , "%.3f" , identity)).append('\t')
+                        .append(length).append('\t')
+                        .append(mismatches).append('\t')
+                        .append(random.nextInt(5)).append('\t')
+                        .append(queryStart).append('\t')
+                        .append(queryStart + length - 1).append('\t')
+                        .append(subjectStart).append('\t')
+                        .append(subjectStart + length - 1).append('\t')
+                        .append(String.format(Locale.ROOT , "%.2e" , evalue)).append('\t')
+                        .append(String.format(Locale.ROOT , "%.1f" , bitScore)).append('\n');
+                    writer.append(line);
+                }
+            }
+        }
+        return queries * hitsPerQuery;
+    }
+
+    /**
+     * Gets the ID of a generated query.
+     * @param query number of the query, starting at 0
+     * @return
+     */
+    public static String getQueryId(long query) {
+        return queryPrefix + (query + 1);
+    }
+
+    /**
+     * Reads the sequences of all records of a FASTA file.
+     */
+    private static List<String> ReadSequences(File file) throws IOException {
+
+        List<String> sequences = new ArrayList();
+        StringBuilder sequence = null;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file) , StandardCharsets.US_ASCII) , bufferSize)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(">")) {
+                    if (sequence != null && sequence.length() > 0) {
+                        sequences.add(sequence.toString());
+                    }
+                    sequence = new StringBuilder();
+                } else if (sequence != null) {
+                    sequence.append(line.trim());
+                }
+            }
+        }
+        if (sequence != null && sequence.length() > 0) {
+            sequences.add(sequence.toString());
+        }
+        return sequences;
+    }
+
+    private static char[] Grow(char[] buffer, int length) {
+        return buffer.length >= length ? buffer : new char[Math.max(length , buffer.length * 2)];
+    }
+}
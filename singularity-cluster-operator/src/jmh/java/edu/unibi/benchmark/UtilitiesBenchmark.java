@@ -0,0 +1,54 @@
+package edu.unibi.benchmark;
+
+import edu.unibi.main.Utilities;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures creating temporary files, empty or from a resource, and parsing
+ * values from BiBiGrid's output.
+ * @author Philo Reipke, University Bielefeld
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3 , time = 2)
+@Measurement(iterations = 5 , time = 2)
+@Fork(1)
+public class UtilitiesBenchmark
+{
+    private static final String resourcePath = "bibigrid/singularity.sh";
+
+    private final String line = "export BIBIGRID_MASTER=129.70.51.17 # Cluster (ID: 4d3jz5ehcnfmuw8hdv5i0zbjq)";
+
+    @Benchmark
+    public long CreateTempFile() throws IOException {
+        File file = Utilities.CreateTempFile("benchmark-" , null);
+        long length = file.length();
+        file.delete();
+        return length;
+    }
+
+    @Benchmark
+    public long CreateTempFileFromResource() throws IOException {
+        File file = Utilities.CreateTempFile("benchmark-" , resourcePath);
+        long length = file.length();
+        file.delete();
+        return length;
+    }
+
+    @Benchmark
+    public String ParseSubstring() {
+        return Utilities.parseSubstring(line , "BIBIGRID_MASTER=" , " ");
+    }
+}
@@ -0,0 +1,175 @@
+package edu.unibi.cluster.singularity;
+
+import edu.unibi.benchmark.BenchmarkUtilities;
+import edu.unibi.cluster.tasks.impl.SingularityBlastp;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures writing the JSON bodies of requests, deploys and runs, and
+ * reading Singularity's /state and task webhooks, the way SingularityClient
+ * does. Located in the client's package to read using its FieldReader.
+ * @author Philo Reipke, University Bielefeld
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3 , time = 2)
+@Measurement(iterations = 5 , time = 2)
+@Fork(1)
+public class SingularityJsonBenchmark
+{
+    private static final JsonFactory factory = new JsonFactory();
+    private static final FieldReader stateReader = new FieldReader("activeSlaves");
+
+    @Param({ "8" , "256" })
+    public int slaves;
+
+    private SingularityRequest request;
+    private SingularityDeploy deploy;
+    private SingularityRun run;
+    private byte[] state;
+    private byte[] webhook;
+
+    @Setup(Level.Trial)
+    public void Setup() throws IOException {
+
+        BenchmarkUtilities.Silence();
+        File directory = BenchmarkUtilities.CreateDirectory();
+        SingularityBlastp task = new SingularityBlastp(BenchmarkUtilities.CreateProperties(directory));
+        task.setOutputFiles(new File[]{ new File(directory , "output-1") });
+        BenchmarkUtilities.Delete(directory);
+
+        request = new SingularityRequest("BLASTP-3" , "ON_DEMAND");
+        request.setSlavePlacement("SEPARATE_BY_REQUEST");
+        deploy = new SingularityDeploy("BLASTP-3" , "1" , "sh" , new String[]{"-c" , task.WriteRunCommand("SINGULARITY-3") , "BLASTP-3"} ,
+                                       4 , 24000);
+        run = new SingularityRun("BLASTP-3-1-1" , new String[]{ "singularity-input-1-4711.tmp" , "singularity-output-1-4712.tmp" });
+        state = WriteState(slaves);
+        webhook = WriteWebhook();
+    }
+
+    @Benchmark
+    public byte[] WriteRequest() throws IOException {
+        return Serialize(request);
+    }
+
+    @Benchmark
+    public byte[] WriteDeploy() throws IOException {
+        return Serialize(deploy);
+    }
+
+    @Benchmark
+    public byte[] WriteRun() throws IOException {
+        return Serialize(run);
+    }
+
+    @Benchmark
+    public int ReadState() throws IOException {
+        int[] active = new int[1];
+        JsonParser parser = factory.createJsonParser(state);
+        try {
+            parser.nextToken();
+            stateReader.Read(parser , "" , ( String path , String value ) -> active[0] = Integer.parseInt(value));
+        } finally {
+            parser.close();
+        }
+        return active[0];
+    }
+
+    @Benchmark
+    public TaskUpdate ReadWebhook() throws IOException {
+        return SingularityClient.ReadWebhook(new ByteArrayInputStream(webhook));
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        BenchmarkUtilities.Restore();
+    }
+
+    /**
+     * Serializes a body like SingularityClient before sending it.
+     */
+    private static byte[] Serialize(IJsonObject body) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+        JsonGenerator generator = factory.createJsonGenerator(output , JsonEncoding.UTF8);
+        body.Write(generator);
+        generator.close();
+        return output.toByteArray();
+    }
+
+    /**
+     * Writes a /state response of a cluster with the given number of slaves.
+     * Only 'activeSlaves' is read, all other fields have to be skipped.
+     */
+    private static byte[] WriteState(int slaves) throws IOException {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonGenerator generator = factory.createJsonGenerator(output , JsonEncoding.UTF8);
+        generator.writeStartObject();
+        for (String field : new String[]{ "activeTasks" , "launchingTasks" , "activeRequests" , "cooldownRequests" ,
+                                          "pausedRequests" , "scheduledTasks" , "pendingRequests" , "lbCleanupTasks" ,
+                                          "cleaningRequests" , "finishedRequests" , "lateTasks" , "futureTasks" }) {
+            generator.writeNumberField(field , slaves * 4);
+        }
+        generator.writeArrayFieldStart("hostStates");
+        for (int i = 0; i < 3; i++) {
+            generator.writeStartObject();
+            generator.writeBooleanField("driverStatus" , i == 0);
+            generator.writeStringField("hostname" , "master-" + i);
+            generator.writeNumberField("uptime" , 86400000L * (i + 1));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("overProvisionedRequestIds");
+        for (int i = 0; i < slaves; i++) {
+            generator.writeString("BLASTP-" + i);
+        }
+        generator.writeEndArray();
+        generator.writeNumberField("decomissioningSlaves" , 0);
+        generator.writeNumberField("deadSlaves" , 0);
+        generator.writeNumberField("activeSlaves" , slaves);
+        generator.writeNumberField("oldestDeploy" , 0);
+        generator.writeEndObject();
+        generator.close();
+        return output.toByteArray();
+    }
+
+    /**
+     * Writes a webhook of a task update, including the task's request.
+     */
+    private static byte[] WriteWebhook() {
+        return ("{\"taskUpdate\":{\"taskId\":{\"requestId\":\"BLASTP-3\",\"deployId\":\"1\",\"startedAt\":1500000000000,"
+                + "\"instanceNo\":1,\"host\":\"slave-1\",\"sanitizedHost\":\"slave_1\",\"rackId\":\"DEFAULT\","
+                + "\"id\":\"BLASTP-3-1-1500000000000-1-slave_1-DEFAULT\"},\"timestamp\":1500000123000,"
+                + "\"taskState\":\"TASK_FINISHED\",\"statusMessage\":\"Command exited with status 0\"},"
+                + "\"task\":{\"taskRequest\":{\"request\":{\"id\":\"BLASTP-3\",\"requestType\":\"ON_DEMAND\"},"
+                + "\"deploy\":{\"requestId\":\"BLASTP-3\",\"id\":\"1\",\"command\":\"sh -c 'blastp'\","
+                + "\"resources\":{\"cpus\":4,\"memoryMb\":24000,\"numPorts\":0}},"
+                + "\"pendingTask\":{\"pendingTaskId\":{\"requestId\":\"BLASTP-3\",\"deployId\":\"1\"},"
+                + "\"runId\":\"BLASTP-3-1-1\",\"cmdLineArgsList\":[\"input-1\",\"output-1\"]}},"
+                + "\"offer\":{\"id\":{\"value\":\"offer-1\"},\"resources\":[{\"name\":\"cpus\",\"scalar\":{\"value\":8}},"
+                + "{\"name\":\"mem\",\"scalar\":{\"value\":64000}}]}}}").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,82 @@
+package edu.unibi.simulation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Scalar values of a JSON document, addressed by dotted paths like those of
+ * the client's FieldReader, elements of arrays by "[]". Values of array
+ * elements are kept in order, e.g. "commandLineArgs[]" or "[].path".
+ * @author Philo Reipke, University Bielefeld
+ */
+class JsonFields
+{
+    private static final JsonFactory factory = new JsonFactory();
+
+    private final Map<String , List<String>> values = new HashMap();
+
+    /**
+     * Reads all scalar values of a document.
+     * @param input
+     * @return
+     * @throws IOException if the document cannot be parsed
+     */
+    static JsonFields Read(InputStream input) throws IOException {
+
+        JsonFields fields = new JsonFields();
+        JsonParser parser = factory.createJsonParser(input);
+        try {
+            if (parser.nextToken() != null) {
+                fields.Read(parser , "");
+            }
+        } finally {
+            parser.close();
+        }
+        return fields;
+    }
+
+    private void Read(JsonParser parser, String path) throws IOException {
+
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                Read(parser , path.isEmpty() ? name : path + "." + name);
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                Read(parser , path + "[]");
+            }
+        } else if (token != null && token != JsonToken.VALUE_NULL) {
+            values.computeIfAbsent(path , ( String key ) -> new ArrayList()).add(parser.getText());
+        }
+    }
+
+    /**
+     * Gets the first value of a path.
+     * @param path
+     * @return the value, NULL if missing
+     */
+    String get(String path) {
+        List<String> list = values.get(path);
+        return list != null ? list.get(0) : null;
+    }
+
+    /**
+     * Gets all values of a path, in order.
+     * @param path
+     * @return the values, empty if missing
+     */
+    List<String> getAll(String path) {
+        List<String> list = values.get(path);
+        return list != null ? list : new ArrayList();
+    }
+}
@@ -0,0 +1,934 @@
+package edu.unibi.simulation;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.unibi.main.Logger;
+import edu.unibi.properties.PropertiesController;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * In-process stand-in for the Singularity REST API, serving the calls of
+ * SingularityClient: /state, requests, deploys, runs, the task history and
+ * task webhooks. Runs are executed as simulated tasks on simulated slaves
+ * instead of running the deploy command. A task is placed on the next slave
+ * with enough free cpus, downloads its input object ($1) from the
+ * SimulatedSwift, computes for a fixed time per query, and uploads an
+ * output object ($2) of synthetic BLAST hits, compressed if the input was.
+ * The container, the output's extension and whether outputs are uploaded in
+ * parts are taken from the deploy's metadata. Transfers are limited by the bandwidth of each slave. Tasks fail
+ * or get lost at configurable rates, API calls are delayed and rejected at
+ * configurable rates.
+ *
+ * Timings are computed ahead rather than slept, so hundreds of slaves are
+ * simulated by a handful of threads. Parts (part-queries) are not
+ * simulated.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class SimulatedSingularity
+{
+    public static final String path = "/singularity/api";
+
+    private static final Set<String> terminalStates = new HashSet(Arrays.asList(
+            "TASK_FINISHED" , "TASK_FAILED" , "TASK_KILLED" , "TASK_LOST" , "TASK_ERROR"));
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService notifier;
+    private final SimulatedSwift swift;
+
+    private final int cpusPerSlave;
+    private final long apiLatency;
+    private final double apiErrorRate;
+    private final long deployDelay;
+    private final long launchDelay;
+    private final long queryTime;
+    private final int hitsPerQuery;
+    private final double failureRate;
+    private final double lostRate;
+    private final Random random;
+
+    private final Slave[] slaves;
+    private int nextSlave = 0;
+
+    private final Map<String , Request> requests = new HashMap();
+    private final Map<String , Task> tasks = new HashMap();
+    private final Deque<Task> pending = new ArrayDeque();
+    private final Map<String , String> webhooks = new ConcurrentHashMap();
+
+    private final Map<String , AtomicLong> calls = new ConcurrentHashMap();
+    private final AtomicLong rejected = new AtomicLong();
+    private int running = 0;
+    private int peakRunning = 0;
+    private long launched = 0;
+    private long failed = 0;
+    private long lost = 0;
+    private long queueWait = 0;
+    private long maxQueueWait = 0;
+
+    /**
+     * Simulated slave with its free cpus and its bandwidth.
+     */
+    private static class Slave
+    {
+        final String host;
+        final Throttle throttle;
+        double freeCpus;
+
+        Slave(String hostname, double cpus, double megabytesPerSecond) {
+            host = hostname;
+            freeCpus = cpus;
+            throttle = new Throttle(megabytesPerSecond);
+        }
+    }
+
+    private static class Request
+    {
+        final String id;
+        final String requestType;
+        Deploy activeDeploy;
+        Deploy pendingDeploy;
+        final LinkedList<Task> history = new LinkedList();
+        final Map<String , Task> runs = new HashMap();
+
+        Request(String requestId, String type) {
+            id = requestId;
+            requestType = type;
+        }
+    }
+
+    private static class Deploy
+    {
+        final String requestId;
+        final String id;
+        final double cpus;
+        final String container;
+        final String extension;
+        final boolean parts;
+
+        Deploy(String request, String deployId, double cpuCount, JsonFields fields) {
+            requestId = request;
+            id = deployId;
+            cpus = cpuCount;
+            container = fields.get("deploy.metadata.objectContainer");
+            extension = fields.get("deploy.metadata.outputExtension") != null
+                        ? fields.get("deploy.metadata.outputExtension") : "";
+            parts = fields.get("deploy.metadata.partQueries") != null && !"0".equals(fields.get("deploy.metadata.partQueries"));
+        }
+    }
+
+    private static class Task
+    {
+        final Deploy deploy;
+        final String runId;
+        final List<String> arguments;
+        final long submitted = System.currentTimeMillis();
+        final List<String[]> updates = new ArrayList();
+        String id;
+        Slave slave;
+        String state;
+
+        Task(Deploy taskDeploy, String run, List<String> commandLineArgs) {
+            deploy = taskDeploy;
+            runId = run;
+            arguments = commandLineArgs;
+        }
+
+        boolean isActive() {
+            return state != null && !terminalStates.contains(state);
+        }
+    }
+
+    /**
+     * Constructor. Starts listening on the loopback interface immediately.
+     * @param port port to listen on, 0 to use any free port
+     * @param properties
+     * @param storage object storage tasks transfer their objects from and to
+     * @throws IOException if the server cannot be started
+     */
+    public SimulatedSingularity(int port, PropertiesController properties, SimulatedSwift storage) throws IOException {
+
+        swift = storage;
+        cpusPerSlave = Math.max(properties.getInt("simulation-slave-cpus" , 8) , 1);
+        apiLatency = Math.max(properties.getLong("simulation-api-latency-ms" , 5) , 0);
+        apiErrorRate = properties.getDouble("simulation-api-error-rate" , 0);
+        deployDelay = Math.max(properties.getLong("simulation-deploy-ms" , 500) , 0);
+        launchDelay = Math.max(properties.getLong("simulation-launch-ms" , 1000) , 0);
+        queryTime = Math.max(properties.getLong("simulation-query-ms" , 50) , 0);
+        hitsPerQuery = Math.max(properties.getInt("simulation-hits-per-query" , 10) , 0);
+        failureRate = properties.getDouble("simulation-task-failure-rate" , 0);
+        lostRate = properties.getDouble("simulation-task-lost-rate" , 0);
+        random = new Random(properties.getLong("simulation-seed" , 1));
+
+        double megabytesPerSecond = properties.getDouble("simulation-slave-mbps" , 100);
+        slaves = new Slave[Math.max(properties.getInt("simulation-slaves" , 100) , 1)];
+        for (int i = 0; i < slaves.length; i++) {
+            slaves[i] = new Slave("simulated-slave-" + (i + 1) , cpusPerSlave , megabytesPerSecond);
+        }
+
+        executor = Executors.newCachedThreadPool(new DaemonFactory("simulated-singularity-api"));
+        scheduler = Executors.newScheduledThreadPool(Math.max(Runtime.getRuntime().availableProcessors() , 2) ,
+                                                     new DaemonFactory("simulated-singularity-task"));
+        notifier = Executors.newSingleThreadExecutor(new DaemonFactory("simulated-singularity-webhook"));
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress() , port) , 0);
+        server.createContext(path , this::Handle);
+        server.setExecutor(executor);
+        server.start();
+        log("Listening at " + getApiUrl() + " with " + slaves.length + " slave(s) of " + cpusPerSlave + " cpus.");
+    }
+
+    /**
+     * Names daemon threads.
+     */
+    private static class DaemonFactory implements ThreadFactory
+    {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonFactory(String prefix) {
+            name = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable , name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Gets the port, to be set as 'singularity-port'.
+     * @return
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getApiUrl() {
+        return "http://127.0.0.1:" + getPort() + path;
+    }
+
+    /**
+     * Dispatches a call to its endpoint.
+     */
+    private void Handle(HttpExchange exchange) throws IOException {
+
+        try {
+            String method = exchange.getRequestMethod();
+            String resource = exchange.getRequestURI().getPath().substring(path.length());
+            Map<String , String> parameters = ParseQuery(exchange.getRequestURI().getRawQuery());
+            byte[] body = Drain(exchange.getRequestBody());
+            String[] segments = resource.startsWith("/") ? resource.substring(1).split("/") : resource.split("/");
+
+            String endpoint = getEndpoint(method , segments);
+            calls.computeIfAbsent(endpoint , ( String key ) -> new AtomicLong()).incrementAndGet();
+
+            if (apiLatency > 0) {
+                Thread.sleep(apiLatency);
+            }
+            // Pings have to succeed, clients give up attaching otherwise
+            if (!"GET /state".equals(endpoint) && isRandom(apiErrorRate)) {
+                rejected.incrementAndGet();
+                Send(exchange , 503 , null);
+                return;
+            }
+
+            switch (endpoint) {
+                case "GET /state":
+                    Send(exchange , 200 , WriteState());
+                    return;
+                case "POST /requests":
+                    Send(exchange , PostRequest(JsonFields.Read(new ByteArrayInputStream(body))) , null);
+                    return;
+                case "POST /deploys":
+                    Send(exchange , PostDeploy(JsonFields.Read(new ByteArrayInputStream(body))) , null);
+                    return;
+                case "GET /requests/request/{id}":
+                    byte[] request = WriteRequest(segments[2]);
+                    Send(exchange , request != null ? 200 : 404 , request);
+                    return;
+                case "DELETE /requests/request/{id}":
+                    Send(exchange , DeleteRequest(segments[2]) ? 200 : 404 , null);
+                    return;
+                case "POST /requests/request/{id}/run":
+                    Send(exchange , Run(segments[2] , JsonFields.Read(new ByteArrayInputStream(body))) , null);
+                    return;
+                case "GET /history/request/{id}/tasks":
+                    Send(exchange , 200 , WriteHistory(segments[2] , getInt(parameters , "count" , 100) , getInt(parameters , "page" , 1)));
+                    return;
+                case "GET /history/task/{id}":
+                    byte[] task = WriteTask(segments[2]);
+                    Send(exchange , task != null ? 200 : 404 , task);
+                    return;
+                case "POST /webhooks":
+                    JsonFields webhook = JsonFields.Read(new ByteArrayInputStream(body));
+                    if (webhook.get("id") == null || webhook.get("uri") == null) {
+                        Send(exchange , 400 , null);
+                        return;
+                    }
+                    webhooks.put(webhook.get("id") , webhook.get("uri"));
+                    Send(exchange , 200 , null);
+                    return;
+                case "DELETE /webhooks":
+                    Send(exchange , webhooks.remove(parameters.getOrDefault("webhookId" , "")) != null ? 200 : 404 , null);
+                    return;
+                default:
+                    Send(exchange , 404 , null);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            Send(exchange , 503 , null);
+        } catch (IOException | RuntimeException ex) {
+            log("Exception handling " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + ": " + ex);
+            Send(exchange , 500 , null);
+        }
+    }
+
+    /**
+     * Gets the name of the endpoint a call is sent to, like the names
+     * SingularityClient records latencies for.
+     */
+    private static String getEndpoint(String method, String[] segments) {
+
+        String resource;
+        if (segments.length == 1) {
+            resource = "/" + segments[0];
+        } else if (segments.length == 3 && "requests".equals(segments[0]) && "request".equals(segments[1])) {
+            resource = "/requests/request/{id}";
+        } else if (segments.length == 4 && "requests".equals(segments[0]) && "run".equals(segments[3])) {
+            resource = "/requests/request/{id}/run";
+        } else if (segments.length == 4 && "history".equals(segments[0]) && "request".equals(segments[1]) && "tasks".equals(segments[3])) {
+            resource = "/history/request/{id}/tasks";
+        } else if (segments.length == 3 && "history".equals(segments[0]) && "task".equals(segments[1])) {
+            resource = "/history/task/{id}";
+        } else {
+            resource = "/" + String.join("/" , segments);
+        }
+        return method + " " + resource;
+    }
+
+    private synchronized int PostRequest(JsonFields fields) {
+        String id = fields.get("id");
+        if (id == null) {
+            return 400;
+        }
+        if (!requests.containsKey(id)) {
+            requests.put(id , new Request(id , fields.get("requestType")));
+        }
+        return 200;
+    }
+
+    /**
+     * Accepts a deploy, which becomes active after 'simulation-deploy-ms'.
+     */
+    private synchronized int PostDeploy(JsonFields fields) {
+
+        String requestId = fields.get("deploy.requestId");
+        String id = fields.get("deploy.id");
+        Request request = requestId != null ? requests.get(requestId) : null;
+        if (request == null || id == null) {
+            return 400;
+        }
+        if (request.pendingDeploy != null) {
+            return 409;
+        }
+        double cpus = fields.get("deploy.resources.cpus") != null ? Double.parseDouble(fields.get("deploy.resources.cpus")) : 1;
+        Deploy deploy = new Deploy(requestId , id , cpus , fields);
+        request.pendingDeploy = deploy;
+
+        scheduler.schedule(() -> {
+            synchronized (this) {
+                if (request.pendingDeploy == deploy) {
+                    request.pendingDeploy = null;
+                    request.activeDeploy = deploy;
+                }
+            }
+        } , deployDelay , TimeUnit.MILLISECONDS);
+        return 200;
+    }
+
+    /**
+     * Deletes a request, killing its active tasks.
+     */
+    private synchronized boolean DeleteRequest(String requestId) {
+
+        Request request = requests.remove(requestId);
+        if (request == null) {
+            return false;
+        }
+        for (Task task : request.runs.values()) {
+            if (task.state == null || task.isActive()) {
+                pending.remove(task);
+                End(task , "TASK_KILLED" , "Killed because the request has been deleted");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Queues a run of the active deploy. Runs already known are accepted
+     * again without launching another task.
+     */
+    private synchronized int Run(String requestId, JsonFields fields) {
+
+        Request request = requests.get(requestId);
+        if (request == null) {
+            return 404;
+        }
+        if (request.activeDeploy == null) {
+            return 400;
+        }
+        String runId = fields.get("runId");
+        if (runId == null) {
+            return 400;
+        }
+        if (request.runs.containsKey(runId)) {
+            return 200;
+        }
+
+        Task task = new Task(request.activeDeploy , runId , fields.getAll("commandLineArgs[]"));
+        request.runs.put(runId , task);
+        if (task.deploy.cpus > cpusPerSlave) {
+            task.id = getTaskId(task , null);
+            tasks.put(task.id , task);
+            End(task , "TASK_ERROR" , "Task requires " + task.deploy.cpus + " cpus, slaves offer " + cpusPerSlave);
+            return 200;
+        }
+        pending.add(task);
+        Dispatch();
+        return 200;
+    }
+
+    /**
+     * Places pending tasks in order of submission on slaves with enough free
+     * cpus, trying the slaves round-robin.
+     */
+    private synchronized void Dispatch() {
+
+        while (!pending.isEmpty()) {
+            Task task = pending.peek();
+            Slave slave = null;
+            for (int i = 0; i < slaves.length && slave == null; i++) {
+                Slave candidate = slaves[(nextSlave + i) % slaves.length];
+                if (candidate.freeCpus >= task.deploy.cpus) {
+                    slave = candidate;
+                    nextSlave = (nextSlave + i + 1) % slaves.length;
+                }
+            }
+            if (slave == null) {
+                return;
+            }
+
+            pending.poll();
+            slave.freeCpus -= task.deploy.cpus;
+            task.slave = slave;
+            task.id = getTaskId(task , slave);
+            tasks.put(task.id , task);
+
+            long wait = System.currentTimeMillis() - task.submitted;
+            queueWait += wait;
+            maxQueueWait = Math.max(maxQueueWait , wait);
+            launched++;
+            running++;
+            peakRunning = Math.max(peakRunning , running);
+
+            Update(task , "TASK_LAUNCHED" , "");
+            scheduler.schedule(() -> Start(task) , launchDelay , TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Starts a launched task: downloads its input and computes.
+     */
+    private void Start(Task task) {
+
+        synchronized (this) {
+            if (!task.isActive()) {
+                return;
+            }
+            Update(task , "TASK_RUNNING" , "");
+        }
+        if (task.deploy.parts) {
+            Fail(task , "TASK_FAILED" , "Parts are not simulated");
+            return;
+        }
+
+        String input = task.arguments.size() > 0 ? task.arguments.get(0) : null;
+        String container = task.deploy.container != null ? task.deploy.container : input != null ? swift.Find(input) : null;
+        byte[] content = container != null ? swift.Get(container , input) : null;
+        if (content == null) {
+            Fail(task , "TASK_FAILED" , "Object '" + input + "' not found");
+            return;
+        }
+
+        long downloaded = task.slave.throttle.Reserve(content.length , System.currentTimeMillis());
+        try {
+            List<String> queries = ReadQueries(content);
+            long computed = downloaded + queries.size() * queryTime;
+            scheduler.schedule(() -> Finish(task , container , queries , isGzip(content)) ,
+                               Math.max(computed - System.currentTimeMillis() , 0) , TimeUnit.MILLISECONDS);
+        } catch (IOException ex) {
+            Fail(task , "TASK_FAILED" , "Input could not be read: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Ends the computation of a task, failing it at the configured rates or
+     * uploading its output.
+     */
+    private void Finish(Task task, String container, List<String> queries, boolean compress) {
+
+        synchronized (this) {
+            if (!task.isActive()) {
+                return;
+            }
+        }
+        if (isRandom(lostRate)) {
+            Fail(task , "TASK_LOST" , "Slave " + task.slave.host + " lost");
+            return;
+        }
+        if (isRandom(failureRate)) {
+            Fail(task , "TASK_FAILED" , "Command exited with status 1");
+            return;
+        }
+
+        byte[] output;
+        try {
+            output = WriteHits(task , queries , compress);
+        } catch (IOException ex) {
+            Fail(task , "TASK_FAILED" , "Output could not be written: " + ex.getMessage());
+            return;
+        }
+        String name = (task.arguments.size() > 1 ? task.arguments.get(1) : task.runId) + task.deploy.extension;
+
+        long uploaded = task.slave.throttle.Reserve(output.length , System.currentTimeMillis());
+        scheduler.schedule(() -> {
+            if (!swift.Put(container , name , output)) {
+                Fail(task , "TASK_FAILED" , "Container '" + container + "' not found");
+                return;
+            }
+            synchronized (this) {
+                if (task.isActive()) {
+                    End(task , "TASK_FINISHED" , "Command exited with status 0");
+                }
+            }
+        } , Math.max(uploaded - System.currentTimeMillis() , 0) , TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void Fail(Task task, String state, String message) {
+        if (task.isActive()) {
+            if ("TASK_LOST".equals(state)) {
+                lost++;
+            } else {
+                failed++;
+            }
+            End(task , state , message);
+        }
+    }
+
+    /**
+     * Moves a task into a terminal state, frees its cpus and places the
+     * next pending tasks.
+     */
+    private synchronized void End(Task task, String state, String message) {
+
+        if (task.slave != null && task.isActive()) {
+            task.slave.freeCpus += task.deploy.cpus;
+            running--;
+        }
+        if (task.id == null) {
+            task.id = getTaskId(task , null);
+            tasks.put(task.id , task);
+        }
+        Update(task , state , message);
+
+        Request request = requests.get(task.deploy.requestId);
+        if (request != null) {
+            request.history.addFirst(task);
+        }
+        Dispatch();
+    }
+
+    /**
+     * Records a state of a task and posts it to all webhooks.
+     */
+    private synchronized void Update(Task task, String state, String message) {
+
+        long timestamp = System.currentTimeMillis();
+        task.state = state;
+        task.updates.add(new String[]{ state , message , String.valueOf(timestamp) });
+        if (webhooks.isEmpty()) {
+            return;
+        }
+
+        byte[] json;
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(512);
+            JsonGenerator generator = factory.createJsonGenerator(output , JsonEncoding.UTF8);
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("taskUpdate");
+            WriteTaskId(generator , task);
+            generator.writeNumberField("timestamp" , timestamp);
+            generator.writeStringField("taskState" , state);
+            generator.writeStringField("statusMessage" , message);
+            generator.writeEndObject();
+            generator.writeObjectFieldStart("task");
+            generator.writeObjectFieldStart("taskRequest");
+            generator.writeObjectFieldStart("pendingTask");
+            generator.writeObjectFieldStart("pendingTaskId");
+            generator.writeStringField("requestId" , task.deploy.requestId);
+            generator.writeStringField("deployId" , task.deploy.id);
+            generator.writeEndObject();
+            generator.writeStringField("runId" , task.runId);
+            generator.writeArrayFieldStart("cmdLineArgsList");
+            for (String argument : task.arguments) {
+                generator.writeString(argument);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.close();
+            json = output.toByteArray();
+        } catch (IOException ex) {
+            log("Exception writing webhook: " + ex);
+            return;
+        }
+
+        for (String uri : webhooks.values()) {
+            notifier.execute(() -> Post(uri , json));
+        }
+    }
+
+    /**
+     * Posts a webhook. Failed webhooks are not retried.
+     */
+    private void Post(String uri, byte[] json) {
+        try {
+            HttpURLConnection con = (HttpURLConnection) new URL(uri).openConnection();
+            con.setRequestMethod("POST");
+            con.setRequestProperty("Content-Type" , "application/json");
+            con.setFixedLengthStreamingMode(json.length);
+            con.setDoOutput(true);
+            OutputStream output = con.getOutputStream();
+            output.write(json);
+            output.close();
+            con.getResponseCode();
+            InputStream input = con.getErrorStream() != null ? con.getErrorStream() : con.getInputStream();
+            Drain(input);
+        } catch (IOException ex) {
+            log("Exception posting webhook to " + uri + ": " + ex);
+        }
+    }
+
+    /**
+     * Gets a unique task ID, numbering the tasks like Singularity numbers the
+     * instances of a request.
+     */
+    private synchronized String getTaskId(Task task, Slave slave) {
+        String host = slave != null ? slave.host.replace('-' , '_') : "none";
+        return task.deploy.requestId + "-" + task.deploy.id + "-" + System.currentTimeMillis() + "-" + (tasks.size() + 1)
+               + "-" + host + "-DEFAULT";
+    }
+
+    private static void WriteTaskId(JsonGenerator generator, Task task) throws IOException {
+        generator.writeObjectFieldStart("taskId");
+        generator.writeStringField("requestId" , task.deploy.requestId);
+        generator.writeStringField("deployId" , task.deploy.id);
+        generator.writeNumberField("instanceNo" , 1);
+        generator.writeStringField("host" , task.slave != null ? task.slave.host : "none");
+        generator.writeStringField("id" , task.id);
+        generator.writeEndObject();
+    }
+
+    private synchronized byte[] WriteState() throws IOException {
+
+        int activeRequests = 0;
+        for (Request request : requests.values()) {
+            activeRequests += request.activeDeploy != null ? 1 : 0;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonGenerator generator = factory.createJsonGenerator(output , JsonEncoding.UTF8);
+        generator.writeStartObject();
+        generator.writeNumberField("activeTasks" , running);
+        generator.writeNumberField("scheduledTasks" , pending.size());
+        generator.writeNumberField("activeRequests" , activeRequests);
+        generator.writeNumberField("pendingRequests" , requests.size() - activeRequests);
+        generator.writeNumberField("activeSlaves" , slaves.length);
+        generator.writeNumberField("deadSlaves" , 0);
+        generator.writeNumberField("decomissioningSlaves" , 0);
+        generator.writeEndObject();
+        generator.close();
+        return output.toByteArray();
+    }
+
+    private synchronized byte[] WriteRequest(String requestId) throws IOException {
+
+        Request request = requests.get(requestId);
+        if (request == null) {
+            return null;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonGenerator generator = factory.createJsonGenerator(output , JsonEncoding.UTF8);
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("request");
+        generator.writeStringField("id" , request.id);
+        generator.writeStringField("requestType" , request.requestType);
+        generator.writeEndObject();
+        generator.writeStringField("state" , "ACTIVE");
+        generator.writeObjectFieldStart("requestDeployState");
+        generator.writeStringField("requestId" , request.id);
+        if (request.activeDeploy != null) {
+            generator.writeObjectFieldStart("activeDeploy");
+            generator.writeStringField("requestId" , request.id);
+            generator.writeStringField("deployId" , request.activeDeploy.id);
+            generator.writeEndObject();
+        }
+        if (request.pendingDeploy != null) {
+            generator.writeObjectFieldStart("pendingDeploy");
+            generator.writeStringField("requestId" , request.id);
+            generator.writeStringField("deployId" , request.pendingDeploy.id);
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.close();
+        return output.toByteArray();
+    }
+
+    /**
+     * Writes a page of the inactive tasks of a request, most recent first.
+     */
+    private synchronized byte[] WriteHistory(String requestId, int count, int page) throws IOException {
+
+        Request request = requests.get(requestId);
+        List<Task> history = request != null ? request.history : new ArrayList();
+        int from = Math.min(Math.max(page - 1 , 0) * Math.max(count , 0) , history.size());
+        int to = Math.min(from + Math.max(count , 0) , history.size());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonGenerator generator = factory.createJsonGenerator(output , JsonEncoding.UTF8);
+        generator.writeStartArray();
+        for (Task task : history.subList(from , to)) {
+            generator.writeStartObject();
+            WriteTaskId(generator , task);
+            generator.writeStringField("runId" , task.runId);
+            generator.writeStringField("lastTaskState" , task.state);
+            generator.writeNumberField("updatedAt" , Long.parseLong(task.updates.get(task.updates.size() - 1)[2]));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.close();
+        return output.toByteArray();
+    }
+
+    private synchronized byte[] WriteTask(String taskId) throws IOException {
+
+        Task task = tasks.get(taskId);
+        if (task == null) {
+            return null;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonGenerator generator = factory.createJsonGenerator(output , JsonEncoding.UTF8);
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("taskUpdates");
+        for (String[] update : task.updates) {
+            generator.writeStartObject();
+            WriteTaskId(generator , task);
+            generator.writeStringField("taskState" , update[0]);
+            generator.writeStringField("statusMessage" , update[1]);
+            generator.writeNumberField("timestamp" , Long.parseLong(update[2]));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.close();
+        return output.toByteArray();
+    }
+
+    /**
+     * Reads the IDs of all queries of an input, decompressing it if needed.
+     */
+    private static List<String> ReadQueries(byte[] content) throws IOException {
+
+        List<String> queries = new ArrayList();
+        InputStream input = new ByteArrayInputStream(content);
+        if (isGzip(content)) {
+            input = new GZIPInputStream(input);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input , StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(">")) {
+                    String id = line.substring(1).trim();
+                    int space = id.indexOf(' ');
+                    queries.add(space < 0 ? id : id.substring(0 , space));
+                }
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Writes synthetic hits in BLAST's tabular format (-outfmt 6).
+     */
+    private byte[] WriteHits(Task task, List<String> queries, boolean compress) throws IOException {
+
+        Random hits = new Random(task.runId.hashCode());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        OutputStream stream = compress ? new GZIPOutputStream(output) : output;
+        try (Writer writer = new OutputStreamWriter(stream , StandardCharsets.UTF_8)) {
+            for (String query : queries) {
+                double evalue = 1e-180;
+                for (int i = 0; i < hitsPerQuery; i++) {
+                    int length = 50 + hits.nextInt(400);
+                    evalue *= 1e3 + hits.nextInt(1000000);
+                    writer.write(String.format("%s\tsp|P%05d|SIM_%d\t%.3f\t%d\t%d\t%d\t%d\t%d\t%d\t%d\t%.2e\t%.1f\n" ,
+                                               query , hits.nextInt(100000) , i , 30 + hits.nextDouble() * 70 , length ,
+                                               hits.nextInt(length / 2) , hits.nextInt(10) , 1 , length , 1 , length ,
+                                               Math.min(evalue , 10) , 20 + (hitsPerQuery - i) * 50 * hits.nextDouble()));
+                }
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private static boolean isGzip(byte[] content) {
+        return content.length > 1 && (content[0] & 0xff) == 0x1f && (content[1] & 0xff) == 0x8b;
+    }
+
+    private synchronized boolean isRandom(double rate) {
+        return rate > 0 && random.nextDouble() < rate;
+    }
+
+    private static int getInt(Map<String , String> parameters, String key, int defaultValue) {
+        try {
+            return parameters.containsKey(key) ? Integer.parseInt(parameters.get(key)) : defaultValue;
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Sends a JSON response and closes the exchange.
+     */
+    private static void Send(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        if (body == null || body.length == 0) {
+            exchange.sendResponseHeaders(statusCode , -1);
+        } else {
+            exchange.getResponseHeaders().set("Content-Type" , "application/json");
+            exchange.sendResponseHeaders(statusCode , body.length);
+            OutputStream output = exchange.getResponseBody();
+            output.write(body);
+        }
+        exchange.close();
+    }
+
+    private static byte[] Drain(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        if (input == null) {
+            return output.toByteArray();
+        }
+        byte[] buffer = new byte[4096];
+        int read;
+        try {
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer , 0 , read);
+            }
+        } finally {
+            input.close();
+        }
+        return output.toByteArray();
+    }
+
+    private static Map<String , String> ParseQuery(String query) throws IOException {
+        Map<String , String> parameters = new HashMap();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                String key = equals < 0 ? parameter : parameter.substring(0 , equals);
+                String value = equals < 0 ? "" : parameter.substring(equals + 1);
+                parameters.put(URLDecoder.decode(key , "UTF-8") , URLDecoder.decode(value , "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Gets a summary of the calls served and the tasks simulated.
+     * @return
+     */
+    public synchronized String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("%d task(s) launched, %d failed, %d lost, peak %d running, queue wait mean %d ms max %d ms, "
+                                     + "%d call(s) rejected by injection" ,
+                                     launched , failed , lost , peakRunning , launched > 0 ? queueWait / launched : 0 ,
+                                     maxQueueWait , rejected.get()));
+        for (Map.Entry<String , AtomicLong> endpoint : new TreeMap<>(calls).entrySet()) {
+            summary.append(String.format("%n  %-40s %8d call(s)" , endpoint.getKey() , endpoint.getValue().get()));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Stops the server and all simulated tasks.
+     */
+    public void close() {
+        server.stop(0);
+        scheduler.shutdownNow();
+        notifier.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Writes a message using the Logger.
+     * @param msg
+     */
+    private void log(String msg) {
+        Logger.log("Simulated Singularity: " + msg);
+    }
+}
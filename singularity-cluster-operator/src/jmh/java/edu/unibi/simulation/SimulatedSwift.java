@@ -0,0 +1,557 @@
+package edu.unibi.simulation;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.unibi.main.Logger;
+import edu.unibi.properties.PropertiesController;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * In-process stand-in for OpenStack's identity (Keystone v2) and object
+ * storage (Swift) APIs, serving the calls of SwiftStorage through
+ * OpenStack4j. Objects are held in memory. Static large objects are
+ * assembled from their segments when the manifest is put. Requests can be
+ * delayed, failed at random and limited to a shared bandwidth.
+ *
+ * Settings are read from the properties:
+ * simulation-swift-latency-ms (default 2), simulation-swift-error-rate
+ * (default 0) and simulation-swift-mbps (default 0, unlimited).
+ * @author Philo Reipke, University Bielefeld
+ */
+public class SimulatedSwift
+{
+    private static final String identityPath = "/v2.0";
+    private static final String storagePath = "/v1/AUTH_simulation";
+    private static final String manifestQuery = "multipart-manifest=put";
+    private static final int listingLimit = 10000;
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String token = UUID.randomUUID().toString().replace("-" , "");
+
+    private final Map<String , NavigableMap<String , byte[]>> containers = new ConcurrentHashMap();
+
+    private final long latency;
+    private final double errorRate;
+    private final Throttle throttle;
+    private final Random random;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    /**
+     * Constructor. Starts listening on the loopback interface immediately.
+     * @param port port to listen on, 0 to use any free port
+     * @param properties
+     * @throws IOException if the server cannot be started
+     */
+    public SimulatedSwift(int port, PropertiesController properties) throws IOException {
+
+        latency = Math.max(properties.getLong("simulation-swift-latency-ms" , 2) , 0);
+        errorRate = properties.getDouble("simulation-swift-error-rate" , 0);
+        throttle = new Throttle(properties.getDouble("simulation-swift-mbps" , 0));
+        random = new Random(properties.getLong("simulation-seed" , 1));
+
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(( Runnable runnable ) -> {
+            Thread thread = new Thread(runnable , "simulated-swift-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress() , port) , 0);
+        server.createContext(identityPath , this::HandleIdentity);
+        server.createContext(storagePath , this::HandleStorage);
+        server.setExecutor(executor);
+        server.start();
+        log("Listening at " + getIdentityUrl() + ".");
+    }
+
+    /**
+     * Gets the identity endpoint, to be set as 'openstack-endpoint'.
+     * @return
+     */
+    public String getIdentityUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + identityPath;
+    }
+
+    /**
+     * Gets the public URL of the object storage.
+     * @return
+     */
+    public String getStorageUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + storagePath;
+    }
+
+    /**
+     * Authenticates any credentials, returning the object storage in the
+     * service catalog.
+     */
+    private void HandleIdentity(HttpExchange exchange) throws IOException {
+
+        try {
+            Drain(exchange.getRequestBody());
+            if (!"POST".equals(exchange.getRequestMethod()) || !exchange.getRequestURI().getPath().startsWith(identityPath + "/tokens")) {
+                Send(exchange , 404 , null);
+                return;
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            JsonGenerator generator = factory.createJsonGenerator(output , JsonEncoding.UTF8);
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("access");
+
+            generator.writeObjectFieldStart("token");
+            generator.writeStringField("id" , token);
+            generator.writeStringField("issued_at" , "2017-01-01T00:00:00.000000");
+            generator.writeStringField("expires" , "2099-12-31T23:59:59Z");
+            generator.writeObjectFieldStart("tenant");
+            generator.writeStringField("id" , "simulation");
+            generator.writeStringField("name" , "simulation");
+            generator.writeStringField("description" , "Simulated tenant");
+            generator.writeBooleanField("enabled" , true);
+            generator.writeEndObject();
+            generator.writeEndObject();
+
+            generator.writeArrayFieldStart("serviceCatalog");
+            generator.writeStartObject();
+            generator.writeStringField("name" , "swift");
+            generator.writeStringField("type" , "object-store");
+            generator.writeArrayFieldStart("endpoints");
+            generator.writeStartObject();
+            generator.writeStringField("id" , "simulation");
+            generator.writeStringField("region" , "RegionOne");
+            generator.writeStringField("publicURL" , getStorageUrl());
+            generator.writeStringField("internalURL" , getStorageUrl());
+            generator.writeStringField("adminURL" , getStorageUrl());
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("endpoints_links");
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+
+            generator.writeObjectFieldStart("user");
+            generator.writeStringField("id" , "simulation");
+            generator.writeStringField("name" , "simulation");
+            generator.writeStringField("username" , "simulation");
+            generator.writeArrayFieldStart("roles");
+            generator.writeStartObject();
+            generator.writeStringField("name" , "_member_");
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("roles_links");
+            generator.writeEndArray();
+            generator.writeEndObject();
+
+            generator.writeObjectFieldStart("metadata");
+            generator.writeNumberField("is_admin" , 0);
+            generator.writeArrayFieldStart("roles");
+            generator.writeEndArray();
+            generator.writeEndObject();
+
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.close();
+
+            exchange.getResponseHeaders().set("Content-Type" , "application/json");
+            Send(exchange , 200 , output.toByteArray());
+        } catch (IOException | RuntimeException ex) {
+            log("Exception handling " + exchange.getRequestURI() + ": " + ex);
+            Send(exchange , 500 , null);
+        }
+    }
+
+    /**
+     * Serves the account, its containers and their objects.
+     */
+    private void HandleStorage(HttpExchange exchange) throws IOException {
+
+        requests.incrementAndGet();
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath().substring(storagePath.length());
+            String query = exchange.getRequestURI().getRawQuery();
+            byte[] body = Drain(exchange.getRequestBody());
+
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+            if (!token.equals(exchange.getRequestHeaders().getFirst("X-Auth-Token"))) {
+                Send(exchange , 401 , null);
+                return;
+            }
+            if (("PUT".equals(method) || "GET".equals(method)) && isFailing()) {
+                failures.incrementAndGet();
+                Send(exchange , 503 , null);
+                return;
+            }
+
+            // Split into container and object name
+            path = path.startsWith("/") ? path.substring(1) : path;
+            int slash = path.indexOf('/');
+            String container = slash < 0 ? path : path.substring(0 , slash);
+            String object = slash < 0 ? "" : path.substring(slash + 1);
+            Map<String , String> parameters = ParseQuery(query);
+
+            if (container.isEmpty()) {
+                HandleAccount(exchange , method , parameters);
+            } else if (object.isEmpty()) {
+                HandleContainer(exchange , method , container , parameters);
+            } else {
+                bytesIn.addAndGet(body.length);
+                throttle.Transfer(body.length);
+                HandleObject(exchange , method , container , object , body , query != null && query.contains(manifestQuery));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            Send(exchange , 503 , null);
+        } catch (IOException | RuntimeException ex) {
+            log("Exception handling " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + ": " + ex);
+            Send(exchange , 500 , null);
+        }
+    }
+
+    private void HandleAccount(HttpExchange exchange, String method, Map<String , String> parameters) throws IOException {
+
+        if ("HEAD".equals(method)) {
+            exchange.getResponseHeaders().set("X-Account-Container-Count" , String.valueOf(containers.size()));
+            Send(exchange , 204 , null);
+            return;
+        }
+        if (!"GET".equals(method)) {
+            Send(exchange , 405 , null);
+            return;
+        }
+
+        String prefix = parameters.getOrDefault("prefix" , "");
+        NavigableMap<String , NavigableMap<String , byte[]>> sorted = new ConcurrentSkipListMap(containers);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonGenerator generator = factory.createJsonGenerator(output , JsonEncoding.UTF8);
+        generator.writeStartArray();
+        for (Map.Entry<String , NavigableMap<String , byte[]>> container : sorted.entrySet()) {
+            if (container.getKey().startsWith(prefix)) {
+                long bytes = 0;
+                for (byte[] content : container.getValue().values()) {
+                    bytes += content.length;
+                }
+                generator.writeStartObject();
+                generator.writeStringField("name" , container.getKey());
+                generator.writeNumberField("count" , container.getValue().size());
+                generator.writeNumberField("bytes" , bytes);
+                generator.writeEndObject();
+            }
+        }
+        generator.writeEndArray();
+        generator.close();
+        SendListing(exchange , output.toByteArray() , parameters);
+    }
+
+    private void HandleContainer(HttpExchange exchange, String method, String container, Map<String , String> parameters)
+            throws IOException {
+
+        NavigableMap<String , byte[]> objects = containers.get(container);
+        switch (method) {
+            case "PUT":
+                Send(exchange , containers.putIfAbsent(container , new ConcurrentSkipListMap()) == null ? 201 : 202 , null);
+                return;
+            case "DELETE":
+                if (objects == null) {
+                    Send(exchange , 404 , null);
+                } else if (!objects.isEmpty()) {
+                    Send(exchange , 409 , null);
+                } else {
+                    containers.remove(container);
+                    Send(exchange , 204 , null);
+                }
+                return;
+            case "HEAD":
+                if (objects != null) {
+                    exchange.getResponseHeaders().set("X-Container-Object-Count" , String.valueOf(objects.size()));
+                }
+                Send(exchange , objects != null ? 204 : 404 , null);
+                return;
+            case "GET":
+                break;
+            default:
+                Send(exchange , 405 , null);
+                return;
+        }
+        if (objects == null) {
+            Send(exchange , 404 , null);
+            return;
+        }
+
+        // Listings are paged like Swift's, continuing after the marker
+        String prefix = parameters.getOrDefault("prefix" , "");
+        String marker = parameters.get("marker");
+        NavigableMap<String , byte[]> listed = marker != null && marker.compareTo(prefix) >= 0
+                                               ? objects.tailMap(marker , false) : objects.tailMap(prefix , true);
+        int count = 0;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonGenerator generator = factory.createJsonGenerator(output , JsonEncoding.UTF8);
+        generator.writeStartArray();
+        for (Map.Entry<String , byte[]> object : listed.entrySet()) {
+            if (!object.getKey().startsWith(prefix) || count++ == listingLimit) {
+                break;
+            }
+            generator.writeStartObject();
+            generator.writeStringField("name" , object.getKey());
+            generator.writeStringField("hash" , getEtag(object.getValue()));
+            generator.writeNumberField("bytes" , object.getValue().length);
+            generator.writeStringField("content_type" , "application/octet-stream");
+            generator.writeStringField("last_modified" , "2017-01-01T00:00:00.000000");
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.close();
+        SendListing(exchange , output.toByteArray() , parameters);
+    }
+
+    private void HandleObject(HttpExchange exchange, String method, String container, String object, byte[] body,
+                              boolean manifest) throws IOException, InterruptedException {
+
+        NavigableMap<String , byte[]> objects = containers.get(container);
+        if (objects == null) {
+            Send(exchange , 404 , null);
+            return;
+        }
+
+        switch (method) {
+            case "PUT":
+                byte[] content = manifest ? Assemble(body) : body;
+                if (content == null) {
+                    Send(exchange , 400 , null);
+                    return;
+                }
+                objects.put(object , content);
+                exchange.getResponseHeaders().set("ETag" , getEtag(content));
+                Send(exchange , 201 , null);
+                return;
+            case "GET":
+            case "HEAD":
+                byte[] stored = objects.get(object);
+                if (stored == null) {
+                    Send(exchange , 404 , null);
+                    return;
+                }
+                exchange.getResponseHeaders().set("ETag" , getEtag(stored));
+                exchange.getResponseHeaders().set("Content-Type" , "application/octet-stream");
+                if ("HEAD".equals(method)) {
+                    exchange.getResponseHeaders().set("Content-Length" , String.valueOf(stored.length));
+                    Send(exchange , 200 , null);
+                    return;
+                }
+                bytesOut.addAndGet(stored.length);
+                throttle.Transfer(stored.length);
+                Send(exchange , 200 , stored);
+                return;
+            case "DELETE":
+                Send(exchange , objects.remove(object) != null ? 204 : 404 , null);
+                return;
+            default:
+                Send(exchange , 405 , null);
+        }
+    }
+
+    /**
+     * Concatenates the segments listed by the manifest of a static large
+     * object. The segments are kept, like Swift does.
+     * @return the content, NULL if a segment is missing
+     */
+    private byte[] Assemble(byte[] manifest) throws IOException {
+
+        List<String> paths = JsonFields.Read(new ByteArrayInputStream(manifest)).getAll("[].path");
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (String path : paths) {
+            path = path.startsWith("/") ? path.substring(1) : path;
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                return null;
+            }
+            byte[] segment = Get(path.substring(0 , slash) , path.substring(slash + 1));
+            if (segment == null) {
+                return null;
+            }
+            content.write(segment);
+        }
+        return content.toByteArray();
+    }
+
+    /**
+     * Gets an object, as a simulated task would download it.
+     * @param container
+     * @param object
+     * @return the content, NULL if missing
+     */
+    public byte[] Get(String container, String object) {
+        NavigableMap<String , byte[]> objects = containers.get(container);
+        return objects != null ? objects.get(object) : null;
+    }
+
+    /**
+     * Finds the container holding an object. Simulated tasks only know the
+     * names of their objects, which are unique across the jobs' containers.
+     * @param object
+     * @return the container, NULL if no container holds the object
+     */
+    public String Find(String object) {
+        for (Map.Entry<String , NavigableMap<String , byte[]>> container : containers.entrySet()) {
+            if (container.getValue().containsKey(object)) {
+                return container.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts an object, as a simulated task would upload it.
+     * @param container
+     * @param object
+     * @param content
+     * @return FALSE if the container does not exist
+     */
+    public boolean Put(String container, String object, byte[] content) {
+        NavigableMap<String , byte[]> objects = containers.get(container);
+        if (objects == null) {
+            return false;
+        }
+        objects.put(object , content);
+        return true;
+    }
+
+    private synchronized boolean isFailing() {
+        return errorRate > 0 && random.nextDouble() < errorRate;
+    }
+
+    /**
+     * Sends a listing as JSON, or as plain names if JSON is not requested.
+     */
+    private void SendListing(HttpExchange exchange, byte[] json, Map<String , String> parameters) throws IOException {
+
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if ("json".equals(parameters.get("format")) || (accept != null && accept.contains("json"))) {
+            exchange.getResponseHeaders().set("Content-Type" , "application/json; charset=utf-8");
+            Send(exchange , 200 , json);
+            return;
+        }
+
+        StringBuilder names = new StringBuilder();
+        for (String name : JsonFields.Read(new ByteArrayInputStream(json)).getAll("[].name")) {
+            names.append(name).append('\n');
+        }
+        exchange.getResponseHeaders().set("Content-Type" , "text/plain; charset=utf-8");
+        Send(exchange , names.length() > 0 ? 200 : 204 , names.length() > 0 ? names.toString().getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    /**
+     * Sends a response and closes the exchange.
+     */
+    private static void Send(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        if (body == null || body.length == 0 || "HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(statusCode , -1);
+        } else {
+            exchange.sendResponseHeaders(statusCode , body.length);
+            OutputStream output = exchange.getResponseBody();
+            output.write(body);
+        }
+        exchange.close();
+    }
+
+    /**
+     * Reads a request body completely.
+     */
+    private static byte[] Drain(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        try {
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer , 0 , read);
+            }
+        } finally {
+            input.close();
+        }
+        return output.toByteArray();
+    }
+
+    private static Map<String , String> ParseQuery(String query) throws IOException {
+        Map<String , String> parameters = new HashMap();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                String key = equals < 0 ? parameter : parameter.substring(0 , equals);
+                String value = equals < 0 ? "" : parameter.substring(equals + 1);
+                parameters.put(URLDecoder.decode(key , "UTF-8") , URLDecoder.decode(value , "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    private static String getEtag(byte[] content) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+                hex.append(String.format("%02x" , b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Gets a summary of the requests served.
+     * @return
+     */
+    public String getSummary() {
+        return String.format("%d request(s), %d failed by injection, %.1f MB in, %.1f MB out, %d container(s) left" ,
+                             requests.get() , failures.get() , bytesIn.get() / 1048576.0 , bytesOut.get() / 1048576.0 ,
+                             containers.size());
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Writes a message using the Logger.
+     * @param msg
+     */
+    private void log(String msg) {
+        Logger.log("Simulated Swift: " + msg);
+    }
+}
@@ -0,0 +1,49 @@
+package edu.unibi.simulation;
+
+/**
+ * Bandwidth shared by all transfers of a simulated node. Transfers are
+ * served one after another at the full rate, so concurrent transfers take
+ * as long in total as they would sharing the link.
+ * @author Philo Reipke, University Bielefeld
+ */
+class Throttle
+{
+    private final double bytesPerMs;
+    private long free = 0;
+
+    /**
+     * Constructor.
+     * @param megabytesPerSecond bandwidth, 0 or less for unlimited
+     */
+    Throttle(double megabytesPerSecond) {
+        bytesPerMs = megabytesPerSecond * 1024 * 1024 / 1000;
+    }
+
+    /**
+     * Reserves the link for a transfer.
+     * @param bytes size of the transfer
+     * @param earliest time the transfer can start at in milliseconds
+     * @return time the transfer ends at in milliseconds
+     */
+    synchronized long Reserve(long bytes, long earliest) {
+        if (bytesPerMs <= 0) {
+            return earliest;
+        }
+        long start = Math.max(free , earliest);
+        free = start + (long) Math.ceil(bytes / bytesPerMs);
+        return free;
+    }
+
+    /**
+     * Blocks the calling thread for the duration of a transfer starting now.
+     * @param bytes size of the transfer
+     * @throws InterruptedException
+     */
+    void Transfer(long bytes) throws InterruptedException {
+        long end = Reserve(bytes , System.currentTimeMillis());
+        long wait = end - System.currentTimeMillis();
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package edu.unibi.blast;
+
+import java.util.Comparator;
+
+/**
+ * Single hit of a BLAST tabular output (-outfmt 6). Only the columns used
+ * for ordering are parsed: the query ID (column 1), the e-value (column 11)
+ * and the bit score (column 12). The line itself is kept unchanged.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class TabularHit
+{
+    private static final char SEPARATOR = '\t';
+    private static final int EVALUE_COLUMN = 10;
+    private static final int BITSCORE_COLUMN = 11;
+
+    /**
+     * Orders hits by query ID, ascending e-value and descending bit score.
+     */
+    public static final Comparator<TabularHit> ORDER = ( TabularHit a , TabularHit b ) -> {
+        int order = a.query.compareTo(b.query);
+        if (order == 0) {
+            order = Double.compare(a.evalue , b.evalue);
+        }
+        if (order == 0) {
+            order = Double.compare(b.bitScore , a.bitScore);
+        }
+        return order;
+    };
+
+    private final String line;
+    private final String query;
+    private final double evalue;
+    private final double bitScore;
+
+    private TabularHit(String hitLine, String queryId, double eValue, double bits) {
+        line = hitLine;
+        query = queryId;
+        evalue = eValue;
+        bitScore = bits;
+    }
+
+    /**
+     * Parses a line. Lines missing the e-value or bit score are kept, but
+     * ordered after all other hits of their query.
+     * @param line
+     * @return the hit
+     */
+    public static TabularHit Parse(String line) {
+
+        int end = line.indexOf(SEPARATOR);
+        String query = end < 0 ? line : line.substring(0 , end);
+
+        // Skip to the e-value column
+        int start = end;
+        for (int column = 1; column < EVALUE_COLUMN && start >= 0; column++) {
+            start = line.indexOf(SEPARATOR , start + 1);
+        }
+
+        double evalue = Double.POSITIVE_INFINITY;
+        double bitScore = Double.NEGATIVE_INFINITY;
+        if (start >= 0) {
+            end = line.indexOf(SEPARATOR , start + 1);
+            evalue = parse(line , start + 1 , end , Double.POSITIVE_INFINITY);
+            if (end >= 0) {
+                int next = line.indexOf(SEPARATOR , end + 1);
+                bitScore = parse(line , end + 1 , next , Double.NEGATIVE_INFINITY);
+            }
+        }
+        return new TabularHit(line , query , evalue , bitScore);
+    }
+
+    private static double parse(String line, int start, int end, double fallback) {
+        try {
+            return Double.parseDouble(end < 0 ? line.substring(start) : line.substring(start , end));
+        } catch (NumberFormatException ex) {
+            return fallback;
+        }
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public double getEvalue() {
+        return evalue;
+    }
+
+    /**
+     * Checks if the line carries an e-value.
+     * @return
+     */
+    public boolean hasEvalue() {
+        return evalue != Double.POSITIVE_INFINITY;
+    }
+
+    public double getBitScore() {
+        return bitScore;
+    }
+
+    /**
+     * Estimates the memory used by the hit.
+     * @return size in bytes
+     */
+    public long getSize() {
+        return 96 + 2L * (line.length() + query.length());
+    }
+}
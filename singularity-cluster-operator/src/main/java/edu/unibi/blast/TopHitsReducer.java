@@ -0,0 +1,261 @@
+package edu.unibi.blast;
+
+import edu.unibi.cluster.tasks.IReducer;
+import edu.unibi.main.Utilities;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Reducer merging BLAST tabular outputs into a single file sorted by query
+ * ID, e-value and bit score. Each output is sorted into runs as soon as it
+ * is passed, holding at most the memory budget of hits at a time. On close,
+ * all runs are merged using a k-way merge. Optionally, only the top hits of
+ * each query, or hits up to an e-value cutoff, are kept. Memory usage is
+ * bounded by the budget and one hit per merged run.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class TopHitsReducer implements IReducer
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_FAN_IN = 128;
+
+    private final File targetFile;
+    private final int topHits;
+    private final double maxEvalue;
+    private final long memoryBudget;
+
+    private final List<File> runs = new ArrayList();
+    private long hits = 0;
+    private long kept = 0;
+
+    /**
+     * Constructor.
+     * @param target file receiving the merged hits
+     * @param top number of hits kept per query, 0 to keep all
+     * @param cutoff maximum e-value of kept hits, hits without e-value are
+     * kept regardless
+     * @param budget memory used for sorting in bytes
+     */
+    public TopHitsReducer(File target, int top, double cutoff, long budget) {
+        targetFile = target;
+        topHits = top;
+        maxEvalue = cutoff;
+        memoryBudget = Math.max(budget , 1 << 20);
+    }
+
+    /**
+     * Sorts an output file into runs.
+     * @param sourceFile
+     * @param index
+     * @throws IOException
+     */
+    @Override
+    public void Reduce(File sourceFile, int index) throws IOException {
+
+        List<TabularHit> buffer = new ArrayList();
+        long size = 0;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(sourceFile) , StandardCharsets.UTF_8) , BUFFER_SIZE);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                hits++;
+                TabularHit hit = TabularHit.Parse(line);
+                if (hit.hasEvalue() && hit.getEvalue() > maxEvalue) {
+                    continue;
+                }
+                buffer.add(hit);
+                size += hit.getSize();
+
+                // Spill once the budget is exhausted
+                if (size >= memoryBudget) {
+                    runs.add(WriteRun(buffer));
+                    buffer.clear();
+                    size = 0;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (!buffer.isEmpty()) {
+            runs.add(WriteRun(buffer));
+        }
+    }
+
+    /**
+     * Sorts hits and writes them to a new run, keeping the top hits only.
+     */
+    private File WriteRun(List<TabularHit> buffer) throws IOException {
+
+        buffer.sort(TabularHit.ORDER);
+
+        File run = Utilities.CreateTempFile("run-" , null);
+        Writer writer = CreateWriter(run);
+        try {
+            String query = null;
+            int count = 0;
+            for (TabularHit hit : buffer) {
+                if (!hit.getQuery().equals(query)) {
+                    query = hit.getQuery();
+                    count = 0;
+                }
+                if (topHits <= 0 || count++ < topHits) {
+                    writer.write(hit.getLine());
+                    writer.write('\n');
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        return run;
+    }
+
+    /**
+     * Merges all runs into the target file. Runs exceeding the maximum
+     * fan-in are merged in intermediate passes first.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+
+        try {
+            while (runs.size() > MAX_FAN_IN) {
+                List<File> group = new ArrayList(runs.subList(0 , MAX_FAN_IN));
+                runs.subList(0 , MAX_FAN_IN).clear();
+
+                File merged = Utilities.CreateTempFile("run-" , null);
+                Merge(group , merged);
+                runs.add(merged);
+                for (File run : group) {
+                    run.delete();
+                }
+            }
+            kept = Merge(runs , targetFile);
+        } finally {
+            for (File run : runs) {
+                run.delete();
+            }
+            runs.clear();
+        }
+    }
+
+    /**
+     * Merges sorted runs into a single sorted file, keeping the top hits of
+     * each query only.
+     * @return the number of hits written
+     */
+    private long Merge(List<File> sources, File target) throws IOException {
+
+        PriorityQueue<Run> queue = new PriorityQueue(Math.max(sources.size() , 1));
+        Writer writer = CreateWriter(target);
+        long written = 0;
+
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                Run run = new Run(sources.get(i) , i);
+                if (run.Next()) {
+                    queue.add(run);
+                } else {
+                    run.close();
+                }
+            }
+
+            String query = null;
+            int count = 0;
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                TabularHit hit = run.hit;
+
+                if (!hit.getQuery().equals(query)) {
+                    query = hit.getQuery();
+                    count = 0;
+                }
+                if (topHits <= 0 || count++ < topHits) {
+                    writer.write(hit.getLine());
+                    writer.write('\n');
+                    written++;
+                }
+
+                if (run.Next()) {
+                    queue.add(run);
+                } else {
+                    run.close();
+                }
+            }
+        } finally {
+            for (Run run : queue) {
+                run.close();
+            }
+            writer.close();
+        }
+        return written;
+    }
+
+    private static Writer CreateWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file) , StandardCharsets.UTF_8) , BUFFER_SIZE);
+    }
+
+    /**
+     * Gets the number of hits read from all outputs.
+     * @return
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of hits written to the target file.
+     * @return
+     */
+    public long getKept() {
+        return kept;
+    }
+
+    /**
+     * Sorted run being merged, positioned at its current hit. Runs with
+     * equal hits are ordered by their number, so the merge is stable.
+     */
+    private static class Run implements Comparable<Run>
+    {
+        private final BufferedReader reader;
+        private final int number;
+        private TabularHit hit = null;
+
+        Run(File file, int runNumber) throws IOException {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file) , StandardCharsets.UTF_8) , BUFFER_SIZE);
+            number = runNumber;
+        }
+
+        boolean Next() throws IOException {
+            String line = reader.readLine();
+            hit = line != null ? TabularHit.Parse(line) : null;
+            return hit != null;
+        }
+
+        void close() throws IOException {
+            reader.close();
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            int order = TabularHit.ORDER.compare(hit , other.hit);
+            return order != 0 ? order : Integer.compare(number , other.number);
+        }
+    }
+}
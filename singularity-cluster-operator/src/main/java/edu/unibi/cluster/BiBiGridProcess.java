@@ -0,0 +1,296 @@
+package edu.unibi.cluster;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.security.Permission;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarFile;
+
+/**
+ * Runs BiBiGrid's entry point within the application's JVM instead of a
+ * forked one, saving the JVM startup on every create and terminate. Each run
+ * uses its own class loader, so no state is shared between runs, and its own
+ * thread group. Output written to System.out and System.err by threads of
+ * the group is available through getInputStream(), just like the merged
+ * output of a forked process. Calls of System.exit() within the group end
+ * the run instead of the JVM.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class BiBiGridProcess extends Process
+{
+    private static final ThreadGroup runGroups = new ThreadGroup("bibigrid");
+    private static final Map<ThreadGroup , OutputStream> outputs = new ConcurrentHashMap();
+    private static final AtomicInteger runs = new AtomicInteger();
+    private static boolean installed = false;
+
+    private final ThreadGroup group;
+    private final Thread thread;
+    private final InputStream input;
+    private final OutputStream output;
+    private volatile Integer exitValue = null;
+
+    /**
+     * Installs the output dispatching streams and the security manager
+     * trapping System.exit(). Fails on JVMs not allowing a security manager
+     * to be set, e.g. Java 18 and later without
+     * -Djava.security.manager=allow.
+     * @return TRUE if BiBiGrid can be run in-process
+     */
+    public static synchronized boolean Install() {
+
+        if (installed) {
+            return true;
+        }
+        SecurityManager previous = System.getSecurityManager();
+        try {
+            System.setSecurityManager(new ExitTrap(previous));
+        } catch (UnsupportedOperationException | SecurityException ex) {
+            return false;
+        }
+        System.setOut(new PrintStream(new Dispatcher(System.out) , true));
+        System.setErr(new PrintStream(new Dispatcher(System.err) , true));
+        return installed = true;
+    }
+
+    /**
+     * Starts running the main class of the given jar.
+     * @param jar
+     * @param args arguments passed to the main method
+     * @throws IOException if the jar cannot be read or has no main class
+     */
+    public BiBiGridProcess(File jar, String[] args) throws IOException {
+
+        if (!Install()) {
+            throw new IOException("System.exit() cannot be trapped on this JVM.");
+        }
+
+        String mainClass;
+        try (JarFile jarFile = new JarFile(jar)) {
+            mainClass = jarFile.getManifest() != null ? jarFile.getManifest().getMainAttributes().getValue("Main-Class") : null;
+        }
+        if (mainClass == null) {
+            throw new IOException("No Main-Class in '" + jar + "'.");
+        }
+
+        Pipe pipe = Pipe.open();
+        input = Channels.newInputStream(pipe.source());
+        output = Channels.newOutputStream(pipe.sink());
+
+        String name = "bibigrid-" + runs.incrementAndGet();
+        group = new ThreadGroup(runGroups , name);
+        outputs.put(group , output);
+
+        String entryPoint = mainClass;
+        thread = new Thread(group , () -> Run(jar , entryPoint , args) , name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Invokes the main method and records the exit value.
+     */
+    private void Run(File jar, String mainClass, String[] args) {
+
+        int status = 0;
+        URLClassLoader loader = null;
+        try {
+            loader = new URLClassLoader(new URL[]{ jar.toURI().toURL() } , ClassLoader.getSystemClassLoader().getParent());
+            Thread.currentThread().setContextClassLoader(loader);
+            Method main = loader.loadClass(mainClass).getMethod("main" , String[].class);
+            main.invoke(null , (Object) args);
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof ExitTrappedException) {
+                status = ((ExitTrappedException) ex.getCause()).status;
+            } else {
+                ex.getCause().printStackTrace();
+                status = 1;
+            }
+        } catch (ExitTrappedException ex) {
+            status = ex.status;
+        } catch (Exception | LinkageError ex) {
+            ex.printStackTrace();
+            status = 1;
+        } finally {
+            outputs.remove(group);
+            try {
+                output.close();
+            } catch (IOException ex) {
+            }
+            try {
+                if (loader != null) {
+                    loader.close();
+                }
+            } catch (IOException ex) {
+            }
+            synchronized (this) {
+                exitValue = status;
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("BiBiGrid does not read input.");
+            }
+        };
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    /**
+     * Gets an empty stream, as errors are merged into getInputStream().
+     * @return
+     */
+    @Override
+    public InputStream getErrorStream() {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return -1;
+            }
+        };
+    }
+
+    @Override
+    public synchronized int waitFor() throws InterruptedException {
+        while (exitValue == null) {
+            wait();
+        }
+        return exitValue;
+    }
+
+    @Override
+    public int exitValue() {
+        Integer value = exitValue;
+        if (value == null) {
+            throw new IllegalThreadStateException("BiBiGrid is still running.");
+        }
+        return value;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return exitValue == null;
+    }
+
+    /**
+     * Interrupts the run. BiBiGrid may ignore it.
+     */
+    @Override
+    public void destroy() {
+        group.interrupt();
+    }
+
+    /**
+     * Gets the stream output of the current thread is written to, NULL if
+     * it does not belong to a run.
+     */
+    private static OutputStream getRunOutput() {
+        for (ThreadGroup g = Thread.currentThread().getThreadGroup(); g != null; g = g.getParent()) {
+            OutputStream output = outputs.get(g);
+            if (output != null) {
+                return output;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes to the output of the run the current thread belongs to, or to
+     * the original stream otherwise.
+     */
+    private static class Dispatcher extends OutputStream
+    {
+        private final OutputStream original;
+
+        Dispatcher(OutputStream originalStream) {
+            original = originalStream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            OutputStream output = getRunOutput();
+            (output != null ? output : original).write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            OutputStream output = getRunOutput();
+            (output != null ? output : original).write(b , off , len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            OutputStream output = getRunOutput();
+            (output != null ? output : original).flush();
+        }
+    }
+
+    /**
+     * Thrown instead of exiting the JVM when a run calls System.exit().
+     */
+    private static class ExitTrappedException extends SecurityException
+    {
+        private final int status;
+
+        ExitTrappedException(int exitStatus) {
+            super("System.exit(" + exitStatus + ") trapped.");
+            status = exitStatus;
+        }
+    }
+
+    /**
+     * Traps System.exit() within runs. Permits everything else, or defers
+     * to the previously installed security manager.
+     */
+    private static class ExitTrap extends SecurityManager
+    {
+        private final SecurityManager previous;
+
+        ExitTrap(SecurityManager previousManager) {
+            previous = previousManager;
+        }
+
+        @Override
+        public void checkExit(int status) {
+            if (runGroups.parentOf(Thread.currentThread().getThreadGroup())) {
+                throw new ExitTrappedException(status);
+            }
+            if (previous != null) {
+                previous.checkExit(status);
+            }
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+            if (previous != null) {
+                previous.checkPermission(perm);
+            }
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+            if (previous != null) {
+                previous.checkPermission(perm , context);
+            }
+        }
+    }
+}
@@ -1,7 +1,8 @@
 package edu.unibi.cluster;
 
+import edu.unibi.cluster.singularity.SingularityClient;
+import edu.unibi.cluster.tasks.ITask;
 import edu.unibi.properties.PropertiesController;
-import edu.unibi.gui.FXMLController;
 import edu.unibi.main.Logger;
 import edu.unibi.main.Utilities;
 import java.io.BufferedReader;
@@ -11,42 +12,58 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
-import javafx.application.Platform;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import java.util.List;
 
 /**
- * Controls the cluster. Uses the external BiBiGrid.jar to create and destroy 
- * the cluster. Stores status information and interacts with the GUI.
+ * Controls the cluster. Uses the external BiBiGrid.jar to create and destroy
+ * the cluster, either in a forked JVM or in-process. Tracks the cluster's
+ * phases in a ClusterLifecycle and reports its transitions and other status
+ * information to the front end, i.e. the GUI or the headless command line.
+ * Persists the state of a running cluster, so a client started later
+ * attaches to it instead of creating another one.
  * @author Philo Reipke, Bielefeld University
  */
 public class ClusterController
 {
-    private final FXMLController guiController;
+    private final static String objectContainerNamePrefix = "SINGULARITY-";
+    private final static String singularityUrlPrefix = "http://";
+    private final static String singularityUrlSuffix = "/singularity/api";
+    private final static int singularityPort = 7099;
+    private final static String bibigridModeInProcess = "in-process";
+    private final static long slavesPollInterval = 5000;
+    
+    private final IClusterListener clusterListener;
     private final PropertiesController propertiesController;
     
     private final ProcessBuilder processBuilder;
     private final ProcessListener processListener;
+    private final ClusterLifecycle lifecycle = new ClusterLifecycle();
+    private final JobQueue jobQueue;
     
     private final File fileBiBiGridJar;
     private final File fileSingularityScript;
+    private final File fileState;
+    private final boolean inProcess;
     private File fileInput = null;
     
     private String user = null;
     private String clusterId = null;
     private String masterIp = null;
+    private String objectContainerPrefix = null;
+    private boolean stateSaved = false;
+    private Process process = null;
     
-    private ObservableList<String> flavorChoices = null;
+    private List<String> flavorChoices = new ArrayList();
     
     /**
-     * Constructor. Uses the given FXMLController to interact with the GUI, 
-     * @param gui
+     * Constructor. Uses the given listener to interact with the front end.
+     * @param listener
      * @param properties
      * @throws java.io.IOException
      */
-    public ClusterController(FXMLController gui, PropertiesController properties) throws IOException {
+    public ClusterController(IClusterListener listener, PropertiesController properties) throws IOException {
         
-        guiController = gui;
+        clusterListener = listener;
         propertiesController = properties;
         
         // read available instance flavors from resource file
@@ -54,12 +71,10 @@ public class ClusterController
         BufferedReader br = null;
         try {
             br = new BufferedReader(new InputStreamReader(inputFlavors));
-            ArrayList<String> flavorsListStrings = new ArrayList();
             String flavor;
             while ((flavor = br.readLine()) != null) {
-                flavorsListStrings.add(flavor);
+                flavorChoices.add(flavor);
             }
-            flavorChoices = FXCollections.observableArrayList(flavorsListStrings);
             
         } catch (FileNotFoundException ex) {
             Logger.log("Cluster: Resource 'instance.flavors' not found!");
@@ -71,9 +86,11 @@ public class ClusterController
             Utilities.close(br);
         }
         
-        // create temporary files for cluster initialization
+        // extract BiBiGrid once per version, create temporary files for cluster initialization
+        File cacheDirectory = properties.get("cache-directory") != null ? new File(properties.get("cache-directory"))
+                              : new File(System.getProperty("user.home") , ".singularity-cluster-operator");
         try {
-            fileBiBiGridJar = Utilities.CreateTempFile("BiBiGrid-1.0.jar" , "bibigrid/BiBiGrid-1.0.jar");
+            fileBiBiGridJar = Utilities.CacheResource("BiBiGrid-1.0.jar" , "bibigrid/BiBiGrid-1.0.jar" , cacheDirectory);
             fileSingularityScript = Utilities.CreateTempFile("init.sh" , "bibigrid/singularity.sh");
         } catch (IOException ex) {
             System.out.println("Cluster: Exception creating temporary executables.");
@@ -81,44 +98,41 @@ public class ClusterController
             throw ex;
         }
         
+        boolean runInProcess = bibigridModeInProcess.equals(properties.get("bibigrid-mode"));
+        if (runInProcess && !BiBiGridProcess.Install()) {
+            Logger.log("Cluster: BiBiGrid cannot run in-process on this JVM. Forking BiBiGrid instead.");
+            runInProcess = false;
+        }
+        inProcess = runInProcess;
+        
+        fileState = new File(properties.get("cluster-state-file") != null ? properties.get("cluster-state-file") : "cluster.state");
+        jobQueue = new JobQueue(this);
+        
         processBuilder = new ProcessBuilder();
         processBuilder.redirectErrorStream(true);
         
         processListener = new ProcessListener(this);
-        processListener.start();
+        lifecycle.Subscribe(this::PhaseChanged);
     }
     
     /**
      * Attempts to start a cluster.
+     * @return TRUE if BiBiGrid has been started
      * @throws java.io.IOException 
      */
-    public void StartCluster() throws IOException {
-        
-        // Verify action
-        synchronized (processListener) {
-            
-            // Current process still alive?
-            if (processListener.isProcessAlive()) {
-                Logger.log("Cluster: Still working. Please wait.");
-                return;
-            }
-
-            // Already changing process?
-            if (!processListener.lock()) {
-                Logger.log("Cluster: Already working. Please wait.");
-                return;
-            }
-        }
+    public boolean StartCluster() throws IOException {
         
         user = propertiesController.get("openstack-username");
         if (user == null) {
             Logger.log("Cluster: No user specified. Aborting.");
-            processListener.unlock();
-            return;
-        } else if (clusterId != null) {
-            Logger.log("Cluster: Already or still running. Aborting.");
-            processListener.unlock();
-            return;
+            return false;
+        }
+        
+        // Verify action
+        if (!lifecycle.Transition(ClusterPhase.PROVISIONING , ClusterPhase.STOPPED)) {
+            Logger.log(lifecycle.getPhase().isChanging() ? "Cluster: Still working. Please wait."
+                                                         : "Cluster: Already or still running. Aborting.");
+            return false;
         }
         
         try {
@@ -126,81 +140,197 @@ public class ClusterController
         } catch (IOException ex) {
             Logger.log("Cluster: Exception writing properties file. Aborting.");
             Logger.log(ex.toString());
-            processListener.unlock();
-            return;
+            lifecycle.Force(ClusterPhase.STOPPED);
+            return false;
         }
+        
+        // Attach to a cluster started by an earlier client, if it is still alive
+        if (Attach()) {
+            return true;
+        }
+        objectContainerPrefix = objectContainerNamePrefix + user + objectContainerNamePrefix;
 
-        processBuilder.command(
-                new String[]{ "java" ,
-                              "-jar" , fileBiBiGridJar.getAbsolutePath() ,
-                              "-o" , propertiesController.getTempPropertiesFile().getAbsolutePath() ,
-                              "-u" , user ,
-                              "-ex" , fileSingularityScript.getAbsolutePath() ,
-                              "-c" });
-        Process process = processBuilder.start();
-
-        // Set process and unlock watcher
-        synchronized (processListener) {
-            
-            processListener.setProcess(process);
-            processListener.notify();
+        try {
+            process = Launch(false ,
+                             "-o" , propertiesController.getTempPropertiesFile().getAbsolutePath() ,
+                             "-u" , user ,
+                             "-ex" , fileSingularityScript.getAbsolutePath() ,
+                             "-c");
+        } catch (IOException ex) {
+            lifecycle.Force(ClusterPhase.STOPPED);
+            throw ex;
+        }
+        processListener.Listen(process , true);
+        return true;
+    }
+    
+    /**
+     * Attaches to the cluster recorded in the state file, if it belongs to
+     * the current user and its Singularity API is reachable. Applies the 
+     * recorded flavors and slave count, so jobs are sized for the cluster, 
+     * and starts the JobQueue. A state file of an unreachable cluster is 
+     * discarded.
+     * @return TRUE if attached
+     */
+    private boolean Attach() {
+        
+        if ("no".equals(propertiesController.get("attach-cluster"))) {
+            return false;
+        }
+        ClusterState state = ClusterState.Load(fileState);
+        if (state == null) {
+            return false;
+        }
+        if (!user.equals(state.getUser())) {
+            Logger.log("Cluster: Recorded " + state + " belongs to user '" + state.getUser() + "'. Not attaching.");
+            return false;
+        }
+        
+        Logger.log("Cluster: Checking recorded " + state + "...");
+        SingularityClient client = new SingularityClient(getSingularityApiUrl(state.getMasterIp()) , propertiesController);
+        boolean reachable = client.Ping(propertiesController.getInt("attach-timeout-ms" , 5000));
+        client.close();
+        if (!reachable) {
+            Logger.log("Cluster: Singularity not reachable at " + state.getMasterIp() + ". Discarding cluster state.");
+            Logger.log("Cluster: Terminate cluster '" + state.getClusterId() + "' using BiBiGrid if it is still running.");
+            ClusterState.Delete(fileState);
+            return false;
+        }
+        
+        clusterId = state.getClusterId();
+        masterIp = state.getMasterIp();
+        objectContainerPrefix = state.getContainerPrefix() != null ? state.getContainerPrefix()
+                                : objectContainerNamePrefix + user + objectContainerNamePrefix;
+        propertiesController.put("master-instance-type" , state.getMasterType());
+        propertiesController.put("slave-instance-type" , state.getSlaveType());
+        propertiesController.put("slave-instance-count" , state.getSlaveCount());
+        
+        Logger.log("Cluster: Attached to " + state + ".");
+        lifecycle.Transition(ClusterPhase.RUNNING , ClusterPhase.PROVISIONING);
+        jobQueue.Start();
+        return true;
+    }
+    
+    /**
+     * Completes provisioning once BiBiGrid has initialized the cluster. Waits
+     * for all slaves to register with Singularity, then starts the JobQueue.
+     * Gives up waiting after 'slaves-ready-timeout-ms', running jobs on the
+     * slaves registered so far. Returns early if the cluster is stopped 
+     * meanwhile.
+     */
+    protected void CompleteProvisioning() {
+        
+        int slaves = propertiesController.getInt("slave-instance-count" , 0);
+        long timeout = propertiesController.getLong("slaves-ready-timeout-ms" , 600000);
+        long deadline = System.currentTimeMillis() + timeout;
+        
+        Logger.log("Cluster: Waiting for " + slaves + " slave(s) to register...");
+        SingularityClient client = new SingularityClient(getSingularityApiUrl() , propertiesController);
+        try {
+            while (lifecycle.getPhase() == ClusterPhase.MASTER_UP) {
+                int active = -1;
+                try {
+                    active = client.GetActiveSlaves();
+                } catch (IOException ex) {
+                    Logger.log("Cluster: Singularity not available yet (" + ex.getMessage() + ").");
+                }
+                if (active >= slaves) {
+                    break;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    Logger.log("Cluster: Only " + Math.max(active , 0) + " of " + slaves + " slave(s) registered after "
+                               + timeout / 1000 + " s. Running jobs anyway.");
+                    break;
+                }
+                Thread.sleep(Math.min(slavesPollInterval , Math.max(deadline - System.currentTimeMillis() , 1)));
+            }
+        } catch (InterruptedException ex) {
+            Logger.log("Cluster: Interrupted waiting for slaves.");
+            return;
+        } finally {
+            client.close();
+        }
+        
+        if (lifecycle.Transition(ClusterPhase.SLAVES_READY , ClusterPhase.MASTER_UP)
+            && lifecycle.Transition(ClusterPhase.RUNNING , ClusterPhase.SLAVES_READY)) {
+            Logger.log("Initializing tasks...");
+            jobQueue.Start();
         }
     }
     
     /**
      * Attempts to stop the cluster.
      * @param force
+     * @return TRUE if BiBiGrid has been started
      * @throws java.io.IOException 
      */
-    public void StopCluster(boolean force) throws IOException {
+    public boolean StopCluster(boolean force) throws IOException {
         
         if (!force) {
             // Verify action
-            synchronized (processListener) {
-
-                // Current process still alive?
-                if (processListener.isProcessAlive()) {
-                    Logger.log("Cluster: Still working. Please wait.");
-                    return;
-                }
-
-                // Already changing process?
-                if (!processListener.lock()) {
-                    Logger.log("Cluster: Already working. Please wait.");
-                    return;
-                }
+            if (process != null && process.isAlive()) {
+                Logger.log("Cluster: Still working. Please wait.");
+                return false;
             }
-
+            if (!lifecycle.Transition(ClusterPhase.TERMINATING , ClusterPhase.MASTER_UP , ClusterPhase.SLAVES_READY ,
+                                      ClusterPhase.RUNNING , ClusterPhase.FAILED)) {
+                Logger.log(lifecycle.getPhase() == ClusterPhase.STOPPED ? "Cluster: No cluster running."
+                                                                        : "Cluster: Still working. Please wait.");
+                return false;
+            }
+        } else {
             if (clusterId == null) {
-                Logger.log("Cluster: No cluster running.");
-                processListener.unlock();
-                return;
+                return false;
             }
+            lifecycle.Force(ClusterPhase.TERMINATING);
         }
 
-        processBuilder.command(
-                new String[]{ "java" ,
-                              "-jar" , fileBiBiGridJar.getAbsolutePath() ,
-                              "-o" , propertiesController.getTempPropertiesFile().getAbsolutePath() ,
-                              "-u" , user ,
-                              "-t" , clusterId });
-        Process process = processBuilder.start();
+        // A forced termination must outlive the application, so it is always forked
+        Process terminating;
+        try {
+            terminating = Launch(force ,
+                                 "-o" , propertiesController.getTempPropertiesFile().getAbsolutePath() ,
+                                 "-u" , user ,
+                                 "-t" , clusterId);
+        } catch (IOException ex) {
+            lifecycle.Force(ClusterPhase.FAILED);
+            throw ex;
+        }
 
         if (!force) {
-            // Set process and unlock watcher
-            synchronized (processListener) {
-
-                processListener.setProcess(process);
-                processListener.notify();
-            }
+            process = terminating;
+            processListener.Listen(process , false);
         }
+        return true;
     }
     
     /**
-     * Interrupts the ProcessListener thread and terminates the cluster.
+     * Runs BiBiGrid with the given arguments.
+     * @param fork TRUE to run BiBiGrid in a forked JVM even in in-process mode
+     * @param args
+     * @return the forked process, or the in-process run
+     * @throws IOException 
+     */
+    private Process Launch(boolean fork, String... args) throws IOException {
+        
+        if (inProcess && !fork) {
+            return new BiBiGridProcess(fileBiBiGridJar , args);
+        }
+        List<String> command = new ArrayList();
+        command.add("java");
+        command.add("-jar");
+        command.add(fileBiBiGridJar.getAbsolutePath());
+        for (String arg : args) {
+            command.add(arg);
+        }
+        processBuilder.command(command);
+        return processBuilder.start();
+    }
+    
+    /**
+     * Terminates the cluster.
      */
     public void exit() {
-        processListener.interrupt();
         try {
             StopCluster(true);
         } catch (IOException ex) {
@@ -210,21 +340,127 @@ public class ClusterController
     }
     
     /**
-     * Unlocks the button to stop the cluster.
+     * Reports transitions of the lifecycle to the front end.
+     */
+    private void PhaseChanged(ClusterPhase previous, ClusterPhase phase, long durationMs) {
+        switch (phase) {
+            case MASTER_UP:
+                ClusterStarted();
+                break;
+            case RUNNING:
+                if (previous == ClusterPhase.PROVISIONING) { // attached
+                    ClusterStarted();
+                }
+                break;
+            case STOPPED:
+                ClusterStopped();
+                break;
+            case FAILED:
+                ClusterFailed();
+                break;
+        }
+    }
+    
+    /**
+     * Notifies the front end that the cluster has been initialized.
+     */
+    private void ClusterStarted() {
+        SaveState();
+        clusterListener.ClusterStarted();
+    }
+    
+    /**
+     * Notifies the front end that the cluster has been terminated or could
+     * not be started.
+     */
+    private void ClusterStopped() {
+        if (stateSaved && clusterId == null) {
+            ClusterState.Delete(fileState);
+            stateSaved = false;
+        }
+        clusterListener.ClusterStopped();
+    }
+    
+    /**
+     * Writes the state of the initialized cluster to the state file.
+     */
+    private void SaveState() {
+        ClusterState state = new ClusterState(clusterId , masterIp , user ,
+                                              propertiesController.get("master-instance-type") ,
+                                              propertiesController.get("slave-instance-type") ,
+                                              propertiesController.get("slave-instance-count") ,
+                                              objectContainerPrefix);
+        try {
+            state.Save(fileState);
+            stateSaved = true;
+        } catch (IOException ex) {
+            Logger.log("Cluster: Exception writing cluster state '" + fileState + "'.");
+            Logger.log(ex.toString());
+        }
+    }
+    
+    /**
+     * Notifies the front end that BiBiGrid has ended without initializing or
+     * terminating the cluster.
+     */
+    private void ClusterFailed() {
+        clusterListener.ClusterFailed();
+    }
+    
+    /**
+     * Notifies the front end that all tasks have been executed.
+     * @param success TRUE if the tasks of all shards have succeeded
      */
-    protected void UnlockStopButton() {
-        Platform.runLater(() -> {
-            guiController.UnlockStopButton();
-        });
+    protected void TasksFinished(boolean success) {
+        clusterListener.TasksFinished(success);
     }
     
     /**
-     * Unlocks GUI elements for authentification and cluster settings.
+     * Lets the front end choose the file to store results in.
+     * @param defaultFile file used if no file is chosen
+     * @return 
      */
-    protected void UnlockSettings() {
-        Platform.runLater(() -> {
-            guiController.UnlockSettings();
-        });
+    public File ChooseOutputFile(File defaultFile) {
+        File file = clusterListener.ChooseOutputFile(defaultFile);
+        return file != null ? file : defaultFile;
+    }
+    
+    /**
+     * Submits a job to the queue. Jobs are executed once the cluster is up, 
+     * and can be submitted at any time while it is running.
+     * @param owner owner sharing the cluster fairly with other owners
+     * @param module module to be executed
+     * @param inputFile file containing the module's input
+     * @param outputFile file the results are written to, NULL to let the 
+     * front end choose
+     * @return the job
+     */
+    public QueuedJob SubmitJob(String owner, ITask module, File inputFile, File outputFile) {
+        return jobQueue.Submit(owner, module, inputFile, outputFile);
+    }
+    
+    /**
+     * Gets the queue of jobs executed on the cluster.
+     * @return 
+     */
+    public JobQueue getJobQueue() {
+        return jobQueue;
+    }
+    
+    /**
+     * Gets the cluster's lifecycle, e.g. to observe its transitions.
+     * @return 
+     */
+    public ClusterLifecycle getLifecycle() {
+        return lifecycle;
+    }
+    
+    /**
+     * Checks if the cluster has been initialized and accepts jobs.
+     * @return 
+     */
+    public boolean isRunning() {
+        return masterIp != null;
     }
     
     /**
@@ -275,6 +511,26 @@ public class ClusterController
         return masterIp;
     }
 
+    /**
+     * Gets the URL of the cluster's Singularity REST API.
+     * @return 
+     */
+    public String getSingularityApiUrl() {
+        return getSingularityApiUrl(masterIp);
+    }
+    
+    private String getSingularityApiUrl(String ip) {
+        return singularityUrlPrefix + ip + ":" + propertiesController.getInt("singularity-port" , singularityPort) + singularityUrlSuffix;
+    }
+    
+    /**
+     * Gets the prefix of the Swift containers of all jobs on the cluster.
+     * @return 
+     */
+    public String getObjectContainerPrefix() {
+        return objectContainerPrefix;
+    }
+
     /**
      * Gets the PropertiesController.
      * @return 
@@ -287,7 +543,7 @@ public class ClusterController
      * Gets a list of available instance flavors.
      * @return 
      */
-    public ObservableList<String> getFlavorChoices() {
+    public List<String> getFlavorChoices() {
         return flavorChoices;
     }
 }
@@ -0,0 +1,165 @@
+package edu.unibi.cluster;
+
+import edu.unibi.main.Logger;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * State machine of the cluster's lifecycle. Transitions are atomic, so
+ * concurrent attempts to start or stop the cluster cannot both succeed.
+ * Records the wall-clock time spent in each phase and notifies subscribed
+ * observers of every transition on a single notifier thread, in order.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class ClusterLifecycle
+{
+    private final static ClusterPhase[] provisioningPhases = new ClusterPhase[]{
+        ClusterPhase.PROVISIONING , ClusterPhase.MASTER_UP , ClusterPhase.SLAVES_READY };
+
+    private final List<IPhaseObserver> observers = new CopyOnWriteArrayList();
+    private final Map<ClusterPhase , Long> durations = new EnumMap(ClusterPhase.class);
+    private final ExecutorService notifier;
+
+    private ClusterPhase phase = ClusterPhase.STOPPED;
+    private long phaseStarted = System.currentTimeMillis();
+
+    /**
+     * Constructor. Starts in the STOPPED phase.
+     */
+    public ClusterLifecycle() {
+        notifier = Executors.newSingleThreadExecutor(( Runnable runnable ) -> {
+            Thread thread = new Thread(runnable , "cluster-observers");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Enters a phase if the current phase is one of the given phases.
+     * @param next phase to enter
+     * @param expected phases the transition is allowed from
+     * @return TRUE if the phase has been entered
+     */
+    public synchronized boolean Transition(ClusterPhase next, ClusterPhase... expected) {
+        if (!Arrays.asList(expected).contains(phase)) {
+            return false;
+        }
+        Enter(next);
+        return true;
+    }
+
+    /**
+     * Enters a phase regardless of the current phase.
+     * @param next
+     */
+    public synchronized void Force(ClusterPhase next) {
+        Enter(next);
+    }
+
+    /**
+     * Records the time spent in the current phase and notifies observers.
+     */
+    private void Enter(ClusterPhase next) {
+
+        long now = System.currentTimeMillis();
+        ClusterPhase previous = phase;
+        long duration = now - phaseStarted;
+        if (previous == next) {
+            return;
+        }
+        phase = next;
+        phaseStarted = now;
+        durations.put(previous , duration);
+        if (next == ClusterPhase.PROVISIONING) {
+            for (ClusterPhase provisioning : provisioningPhases) {
+                durations.remove(provisioning);
+            }
+        }
+
+        log(String.format("%s -> %s after %.1f s." , previous , next , duration / 1000.0));
+        if (next == ClusterPhase.RUNNING && durations.containsKey(ClusterPhase.PROVISIONING)) {
+            log("Provisioned in " + FormatProvisioning() + ".");
+        }
+
+        for (IPhaseObserver observer : observers) {
+            notifier.execute(() -> {
+                try {
+                    observer.PhaseChanged(previous , next , duration);
+                } catch (RuntimeException ex) {
+                    log("Exception notifying observer.");
+                    log(ex.toString());
+                }
+            });
+        }
+    }
+
+    /**
+     * Formats the total and per phase provisioning time.
+     */
+    private String FormatProvisioning() {
+        long total = 0;
+        StringBuilder phases = new StringBuilder();
+        for (ClusterPhase provisioning : provisioningPhases) {
+            Long duration = durations.get(provisioning);
+            if (duration != null) {
+                total += duration;
+                phases.append(phases.length() > 0 ? ", " : "").append(String.format("%s %.1f s" , provisioning , duration / 1000.0));
+            }
+        }
+        return String.format("%.1f s (%s)" , total / 1000.0 , phases);
+    }
+
+    /**
+     * Subscribes an observer to all following transitions.
+     * @param observer
+     */
+    public void Subscribe(IPhaseObserver observer) {
+        observers.add(observer);
+    }
+
+    /**
+     * Unsubscribes an observer.
+     * @param observer
+     */
+    public void Unsubscribe(IPhaseObserver observer) {
+        observers.remove(observer);
+    }
+
+    /**
+     * Gets the current phase.
+     * @return
+     */
+    public synchronized ClusterPhase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Gets the time spent in each phase when it was left the last time. The
+     * provisioning phases are reset whenever a cluster is provisioned.
+     * @return
+     */
+    public synchronized Map<ClusterPhase , Long> getDurations() {
+        return new EnumMap(durations);
+    }
+
+    /**
+     * Gets the time spent in the current phase so far.
+     * @return
+     */
+    public synchronized long getPhaseDuration() {
+        return System.currentTimeMillis() - phaseStarted;
+    }
+
+    /**
+     * Writes a message using the Logger.
+     * @param msg
+     */
+    private void log(String msg) {
+        Logger.log("Lifecycle: " + msg);
+    }
+}
@@ -0,0 +1,32 @@
+package edu.unibi.cluster;
+
+/**
+ * Phases of the cluster's lifecycle, as tracked by the ClusterLifecycle.
+ * @author Philo Reipke, University Bielefeld
+ */
+public enum ClusterPhase
+{
+    /** No cluster. */
+    STOPPED,
+    /** BiBiGrid is creating the cluster. */
+    PROVISIONING,
+    /** BiBiGrid has reported the master, slaves may not have registered yet. */
+    MASTER_UP,
+    /** All slaves have registered with Singularity. */
+    SLAVES_READY,
+    /** The JobQueue is executing jobs on the cluster. */
+    RUNNING,
+    /** BiBiGrid is terminating the cluster. */
+    TERMINATING,
+    /** BiBiGrid has ended without creating or terminating the cluster as requested. */
+    FAILED;
+
+    /**
+     * Checks if the cluster is changing, so it can be neither started nor
+     * stopped.
+     * @return
+     */
+    public boolean isChanging() {
+        return this == PROVISIONING || this == MASTER_UP || this == SLAVES_READY || this == TERMINATING;
+    }
+}
@@ -0,0 +1,149 @@
+package edu.unibi.cluster;
+
+import edu.unibi.main.Logger;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * State of a running cluster, persisted to a local file once the cluster has
+ * been initialized and deleted once it has been terminated. Lets a client
+ * started later attach to the cluster instead of creating another one.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class ClusterState
+{
+    private final static String keyClusterId = "cluster-id";
+    private final static String keyMasterIp = "master-ip";
+    private final static String keyUser = "openstack-username";
+    private final static String keyMasterType = "master-instance-type";
+    private final static String keySlaveType = "slave-instance-type";
+    private final static String keySlaveCount = "slave-instance-count";
+    private final static String keyContainerPrefix = "object-container-prefix";
+
+    private final Properties values = new Properties();
+
+    /**
+     * Constructor.
+     * @param clusterId
+     * @param masterIp
+     * @param user
+     * @param masterType master instance flavor
+     * @param slaveType slave instance flavor
+     * @param slaveCount number of slaves
+     * @param containerPrefix prefix of the Swift containers of all jobs
+     */
+    public ClusterState(String clusterId, String masterIp, String user, String masterType, String slaveType,
+                        String slaveCount, String containerPrefix) {
+        put(keyClusterId , clusterId);
+        put(keyMasterIp , masterIp);
+        put(keyUser , user);
+        put(keyMasterType , masterType);
+        put(keySlaveType , slaveType);
+        put(keySlaveCount , slaveCount);
+        put(keyContainerPrefix , containerPrefix);
+    }
+
+    private ClusterState() {
+    }
+
+    /**
+     * Reads the state from a file.
+     * @param file
+     * @return the state, NULL if the file does not exist or lacks the
+     * cluster ID or master IP
+     */
+    public static ClusterState Load(File file) {
+
+        if (!file.isFile()) {
+            return null;
+        }
+        ClusterState state = new ClusterState();
+        try (InputStream input = new FileInputStream(file)) {
+            state.values.load(input);
+        } catch (IOException ex) {
+            Logger.log("Cluster: Exception reading cluster state '" + file + "'.");
+            Logger.log(ex.toString());
+            return null;
+        }
+        if (state.getClusterId() == null || state.getMasterIp() == null) {
+            Logger.log("Cluster: Ignoring incomplete cluster state '" + file + "'.");
+            return null;
+        }
+        return state;
+    }
+
+    /**
+     * Writes the state to a file. The file is replaced atomically, so a
+     * client crashing meanwhile never leaves a partial state behind.
+     * @param file
+     * @throws IOException
+     */
+    public void Save(File file) throws IOException {
+
+        File temp = new File(file.getAbsoluteFile().getParentFile() , file.getName() + ".tmp");
+        try (OutputStream output = new FileOutputStream(temp)) {
+            values.store(output , "Singularity Cluster Operator - cluster state");
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not replace '" + file + "'.");
+            }
+        }
+    }
+
+    /**
+     * Deletes the state file, e.g. once the cluster has been terminated.
+     * @param file
+     */
+    public static void Delete(File file) {
+        if (file.exists() && !file.delete()) {
+            Logger.log("Cluster: Could not delete cluster state '" + file + "'.");
+        }
+    }
+
+    private void put(String key, String value) {
+        if (value != null) {
+            values.setProperty(key , value);
+        }
+    }
+
+    public String getClusterId() {
+        return values.getProperty(keyClusterId);
+    }
+
+    public String getMasterIp() {
+        return values.getProperty(keyMasterIp);
+    }
+
+    public String getUser() {
+        return values.getProperty(keyUser);
+    }
+
+    public String getMasterType() {
+        return values.getProperty(keyMasterType);
+    }
+
+    public String getSlaveType() {
+        return values.getProperty(keySlaveType);
+    }
+
+    public String getSlaveCount() {
+        return values.getProperty(keySlaveCount);
+    }
+
+    public String getContainerPrefix() {
+        return values.getProperty(keyContainerPrefix);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cluster '%s' (master %s, %s x %s, master %s)" , getClusterId() , getMasterIp() ,
+                             getSlaveCount() , getSlaveType() , getMasterType());
+    }
+}
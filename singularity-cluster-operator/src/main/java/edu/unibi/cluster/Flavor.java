@@ -0,0 +1,79 @@
+package edu.unibi.cluster;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Instance flavor as listed in instance.flavors. Flavor names encode the
+ * number of cores, the RAM and the disk size in GB, e.g. c2r30d160.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class Flavor
+{
+    private static final Pattern pattern = Pattern.compile("c(\\d+)r(\\d+)d(\\d+)");
+
+    private final String name;
+    private final int cores;
+    private final int memoryGb;
+    private final int diskGb;
+
+    private Flavor(String flavorName, int coreCount, int memory, int disk) {
+        name = flavorName;
+        cores = coreCount;
+        memoryGb = memory;
+        diskGb = disk;
+    }
+
+    /**
+     * Parses a flavor name.
+     * @param name
+     * @return the flavor, or NULL if the name does not encode its resources
+     */
+    public static Flavor Parse(String name) {
+
+        if (name == null) {
+            return null;
+        }
+        Matcher matcher = pattern.matcher(name.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        try {
+            return new Flavor(name.trim() , Integer.parseInt(matcher.group(1)) ,
+                              Integer.parseInt(matcher.group(2)) , Integer.parseInt(matcher.group(3)));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCores() {
+        return cores;
+    }
+
+    public int getMemoryGb() {
+        return memoryGb;
+    }
+
+    public int getDiskGb() {
+        return diskGb;
+    }
+
+    /**
+     * Gets the memory Mesos offers on a slave of this flavor. Mesos keeps
+     * 1 GB for the system, or half of the memory on small instances.
+     * @return memory in MB
+     */
+    public int getOfferedMemoryMb() {
+        int memoryMb = memoryGb * 1024;
+        return memoryMb >= 2048 ? memoryMb - 1024 : memoryMb / 2;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + cores + " cores, " + memoryGb + " GB RAM, " + diskGb + " GB disk)";
+    }
+}
@@ -0,0 +1,42 @@
+package edu.unibi.cluster;
+
+import java.io.File;
+
+/**
+ * Interface for front ends driving the ClusterController, i.e. the GUI and
+ * the headless command line. Callbacks are invoked on the ClusterLifecycle's
+ * notifier thread or the JobQueue's threads, so implementations have to pass
+ * them to their own threads.
+ * @author Philo Reipke, University Bielefeld
+ */
+public interface IClusterListener
+{
+    /**
+     * Called once the cluster has been initialized and can be stopped.
+     */
+    public void ClusterStarted();
+    
+    /**
+     * Called once the cluster has been terminated or could not be started.
+     */
+    public void ClusterStopped();
+    
+    /**
+     * Called if BiBiGrid has ended without initializing or terminating the
+     * cluster as requested. The cluster may still be running.
+     */
+    public void ClusterFailed();
+    
+    /**
+     * Called once all tasks have been executed on the cluster.
+     * @param success TRUE if the tasks of all shards have succeeded
+     */
+    public void TasksFinished(boolean success);
+    
+    /**
+     * Chooses the file to store results in. May block until chosen.
+     * @param defaultFile file used if no file is chosen
+     * @return the chosen file, or NULL to use the default file
+     */
+    public File ChooseOutputFile(File defaultFile);
+}
@@ -0,0 +1,19 @@
+package edu.unibi.cluster;
+
+/**
+ * Interface for observers of the cluster's lifecycle. Observers are notified
+ * of transitions in order, on a notifier thread shared by all observers, so
+ * they never block BiBiGrid's output being read. An observer blocking the
+ * notifier delays the notifications of all others.
+ * @author Philo Reipke, University Bielefeld
+ */
+public interface IPhaseObserver
+{
+    /**
+     * Called for every transition of the cluster's lifecycle.
+     * @param previous phase left
+     * @param phase phase entered
+     * @param durationMs time spent in the previous phase
+     */
+    public void PhaseChanged(ClusterPhase previous, ClusterPhase phase, long durationMs);
+}
@@ -0,0 +1,223 @@
+package edu.unibi.cluster;
+
+import edu.unibi.cluster.tasks.ITask;
+import edu.unibi.main.Logger;
+import edu.unibi.properties.PropertiesController;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queue of jobs executed on a running cluster, so many inputs can be run
+ * without provisioning a cluster for each. Jobs can be submitted at any
+ * time; they are started once the cluster is up, at most a configured number
+ * of them at a time. In "fair" scheduling, the next job is taken from the
+ * owner with the fewest running jobs, then the least runtime consumed, so
+ * no owner starves others by submitting many jobs. In "fifo" scheduling,
+ * jobs are started in order of submission.
+ *
+ * Once all jobs have finished, the queue is drained and reports to the
+ * ClusterController whether all of them have succeeded.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class JobQueue
+{
+    private final static String schedulingFifo = "fifo";
+
+    private final ClusterController clusterController;
+    private final int concurrency;
+    private final boolean fairShare;
+
+    private final List<QueuedJob> pending = new ArrayList();
+    private final List<QueuedJob> jobs = new ArrayList();
+    private final Map<String, Integer> runningByOwner = new HashMap();
+    private final Map<String, Long> usageByOwner = new HashMap();
+    private final ExecutorService runner;
+
+    private boolean started = false;
+    private int running = 0;
+    private int finished = 0;
+    private boolean allSucceeded = true;
+
+    /**
+     * Constructor. Reads the number of concurrent jobs ('job-concurrency')
+     * and the scheduling policy ('job-scheduling') from the properties.
+     * @param controller
+     */
+    public JobQueue(ClusterController controller) {
+
+        clusterController = controller;
+        PropertiesController properties = controller.getPropertiesController();
+        concurrency = Math.max(properties.getInt("job-concurrency" , 1) , 1);
+        fairShare = !schedulingFifo.equals(properties.get("job-scheduling"));
+
+        AtomicInteger workers = new AtomicInteger();
+        runner = Executors.newCachedThreadPool(( Runnable runnable ) -> {
+            Thread thread = new Thread(runnable , "job-runner-" + workers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submits a job. It is started as soon as the cluster is up and the
+     * scheduling policy selects it.
+     * @param owner owner sharing the cluster fairly with other owners
+     * @param module module to be executed
+     * @param inputFile file containing the module's input
+     * @param outputFile file the results are written to, NULL to let the
+     * front end choose
+     * @return the job
+     */
+    public synchronized QueuedJob Submit(String owner, ITask module, File inputFile, File outputFile) {
+
+        QueuedJob job = new QueuedJob(jobs.size() + 1 , owner != null ? owner : "default" , module , inputFile , outputFile);
+        jobs.add(job);
+        pending.add(job);
+        log("Queued " + job + ".");
+        Dispatch();
+        return job;
+    }
+
+    /**
+     * Starts executing jobs, once the cluster is up.
+     */
+    public synchronized void Start() {
+        started = true;
+        log(pending.size() + " job(s) pending, running " + concurrency + " at a time ("
+            + (fairShare ? "fair share" : "fifo") + ").");
+        Dispatch();
+    }
+
+    /**
+     * Stops starting jobs, e.g. once the cluster has been terminated. Pending
+     * jobs are cancelled; running jobs fail on their own.
+     */
+    public synchronized void Stop() {
+        started = false;
+        for (QueuedJob job : pending) {
+            job.Finished(QueuedJob.State.CANCELLED);
+            log("Cancelled " + job + ".");
+        }
+        pending.clear();
+    }
+
+    /**
+     * Starts pending jobs while fewer than the configured number are running.
+     */
+    private synchronized void Dispatch() {
+
+        while (started && running < concurrency && !pending.isEmpty()) {
+            QueuedJob job = SelectNext();
+            pending.remove(job);
+            running++;
+            runningByOwner.merge(job.getOwner() , 1 , Integer::sum);
+            job.Started();
+            runner.execute(() -> Run(job));
+        }
+    }
+
+    /**
+     * Selects the next job according to the scheduling policy.
+     */
+    private QueuedJob SelectNext() {
+
+        QueuedJob next = pending.get(0);
+        if (!fairShare) {
+            return next;
+        }
+        for (QueuedJob job : pending) {
+            int order = Integer.compare(runningByOwner.getOrDefault(job.getOwner() , 0) ,
+                                        runningByOwner.getOrDefault(next.getOwner() , 0));
+            if (order == 0) {
+                order = Long.compare(getUsage(job.getOwner()) , getUsage(next.getOwner()));
+            }
+            if (order < 0) {
+                next = job;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Gets the runtime consumed by an owner's jobs, including running ones.
+     */
+    private long getUsage(String owner) {
+        long usage = usageByOwner.getOrDefault(owner , 0L);
+        for (QueuedJob job : jobs) {
+            if (job.getState() == QueuedJob.State.RUNNING && job.getOwner().equals(owner)) {
+                usage += job.getRuntime();
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * Executes a job on a runner thread.
+     */
+    private void Run(QueuedJob job) {
+
+        log("Starting " + job + ".");
+        boolean success = false;
+        try {
+            TaskExecutor executor = new TaskExecutor(clusterController , job.getId());
+            success = executor.RunModule(job.getModule() , job.getInputFile() , job.getOutputFile());
+        } catch (Exception ex) {
+            log("Exception performing " + job + ".");
+            log(ex.toString());
+        }
+        job.Finished(success ? QueuedJob.State.SUCCEEDED : QueuedJob.State.FAILED);
+        log("Finished " + job + " after " + job.getRuntime() / 1000 + " s.");
+
+        boolean drained;
+        boolean succeeded;
+        synchronized (this) {
+            running--;
+            finished++;
+            runningByOwner.merge(job.getOwner() , -1 , Integer::sum);
+            usageByOwner.merge(job.getOwner() , job.getRuntime() , Long::sum);
+            allSucceeded &= success;
+            Dispatch();
+
+            drained = running == 0 && pending.isEmpty();
+            succeeded = allSucceeded;
+            if (drained) {
+                allSucceeded = true;
+            }
+        }
+
+        if (drained) {
+            log("Queue drained after " + finished + " job(s).");
+            clusterController.TasksFinished(succeeded);
+        }
+    }
+
+    /**
+     * Checks if jobs are pending or running.
+     * @return
+     */
+    public synchronized boolean isBusy() {
+        return running > 0 || !pending.isEmpty();
+    }
+
+    /**
+     * Gets all jobs submitted so far.
+     * @return
+     */
+    public synchronized List<QueuedJob> getJobs() {
+        return new ArrayList(jobs);
+    }
+
+    /**
+     * Writes a message using the Logger.
+     * @param msg
+     */
+    private void log(String msg) {
+        Logger.log("Queue: " + msg);
+    }
+}
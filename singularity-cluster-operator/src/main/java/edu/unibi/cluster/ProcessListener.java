@@ -1,189 +1,160 @@
 package edu.unibi.cluster;
 
-import edu.unibi.cluster.tasks.impl.SingularityBlastp;
-import edu.unibi.cluster.tasks.impl.SingularityDownloader;
 import edu.unibi.main.Logger;
 import edu.unibi.main.Utilities;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import javafx.application.Platform;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * Listens and evaluates the output of the currently stored BiBiGrid process. 
- * Retrieves values such as cluster ID and master IP. Controls initialization
- * of the TaskExecutor.
+ * Reads and evaluates the output of BiBiGrid processes. Retrieves values
+ * such as cluster ID and master IP and drives the cluster's lifecycle.
+ * Each process is read by a task of its own, so no thread waits while no
+ * process is running, and lines are matched against precompiled patterns.
  * @author Philo Reipke, Bielefeld University
  * @since 0.1
  */
-public class ProcessListener extends Thread
+public class ProcessListener
 {
+    private final static Pattern clusterCreated = Pattern.compile("Cluster \\(ID: (.*)\\) successfully created!");
+    private final static Pattern masterIp = Pattern.compile("export BIBIGRID_MASTER=(.*)$");
+    private final static Pattern aborted = Pattern.compile("Aborting operation\\. No instances started/terminated\\.");
+    private final static Pattern terminated = Pattern.compile("Cluster \\(ID: .*\\) successfully terminated"
+                                                              + "|No suitable bibigrid cluster with ID: \\[.*\\] found\\.");
+
     private final ClusterController clusterController;
-    
-    private Process process = null;
-    
-    private Boolean isLocked = false;
-    
+    private final ClusterLifecycle lifecycle;
+    private final ExecutorService readers;
+
     /**
      * Constructor. Uses the given ClusterController to update the GUI.
      * @param controller
      */
     public ProcessListener(ClusterController controller) {
         clusterController = controller;
+        lifecycle = controller.getLifecycle();
+
+        AtomicInteger count = new AtomicInteger();
+        readers = Executors.newCachedThreadPool(( Runnable runnable ) -> {
+            Thread thread = new Thread(runnable , "bibigrid-reader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
      * Gets the ClusterController.
-     * @return 
+     * @return
      */
     public ClusterController getClusterController() {
         return clusterController;
     }
-    
+
     /**
-     * Listens to the set process' streams and evaluates the output on 
-     * notification. All output is written using the Logger and evaluated to 
-     * retrieve the current process' state and data such as cluster ID and 
-     * master IP. Runs tasks using the TaskPerformer on successful cluster 
-     * initialization.
+     * Starts reading the output of a BiBiGrid process creating or terminating
+     * the cluster.
+     * @param process
+     * @param starting TRUE if the process creates the cluster
      */
-    @Override
-    public void run() {
-        
-        while (true) {
-            
-            // Wait for notification
-            synchronized (this) {
-                try {
-                    this.wait();
-                } catch (InterruptedException ex) {
-                    System.out.println(ex);
-                }
-            }
-            
-            boolean clusterInitialized = false;
-
-            // Read stream and process output
-            BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            try {
-                String msg;
-                String masterIpIdent = "export BIBIGRID_MASTER=";
-                
-                while ((msg = br.readLine()) != null) {
-                    
-                    final String msgFinal = msg;
-                    log("BiBiGrid: " + msgFinal);
-                    
-                    // Evaluate BiBiGrid output
-                    if (msg.contains(") successfully created!") && msg.contains("Cluster (ID: ")) { // success, cluster ID
-                        
-                        msg = Utilities.parseSubstring(msg , "Cluster (ID: " , ") successfully created!");
-                        log("Cluster ID: " + msg);
-                        clusterController.setClusterId(msg);
-                        
-                    } else if (msg.contains("export BIBIGRID_MASTER=")) { // success, master IP
-                        
-                        msg = msg.substring(msg.lastIndexOf(masterIpIdent) + masterIpIdent.length());
-                        log("Master IP: " + msg);
-                        clusterController.setMasterIp(msg);
-                        clusterInitialized = true;
-                        clusterController.UnlockStopButton();
-                        
-                    } else if (msg.contains("Aborting operation. No instances started/terminated.")) { // fail
-                        
-                        if (clusterController.getClusterId() == null) {
-                            clusterController.UnlockSettings();
-                        }
-                        
-                    } else if ((msg.contains(") successfully terminated") && msg.contains("Cluster (ID: ")) || // terminated
-                            (msg.contains("No suitable bibigrid cluster with ID: [") && msg.contains("] found."))) { // not found
-                        
-                        clusterController.setClusterId(null);
-                        clusterController.setMasterIp(null);
-                        clusterController.UnlockSettings();
+    public void Listen(Process process, boolean starting) {
+        readers.execute(() -> Read(process , starting));
+    }
+
+    /**
+     * Reads the process' output until it ends. All output is written using
+     * the Logger and evaluated to retrieve the process' state and data such
+     * as cluster ID and master IP. Completes provisioning once the cluster
+     * has been initialized.
+     */
+    private void Read(Process process, boolean starting) {
+
+        boolean clusterInitialized = false;
+        boolean clusterStopped = false;
+        long started = System.currentTimeMillis();
+
+        // Read stream and process output
+        BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            String msg;
+            while ((msg = br.readLine()) != null) {
+
+                log("BiBiGrid: " + msg);
+                Matcher matcher;
+
+                // Evaluate BiBiGrid output
+                if ((matcher = clusterCreated.matcher(msg)).find()) { // success, cluster ID
+
+                    log("Cluster ID: " + matcher.group(1));
+                    clusterController.setClusterId(matcher.group(1));
+
+                } else if ((matcher = masterIp.matcher(msg)).find()) { // success, master IP
+
+                    log("Master IP: " + matcher.group(1));
+                    clusterController.setMasterIp(matcher.group(1));
+                    clusterInitialized = true;
+                    lifecycle.Transition(ClusterPhase.MASTER_UP , ClusterPhase.PROVISIONING);
+
+                } else if (aborted.matcher(msg).find()) { // fail
+
+                    if (clusterController.getClusterId() == null) {
+                        clusterStopped = true;
+                        lifecycle.Force(ClusterPhase.STOPPED);
                     }
-                }
-            } catch (IOException ex) {
-                log("Exception listening to process stream.");
-                log(ex.toString());
-            } finally {
-                Utilities.close(br);
-            }
-            
-            // Unlock watcher
-            synchronized (this) {
-                unlock();
-            }
-            
-            // Execute tasks if cluster has been initialized
-            if (clusterInitialized) {
-                log("Initializing tasks...");
-                TaskExecutor taskPerformer = new TaskExecutor(this);
-                try {
-                    //taskPerformer.RunModule(new SingularityDownloader(clusterController.getPropertiesController()));
-                    taskPerformer.RunModule(new SingularityBlastp(clusterController.getPropertiesController()));
-                } catch (Exception ex) {
-                    log("Exception performing tasks.");
-                    log(ex.toString());
+
+                } else if (terminated.matcher(msg).find()) { // terminated, or not found
+
+                    clusterController.setClusterId(null);
+                    clusterController.setMasterIp(null);
+                    clusterController.getJobQueue().Stop();
+                    clusterStopped = true;
+                    lifecycle.Force(ClusterPhase.STOPPED);
                 }
             }
+        } catch (IOException ex) {
+            log("Exception listening to process stream.");
+            log(ex.toString());
+        } finally {
+            Utilities.close(br);
         }
-    }
-    
-    /**
-     * Sets the stored process.
-     * @param pr 
-     */
-    protected void setProcess(Process pr) {
-        process = pr;
-    }
-    
-    /**
-     * Gets the stored process.
-     * @return 
-     */
-    public Process getProcess() {
-        return process;
-    }
-    
-    /**
-     * Checks if the stored process is still alive.
-     * @return Indicates wether the stored process is still alive or not.
-     */
-    public boolean isProcessAlive() {
-        if (process != null) {
-            return process.isAlive();
-        } else {
-            return false;
+
+        // Wait for the process to exit, so it is no longer considered alive
+        try {
+            process.waitFor();
+        } catch (InterruptedException ex) {
+            log("Interrupted waiting for process.");
+            return;
         }
-    }
+        log(String.format("BiBiGrid: Finished after %.1f s." , (System.currentTimeMillis() - started) / 1000.0));
 
-    /**
-     * Attempts to lock this ProcessWatcher.
-     * @return Indicates wether locking has been successful or not.
-     */
-    public boolean lock() {
-        if (isLocked) {
-            return false;
-        } else {
-            return isLocked = true;
+        // Report processes that have ended unexpectedly
+        if (starting && !clusterInitialized && !clusterStopped) {
+            if (clusterController.getClusterId() != null) {
+                log("Cluster has not been initialized.");
+                lifecycle.Force(ClusterPhase.FAILED);
+            } else {
+                lifecycle.Force(ClusterPhase.STOPPED);
+            }
+        } else if (!starting && !clusterStopped) {
+            log("Cluster has not been terminated.");
+            lifecycle.Force(ClusterPhase.FAILED);
         }
-    }
 
-    /**
-     * Unlocks this ProcessWatcher.
-     */
-    public void unlock() {
-        isLocked = false;
+        // Wait for the slaves and execute queued jobs if cluster has been initialized
+        if (clusterInitialized) {
+            clusterController.CompleteProvisioning();
+        }
     }
-    
+
     /**
      * Writes a message using the Logger.
-     * @param msg 
+     * @param msg
      */
     private void log(String msg) {
-        Platform.runLater(() -> {
-            Logger.log(msg);
-        });
+        Logger.log(msg);
     }
 }
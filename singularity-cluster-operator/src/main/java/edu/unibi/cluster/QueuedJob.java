@@ -0,0 +1,105 @@
+package edu.unibi.cluster;
+
+import edu.unibi.cluster.tasks.ITask;
+import java.io.File;
+
+/**
+ * A job waiting in or executed by the JobQueue: a module, its input file and
+ * the file its results are written to, submitted by an owner.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class QueuedJob
+{
+    public enum State { PENDING, RUNNING, SUCCEEDED, FAILED, CANCELLED }
+
+    private final int number;
+    private final String owner;
+    private final ITask module;
+    private final File inputFile;
+    private final File outputFile;
+
+    private volatile State state = State.PENDING;
+    private final long submitted = System.currentTimeMillis();
+    private volatile long started = 0;
+    private volatile long finished = 0;
+
+    /**
+     * Constructor.
+     * @param jobNumber number of the job within the queue
+     * @param jobOwner owner sharing the cluster fairly with other owners
+     * @param jobModule module to be executed
+     * @param input file containing the module's input
+     * @param output file the results are written to, NULL to let the front
+     * end choose
+     */
+    QueuedJob(int jobNumber, String jobOwner, ITask jobModule, File input, File output) {
+        number = jobNumber;
+        owner = jobOwner;
+        module = jobModule;
+        inputFile = input;
+        outputFile = output;
+    }
+
+    void Started() {
+        started = System.currentTimeMillis();
+        state = State.RUNNING;
+    }
+
+    void Finished(State outcome) {
+        finished = System.currentTimeMillis();
+        state = outcome;
+    }
+
+    /**
+     * Gets an identifier of the job, unique while the cluster is running.
+     * @return
+     */
+    public String getId() {
+        return submitted + "-" + number;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public ITask getModule() {
+        return module;
+    }
+
+    public File getInputFile() {
+        return inputFile;
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * Gets the time the job has been running so far, in ms.
+     * @return
+     */
+    public long getRuntime() {
+        if (started == 0) {
+            return 0;
+        }
+        return (finished > 0 ? finished : System.currentTimeMillis()) - started;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Job %d (%s, owner %s, input '%s'): %s" , number , module.getRequestId() , owner ,
+                             inputFile.getName() , state);
+    }
+}
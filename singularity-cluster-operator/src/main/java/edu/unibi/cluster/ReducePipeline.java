@@ -0,0 +1,494 @@
+package edu.unibi.cluster;
+
+import edu.unibi.cluster.tasks.IReducer;
+import edu.unibi.codec.ICodec;
+import edu.unibi.main.Logger;
+import edu.unibi.metrics.MetricsRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads task outputs concurrently and merges each of them into the result
+ * as soon as it is available. Merging happens on a single thread, either in
+ * order of arrival or in order of the tasks. Output files are deleted once
+ * merged, so disk usage stays bounded.
+ *
+ * Tasks may upload their output incrementally as numbered part objects
+ * (output.part-0001, ...), followed by a marker object carrying the number
+ * of parts (output.parts-0012). When polling for parts, each part is merged
+ * as soon as it appears, in order of its number, and the parts of a task
+ * that is given up on are kept.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class ReducePipeline
+{
+    private final static String partInfix = ".part-";
+    private final static String partCountInfix = ".parts-";
+
+    private final SwiftStorage storage;
+    private final IReducer reducer;
+    private final File[] outputFiles;
+    private final boolean shardOrder;
+    private final ICodec codec;
+
+    private final ExecutorService mergeExecutor;
+    private final List<CompletableFuture<?>> merges = new ArrayList();
+    private ScheduledExecutorService poller = null;
+    private volatile MetricsRegistry metrics = null;
+
+    private final boolean[] collected;
+    private final int[] requestedParts;
+    private final int[] mergedParts;
+    private final boolean[] partFailed;
+    private final CompletableFuture<?>[] partMerges;
+
+    private final List<File>[] pending;
+    private final boolean[] arrived;
+    private int nextShard = 0;
+    private int merged = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor.
+     * @param objectStorage storage to download outputs from
+     * @param outputReducer reducer receiving the downloaded outputs
+     * @param files local output files, named like the corresponding objects
+     * @param inShardOrder merge outputs in order of the tasks instead of arrival
+     * @param transferCodec codec outputs have been compressed with
+     */
+    public ReducePipeline(SwiftStorage objectStorage, IReducer outputReducer, File[] files, boolean inShardOrder,
+                          ICodec transferCodec) {
+
+        storage = objectStorage;
+        codec = transferCodec;
+        reducer = outputReducer;
+        outputFiles = files;
+        shardOrder = inShardOrder;
+
+        collected = new boolean[files.length];
+        requestedParts = new int[files.length];
+        mergedParts = new int[files.length];
+        partFailed = new boolean[files.length];
+        partMerges = new CompletableFuture<?>[files.length];
+        pending = new List[files.length];
+        arrived = new boolean[files.length];
+        for (int shard = 0; shard < files.length; shard++) {
+            partMerges[shard] = CompletableFuture.completedFuture(null);
+            pending[shard] = new ArrayList();
+        }
+
+        mergeExecutor = Executors.newSingleThreadExecutor(( Runnable runnable ) -> {
+            Thread thread = new Thread(runnable , "reduce-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Records the duration and bytes of every merge from now on.
+     * @param registry metrics of the job, NULL to stop recording
+     */
+    public void setMetrics(MetricsRegistry registry) {
+        metrics = registry;
+    }
+
+    /**
+     * Collects outputs as part objects from now on, polling the object
+     * storage for new parts of all uncollected tasks in the given interval.
+     * @param intervalMs
+     */
+    public synchronized void StartPartPolling(long intervalMs) {
+
+        if (poller != null) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(( Runnable runnable ) -> {
+            Thread thread = new Thread(runnable , "reduce-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::Poll , intervalMs , intervalMs , TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Lists the container and starts downloading all new parts of tasks that
+     * have not been collected yet.
+     */
+    private void Poll() {
+        try {
+            Set<String> names = storage.List();
+            synchronized (this) {
+                for (int shard = 0; shard < outputFiles.length; shard++) {
+                    if (!collected[shard]) {
+                        FetchParts(shard , names , Integer.MAX_VALUE);
+                    }
+                }
+            }
+        } catch (RuntimeException ex) {
+            log("Exception polling for output parts.");
+            log(ex.toString());
+        }
+    }
+
+    /**
+     * Starts downloading the output of a task and merges it once downloaded.
+     * A shard whose download has failed can be collected again. A shard whose
+     * part has failed to merge is given up on, as the part may have been
+     * merged partially.
+     * @param shard number of the task, starting at 0
+     * @return future completing with TRUE once the output has been merged or
+     * held back for merging, FALSE if the download has failed, exceptionally
+     * if merging a part has failed
+     */
+    public synchronized CompletableFuture<Boolean> Collect(int shard) {
+
+        if (collected[shard]) {
+            return CompletableFuture.completedFuture(true);
+        }
+        collected[shard] = true;
+
+        CompletableFuture<Boolean> merge;
+        if (poller != null) {
+            merge = CollectParts(shard).handleAsync(( Boolean result , Throwable ex ) -> {
+                if (ex == null) {
+                    return result;
+                }
+                synchronized (this) {
+                    if (!partFailed[shard]) {
+                        return Failed(shard , ex);
+                    }
+                }
+                Complete(shard , false);
+                throw new CompletionException(new IOException("Exception merging output of task " + (shard + 1) + "." ,
+                                                              ex.getCause() != null ? ex.getCause() : ex));
+            } , mergeExecutor);
+            // A shard given up on does not fail the reduction of the others
+            merges.add(merge.exceptionally(( Throwable ex ) -> false));
+        } else {
+            merge = storage.DownloadAsync(outputFiles[shard].getName() , outputFiles[shard] , codec , shard)
+                    .handleAsync(( File file , Throwable ex ) -> {
+                        if (ex != null) {
+                            return Failed(shard , ex);
+                        }
+                        Merge(shard , file);
+                        Complete(shard , true);
+                        return true;
+                    } , mergeExecutor);
+            merges.add(merge);
+        }
+        return merge;
+    }
+
+    /**
+     * Logs a failed download and allows the shard to be collected again.
+     * @return FALSE
+     */
+    private boolean Failed(int shard, Throwable ex) {
+        log("Exception downloading output of task " + (shard + 1) + ".");
+        log(ex.getCause() != null ? ex.getCause().toString() : ex.toString());
+        synchronized (this) {
+            collected[shard] = false;
+        }
+        return false;
+    }
+
+    /**
+     * Downloads all remaining parts of a finished task. Fails if the task has
+     * not written its part count, or any of its parts is missing.
+     */
+    private CompletableFuture<Boolean> CollectParts(int shard) {
+
+        return CompletableFuture.supplyAsync(() -> ListParts(shard) , poller).thenComposeAsync(( Set<String> names ) -> {
+            CompletableFuture<?> parts;
+            synchronized (this) {
+                int count = getPartCount(shard , names);
+                if (count < 0) {
+                    throw new CompletionException(new IOException("Part count of task " + (shard + 1) + " is missing."));
+                }
+                if (FetchParts(shard , names , count) < count) {
+                    throw new CompletionException(new IOException("Parts of task " + (shard + 1) + " are missing."));
+                }
+                parts = partMerges[shard];
+            }
+            return parts.thenApplyAsync(( Object result ) -> {
+                Complete(shard , true);
+                return true;
+            } , mergeExecutor);
+        } , mergeExecutor);
+    }
+
+    /**
+     * Starts downloading all parts of a task present in the listing that
+     * have not been requested yet, up to the given part number. Each part is
+     * merged once its predecessor is. After a failed download, parts are
+     * requested again starting at the first one not merged. After a failed
+     * merge, no more parts are requested, since merging the part again would
+     * duplicate what has been merged of it.
+     * @return the number of parts requested so far
+     */
+    private synchronized int FetchParts(int shard, Set<String> names, int limit) {
+
+        if (partFailed[shard]) {
+            return requestedParts[shard];
+        }
+        if (partMerges[shard].isCompletedExceptionally()) {
+            requestedParts[shard] = mergedParts[shard];
+            partMerges[shard] = CompletableFuture.completedFuture(null);
+        }
+
+        String name = outputFiles[shard].getName();
+        for (int part = requestedParts[shard] + 1; part <= limit && names.contains(getPartName(name , part)); part++) {
+            File file = new File(outputFiles[shard].getPath() + partInfix + String.format("%04d" , part));
+            CompletableFuture<File> download = storage.DownloadAsync(getPartName(name , part) , file , codec , shard);
+
+            partMerges[shard] = partMerges[shard].thenCombineAsync(download , ( Object previous , File downloaded ) -> {
+                try {
+                    Merge(shard , downloaded);
+                } catch (RuntimeException ex) {
+                    synchronized (this) {
+                        partFailed[shard] = true;
+                    }
+                    throw ex;
+                }
+                synchronized (this) {
+                    mergedParts[shard]++;
+                }
+                return null;
+            } , mergeExecutor).whenComplete(( Object result , Throwable ex ) -> {
+                // Parts following a failed one are downloaded again later
+                if (ex != null) {
+                    download.thenAccept(File::delete);
+                }
+            });
+            requestedParts[shard] = part;
+        }
+        return requestedParts[shard];
+    }
+
+    /**
+     * Marks the output of a task that had no input as merged without
+     * downloading it, as the task has nothing to write.
+     * @param shard number of the task, starting at 0
+     */
+    public synchronized void CompleteEmpty(int shard) {
+
+        if (collected[shard]) {
+            return;
+        }
+        collected[shard] = true;
+        merges.add(CompletableFuture.runAsync(() -> Complete(shard , true) , mergeExecutor));
+    }
+
+    /**
+     * Gives up on the output of a task, so outputs of later tasks are no
+     * longer held back waiting for it. When collecting parts, all parts
+     * uploaded so far are merged.
+     * @param shard number of the task, starting at 0
+     */
+    public synchronized void Skip(int shard) {
+
+        if (collected[shard]) {
+            return;
+        }
+        collected[shard] = true;
+
+        if (poller == null) {
+            merges.add(CompletableFuture.runAsync(() -> Complete(shard , false) , mergeExecutor));
+            return;
+        }
+
+        merges.add(CompletableFuture.supplyAsync(() -> ListParts(shard) , poller).thenCompose(( Set<String> names ) -> {
+            synchronized (this) {
+                int parts = FetchParts(shard , names , Integer.MAX_VALUE);
+                if (parts > 0) {
+                    log("Keeping " + parts + " part(s) of task " + (shard + 1) + ".");
+                }
+                return partMerges[shard].thenApply(( Object result ) -> parts);
+            }
+        }).handleAsync(( Object result , Throwable ex ) -> {
+            Complete(shard , false);
+            return null;
+        } , mergeExecutor));
+    }
+
+    /**
+     * Merges a downloaded output or part. Runs on the merge thread only. In
+     * shard order, outputs of tasks following the first incomplete one are
+     * held back until their predecessors are complete.
+     */
+    private void Merge(int shard, File file) {
+
+        if (!shardOrder || shard == nextShard) {
+            Reduce(shard , file);
+        } else {
+            pending[shard].add(file);
+        }
+    }
+
+    /**
+     * Marks the output of a task as complete. Runs on the merge thread only.
+     * In shard order, merges the held back outputs of the following tasks.
+     * @param reduced TRUE if the whole output has been merged
+     */
+    private void Complete(int shard, boolean reduced) {
+
+        if (reduced) {
+            merged++;
+        }
+        arrived[shard] = true;
+        while (shardOrder && nextShard < pending.length && arrived[nextShard]) {
+            nextShard++;
+            if (nextShard < pending.length) {
+                ReducePending(nextShard);
+            }
+        }
+    }
+
+    /**
+     * Merges all held back outputs of a task.
+     */
+    private void ReducePending(int shard) {
+        for (File file : pending[shard]) {
+            Reduce(shard , file);
+        }
+        pending[shard].clear();
+    }
+
+    /**
+     * Passes an output to the reducer and deletes it afterwards.
+     */
+    private void Reduce(int shard, File file) {
+        long started = System.nanoTime();
+        long bytes = file.length();
+        try {
+            reducer.Reduce(file , shard);
+            MetricsRegistry registry = metrics;
+            if (registry != null) {
+                registry.RecordShard(MetricsRegistry.REDUCE , shard , started , System.nanoTime() , bytes);
+            }
+        } catch (IOException ex) {
+            throw new CompletionException(ex);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Waits for all collected outputs to be downloaded and merged, then
+     * closes the reducer. Outputs that have not been collected are missing
+     * from the result.
+     * @return the number of merged outputs
+     * @throws IOException
+     */
+    public int Await() throws IOException {
+
+        CompletableFuture<?>[] all;
+        synchronized (this) {
+            all = merges.toArray(new CompletableFuture<?>[merges.size()]);
+        }
+
+        try {
+            CompletableFuture.allOf(all).join();
+
+            // Merge outputs held back by missing predecessors
+            CompletableFuture.runAsync(() -> {
+                for (int shard = nextShard; shard < pending.length; shard++) {
+                    ReducePending(shard);
+                }
+            } , mergeExecutor).join();
+
+        } catch (CompletionException ex) {
+            throw new IOException("Exception reducing outputs." , ex.getCause());
+        } finally {
+            synchronized (this) {
+                closed = true;
+            }
+            if (poller != null) {
+                poller.shutdownNow();
+            }
+            mergeExecutor.shutdown();
+            reducer.close();
+        }
+
+        if (merged < outputFiles.length) {
+            log((outputFiles.length - merged) + " of " + outputFiles.length + " outputs are missing from the result.");
+        }
+        return merged;
+    }
+
+    /**
+     * Stops the pipeline if it has not been awaited, e.g. because the job has
+     * failed. Cancels pending merges and closes the reducer, leaving the
+     * result incomplete.
+     */
+    public void close() {
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (poller != null) {
+                poller.shutdownNow();
+            }
+        }
+        mergeExecutor.shutdownNow();
+        try {
+            reducer.close();
+        } catch (IOException ex) {
+            log("Exception closing reducer.");
+            log(ex.toString());
+        }
+    }
+
+    /**
+     * Lists the names of the parts and the part count written by a task, both
+     * starting with the name of its output followed by '.part'.
+     */
+    private Set<String> ListParts(int shard) {
+        return storage.List(outputFiles[shard].getName() + ".part");
+    }
+
+    /**
+     * Gets the number of parts written by a task, as carried by the name of
+     * its marker object, or -1 if the task has not written the marker.
+     */
+    private int getPartCount(int shard, Set<String> names) {
+
+        String prefix = outputFiles[shard].getName() + partCountInfix;
+        for (String name : names) {
+            if (name.startsWith(prefix)) {
+                try {
+                    return Integer.parseInt(name.substring(prefix.length()));
+                } catch (NumberFormatException ex) {
+                    log("Invalid part count '" + name + "'.");
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the object name of a part.
+     */
+    private static String getPartName(String name, int part) {
+        return name + partInfix + String.format("%04d" , part);
+    }
+
+    /**
+     * Writes a message using the Logger.
+     * @param msg
+     */
+    private void log(String msg) {
+        Logger.log("Reduce: " + msg);
+    }
+}
@@ -0,0 +1,144 @@
+package edu.unibi.cluster;
+
+import edu.unibi.cluster.singularity.TaskUpdate;
+
+/**
+ * Tracks the execution of a single shard across all of its attempts.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class ShardStatus
+{
+    /**
+     * Final outcome of a shard.
+     */
+    public enum Outcome
+    {
+        PENDING, SUCCEEDED, FAILED
+    }
+
+    private final int shard;
+    private final String requestId;
+
+    private String deployId = null;
+    private String runId = null;
+    private String taskId = null;
+    private String state = null;
+    private String statusMessage = null;
+    private int attempts = 0;
+    private Outcome outcome = Outcome.PENDING;
+
+    private long started = 0;
+    private long finished = 0;
+
+    /**
+     * Constructor.
+     * @param index number of the shard, starting at 0
+     * @param request ID of the Singularity request executing the shard
+     */
+    public ShardStatus(int index, String request) {
+        shard = index;
+        requestId = request;
+    }
+
+    /**
+     * Records the submission of a new attempt.
+     * @param deploy ID of the deploy executing the attempt
+     * @param run ID of the run executing the attempt, NULL if not launched as run
+     */
+    public synchronized void Submitted(String deploy, String run) {
+        attempts++;
+        deployId = deploy;
+        runId = run;
+        taskId = null;
+        state = null;
+        statusMessage = null;
+        if (started == 0) {
+            started = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Records the terminal update of the current attempt.
+     * @param update
+     */
+    public synchronized void Update(TaskUpdate update) {
+        taskId = update.getTaskId();
+        state = update.getState();
+        if (update.getStatusMessage() != null) {
+            statusMessage = update.getStatusMessage();
+        }
+    }
+
+    /**
+     * Records the final outcome of the shard.
+     * @param result
+     * @param message reason of failure, may be NULL
+     */
+    public synchronized void Complete(Outcome result, String message) {
+        outcome = result;
+        if (message != null) {
+            statusMessage = message;
+        }
+        finished = System.currentTimeMillis();
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public synchronized String getDeployId() {
+        return deployId;
+    }
+
+    public synchronized String getRunId() {
+        return runId;
+    }
+
+    public synchronized String getTaskId() {
+        return taskId;
+    }
+
+    public synchronized String getState() {
+        return state;
+    }
+
+    public synchronized int getAttempts() {
+        return attempts;
+    }
+
+    public synchronized Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Gets the time between the first submission and the final outcome.
+     * @return duration in milliseconds
+     */
+    public synchronized long getDuration() {
+        return finished > 0 ? finished - started : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        String report = "Shard " + (shard + 1) + ": " + outcome
+                        + " after " + attempts + " attempt(s), " + (getDuration() / 1000) + " s"
+                        + " (" + requestId + " deploy " + deployId;
+        if (runId != null) {
+            report += ", run " + runId;
+        }
+        if (taskId != null) {
+            report += ", task " + taskId;
+        }
+        if (state != null) {
+            report += ", " + state;
+        }
+        if (outcome == Outcome.FAILED && statusMessage != null) {
+            report += ": " + statusMessage;
+        }
+        return report + ")";
+    }
+}
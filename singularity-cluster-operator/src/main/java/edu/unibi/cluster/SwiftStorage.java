@@ -0,0 +1,608 @@
+package edu.unibi.cluster;
+
+import edu.unibi.codec.Codecs;
+import edu.unibi.codec.ICodec;
+import edu.unibi.main.Logger;
+import edu.unibi.main.Utilities;
+import edu.unibi.metrics.MetricsRegistry;
+import edu.unibi.properties.PropertiesController;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openstack4j.api.OSClient.OSClientV2;
+import org.openstack4j.model.common.DLPayload;
+import org.openstack4j.model.common.Payloads;
+import org.openstack4j.model.identity.v2.Access;
+import org.openstack4j.model.identity.v2.Endpoint;
+import org.openstack4j.model.storage.object.SwiftObject;
+import org.openstack4j.model.storage.object.options.ContainerListOptions;
+import org.openstack4j.model.storage.object.options.ObjectListOptions;
+import org.openstack4j.openstack.OSFactory;
+
+/**
+ * Transfers files to and from a Swift object storage container.
+ * Uploads and downloads run concurrently on bounded pools of workers. Files 
+ * above a size threshold are uploaded as static large objects, their segments
+ * being uploaded in parallel and retried individually.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class SwiftStorage
+{
+    private final static String segmentInfix = ".segment-";
+    private final static long megabyte = 1024 * 1024;
+
+    private final String container;
+    private final String region;
+    private final Access access;
+
+    private final int threads;
+    private final int downloadThreads;
+    private final int retries;
+    private final long segmentSize;
+    private final long segmentThreshold;
+
+    private final ExecutorService executor;
+    private final ExecutorService downloadExecutor;
+
+    private volatile MetricsRegistry metrics = null;
+
+    /**
+     * Constructor. Authenticates using the credentials stored within the
+     * given properties. The session is shared by all worker threads.
+     * @param properties
+     * @param containerName name of the container used for all transfers
+     */
+    public SwiftStorage(PropertiesController properties, String containerName) {
+
+        container = containerName;
+        region = properties.get("region");
+
+        threads = Math.max(properties.getInt("upload-threads" , 4) , 1);
+        downloadThreads = Math.max(properties.getInt("download-threads" , 4) , 1);
+        retries = Math.max(properties.getInt("upload-retries" , 3) , 0);
+        segmentSize = Math.max(properties.getLong("upload-segment-size-mb" , 64) , 1) * megabyte;
+        segmentThreshold = Math.max(properties.getLong("upload-segment-threshold-mb" , 256) , 1) * megabyte;
+
+        OSClientV2 os = OSFactory.builderV2()
+                .endpoint(properties.get("openstack-endpoint"))
+                .credentials(properties.get("openstack-username") , properties.get("openstack-password"))
+                .tenantName(properties.get("openstack-tenantname"))
+                .authenticate();
+        access = os.getAccess();
+
+        executor = CreateWorkerPool("swift-upload-" , threads);
+        downloadExecutor = CreateWorkerPool("swift-download-" , downloadThreads);
+    }
+    
+    /**
+     * Creates a fixed pool of daemon worker threads.
+     */
+    private static ExecutorService CreateWorkerPool(String name, int size) {
+        AtomicInteger workers = new AtomicInteger();
+        return Executors.newFixedThreadPool(size , ( Runnable runnable ) -> {
+            Thread thread = new Thread(runnable , name + workers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Records the duration and bytes of every transfer from now on.
+     * @param registry metrics of the job, NULL to stop recording
+     */
+    public void setMetrics(MetricsRegistry registry) {
+        metrics = registry;
+    }
+
+    /**
+     * Gets a client bound to the calling thread. OpenStack4j stores sessions
+     * per thread, so each thread needs to attach to the authenticated session.
+     * @return
+     */
+    public OSClientV2 getClient() {
+        return OSFactory.clientFromAccess(access);
+    }
+
+    /**
+     * Creates the container if it is not existing already.
+     */
+    public void CreateContainer() {
+
+        OSClientV2 os = getClient();
+
+        if (os.objectStorage()
+                .containers()
+                .list(ContainerListOptions.create()
+                        .startsWith(container))
+                .stream()
+                .noneMatch(c -> container.equals(c.getName()))) {
+            os.objectStorage().containers().create(container);
+        }
+    }
+
+    /**
+     * Uploads files concurrently, using their names as object names. Blocks
+     * until all files are uploaded and reports the throughput per file.
+     * @param files
+     * @throws IOException if any file could not be uploaded
+     */
+    public void Upload(File[] files) throws IOException {
+        Upload(files , Codecs.NONE);
+    }
+
+    /**
+     * Uploads files concurrently, compressing them using the given codec.
+     * Objects are named like the files, without the codec's extension.
+     * @param files
+     * @param codec
+     * @throws IOException if any file could not be uploaded
+     */
+    public void Upload(File[] files, ICodec codec) throws IOException {
+
+        long time = System.currentTimeMillis();
+        long bytes = 0;
+
+        List<CompletableFuture<Void>> uploads = new ArrayList();
+        for (int shard = 0; shard < files.length; shard++) {
+            uploads.add(UploadAsync(files[shard] , files[shard].getName() , codec , shard));
+            bytes += files[shard].length();
+        }
+
+        try {
+            CompletableFuture.allOf(uploads.toArray(new CompletableFuture[uploads.size()])).join();
+        } catch (CompletionException ex) {
+            throw new IOException("Exception uploading files to container '" + container + "'." , ex.getCause());
+        }
+
+        time = Math.max(System.currentTimeMillis() - time , 1);
+        log(String.format("Uploaded %d files, %.1f MB in %.1f s (%.1f MB/s, %d workers, compression: %s)." ,
+                files.length , (double) bytes / megabyte , time / 1000.0 ,
+                (double) bytes / megabyte * 1000 / time , threads , codec.getName()));
+    }
+
+    /**
+     * Compresses a file on the worker pool and uploads the compressed copy.
+     * The copy is deleted once uploaded.
+     * @param file
+     * @param name object name
+     * @param codec
+     * @return future completing once the object is available
+     */
+    public CompletableFuture<Void> UploadAsync(File file, String name, ICodec codec) {
+        return UploadAsync(file , name , codec , -1);
+    }
+
+    /**
+     * Compresses a file on the worker pool and uploads the compressed copy,
+     * recording the transfer for the given shard.
+     */
+    private CompletableFuture<Void> UploadAsync(File file, String name, ICodec codec, int shard) {
+
+        if (!codec.isCompressing()) {
+            return UploadAsync(file , name , shard);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                File compressed = Utilities.CreateTempFile(file.getName() + codec.getExtension() + "-" , null);
+                Codecs.Compress(codec , file , compressed);
+                return compressed;
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        } , executor).thenCompose(compressed -> UploadAsync(compressed , name , shard)
+                .whenComplete(( Void result , Throwable ex ) -> compressed.delete()));
+    }
+
+    /**
+     * Uploads a file on the worker pool. Files above the segment threshold
+     * are split into segments uploaded in parallel, followed by a manifest
+     * combining them into a static large object.
+     * @param file
+     * @param name object name
+     * @return future completing once the object is available
+     */
+    public CompletableFuture<Void> UploadAsync(File file, String name) {
+        return UploadAsync(file , name , -1);
+    }
+
+    /**
+     * Uploads a file on the worker pool, recording the transfer for the
+     * given shard.
+     */
+    private CompletableFuture<Void> UploadAsync(File file, String name, int shard) {
+
+        long length = file.length();
+        Transfer transfer = new Transfer(name , length , shard);
+
+        if (length <= segmentThreshold) {
+            return CompletableFuture.runAsync(() -> {
+                transfer.start();
+                Retry("upload '" + name + "'" , () -> PutRange(file , name , 0 , length));
+                transfer.finish(1);
+            } , executor);
+        }
+
+        int count = (int) ((length + segmentSize - 1) / segmentSize);
+        String[] etags = new String[count];
+        CompletableFuture<?>[] segments = new CompletableFuture<?>[count];
+
+        for (int i = 0; i < count; i++) {
+            final int segment = i;
+            segments[i] = CompletableFuture.runAsync(() -> {
+                transfer.start();
+                long offset = segment * segmentSize;
+                etags[segment] = Retry("upload segment " + (segment + 1) + " of '" + name + "'" ,
+                        () -> PutRange(file , getSegmentName(name , segment) , offset , Math.min(segmentSize , length - offset)));
+            } , executor);
+        }
+
+        return CompletableFuture.allOf(segments).thenRunAsync(() -> {
+            Retry("write manifest of '" + name + "'" , () -> PutManifest(name , etags , length));
+            transfer.finish(count);
+        } , executor);
+    }
+
+    /**
+     * Uploads part of a file as a single object.
+     * @return the object's ETag
+     */
+    private String PutRange(File file, String name, long offset, long length) throws IOException {
+
+        InputStream input = new RangeInputStream(file , offset , length);
+        try {
+            String etag = getClient().objectStorage().objects().put(container , name , Payloads.create(input));
+            if (etag == null) {
+                throw new IOException("No ETag returned for object '" + name + "'.");
+            }
+            return etag;
+        } finally {
+            Utilities.close(input);
+        }
+    }
+
+    /**
+     * Writes the manifest of a static large object. OpenStack4j does not
+     * support the required query parameter, so the manifest is put directly
+     * using the session's token.
+     */
+    private String PutManifest(String name, String[] etags, long length) throws IOException {
+
+        StringBuilder manifest = new StringBuilder("[");
+        for (int i = 0; i < etags.length; i++) {
+            long size = Math.min(segmentSize , length - i * segmentSize);
+            if (i > 0) {
+                manifest.append(',');
+            }
+            manifest.append("{\"path\":\"/").append(container).append('/').append(getSegmentName(name , i))
+                    .append("\",\"etag\":\"").append(etags[i])
+                    .append("\",\"size_bytes\":").append(size).append('}');
+        }
+        manifest.append(']');
+        byte[] body = manifest.toString().getBytes(StandardCharsets.UTF_8);
+
+        URL url = new URL(getStorageUrl() + "/" + container + "/" + name + "?multipart-manifest=put");
+        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        con.setRequestMethod("PUT");
+        con.setRequestProperty("X-Auth-Token" , access.getToken().getId());
+        con.setRequestProperty("Content-Type" , "application/json");
+        con.setFixedLengthStreamingMode(body.length);
+        con.setDoOutput(true);
+
+        OutputStream output = con.getOutputStream();
+        output.write(body);
+        output.close();
+
+        int statusCode = con.getResponseCode();
+        con.disconnect();
+        if (statusCode / 100 != 2) {
+            throw new IOException("Manifest of '" + name + "' rejected. Status code: " + statusCode + ".");
+        }
+        return name;
+    }
+
+    /**
+     * Downloads an object on the download worker pool, retrying on failure.
+     * @param name object name
+     * @param file target file, will be overwritten
+     * @return future completing with the target file once it is written
+     */
+    public CompletableFuture<File> DownloadAsync(String name, File file) {
+        return DownloadAsync(name , file , Codecs.NONE);
+    }
+
+    /**
+     * Downloads an object on the download worker pool, retrying on failure.
+     * Compressed objects are decompressed while streaming them to the file.
+     * @param name object name
+     * @param file target file, will be overwritten
+     * @param codec codec the object has been compressed with
+     * @return future completing with the target file once it is written
+     */
+    public CompletableFuture<File> DownloadAsync(String name, File file, ICodec codec) {
+        return DownloadAsync(name , file , codec , -1);
+    }
+
+    /**
+     * Downloads an object on the download worker pool, retrying on failure.
+     * The transfer is recorded for the given shard.
+     * @param name object name
+     * @param file target file, will be overwritten
+     * @param codec codec the object has been compressed with
+     * @param shard number of the shard, negative if not shard specific
+     * @return future completing with the target file once it is written
+     */
+    public CompletableFuture<File> DownloadAsync(String name, File file, ICodec codec, int shard) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            long started = System.nanoTime();
+            Retry("download '" + name + "'" , () -> {
+                DLPayload payload = getClient().objectStorage().objects().download(container , name);
+                if (codec.isCompressing()) {
+                    Codecs.Decompress(codec , payload.getInputStream() , file);
+                } else {
+                    payload.writeToFile(file);
+                }
+                return file;
+            });
+            long time = Math.max((System.nanoTime() - started) / 1000000 , 1);
+            log(String.format("Downloaded '%s': %.1f MB, %.1f s (%.1f MB/s)." , name ,
+                    (double) file.length() / megabyte , time / 1000.0 , (double) file.length() / megabyte * 1000 / time));
+            Record(MetricsRegistry.DOWNLOAD , shard , started , file.length());
+            return file;
+        } , downloadExecutor);
+    }
+
+    /**
+     * Lists the names of all objects within the container.
+     * @return
+     */
+    public Set<String> List() {
+        return List(null);
+    }
+
+    /**
+     * Lists the names of all objects within the container starting with the
+     * given prefix. Swift returns listings in pages of limited length, so the
+     * listing is continued after the last name of each page until a page
+     * comes back empty.
+     * @param prefix prefix of the names, or null for all objects
+     * @return
+     */
+    public Set<String> List(String prefix) {
+
+        OSClientV2 os = getClient();
+        Set<String> names = new HashSet();
+        String marker = null;
+        List<? extends SwiftObject> page;
+        do {
+            ObjectListOptions options = ObjectListOptions.create();
+            if (prefix != null) {
+                options.startsWith(prefix);
+            }
+            if (marker != null) {
+                options.marker(marker);
+            }
+            page = os.objectStorage().objects().list(container , options);
+            for (SwiftObject object : page) {
+                names.add(object.getName());
+                marker = object.getName();
+            }
+        } while (!page.isEmpty());
+        return names;
+    }
+
+    /**
+     * Deletes all objects within the container, including segments, and the
+     * container itself.
+     */
+    public void Clear() {
+
+        OSClientV2 os = getClient();
+
+        // Listings are limited in length, so repeat as long as deletes succeed
+        boolean deleted;
+        do {
+            deleted = false;
+            for (SwiftObject object : os.objectStorage().objects().list(container)) {
+                deleted |= os.objectStorage().objects().delete(container , object.getName()).isSuccess();
+            }
+        } while (deleted);
+
+        os.objectStorage().containers().delete(container);
+    }
+
+    /**
+     * Stops all worker threads. Pending transfers are cancelled.
+     */
+    public void close() {
+        executor.shutdownNow();
+        downloadExecutor.shutdownNow();
+    }
+
+    /**
+     * Performs an action, retrying it with exponential backoff on failure.
+     * @return the action's result
+     * @throws CompletionException once all retries have failed
+     */
+    private <T> T Retry(String description, Action<T> action) {
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return action.run();
+            } catch (IOException | RuntimeException ex) {
+                if (attempt >= retries) {
+                    log("Failed to " + description + ". Giving up.");
+                    throw new CompletionException(ex);
+                }
+                log("Failed to " + description + ". Retrying (" + (attempt + 1) + "/" + retries + ").");
+                log(ex.toString());
+                try {
+                    Thread.sleep(1000L << attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(ie);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a transfer ending now, if metrics are recorded.
+     */
+    private void Record(String phase, int shard, long started, long bytes) {
+        MetricsRegistry registry = metrics;
+        if (registry == null) {
+            return;
+        }
+        if (shard >= 0) {
+            registry.RecordShard(phase , shard , started , System.nanoTime() , bytes);
+        } else {
+            registry.Record(phase , started , bytes);
+        }
+    }
+
+    /**
+     * Gets the public URL of the object storage endpoint, preferring the
+     * configured region.
+     */
+    private String getStorageUrl() throws IOException {
+
+        String url = null;
+        for (Access.Service service : access.getServiceCatalog()) {
+            if ("object-store".equals(service.getType())) {
+                for (Endpoint endpoint : service.getEndpoints()) {
+                    if (url == null || (region != null && region.equals(endpoint.getRegion()))) {
+                        url = endpoint.getPublicURL().toString();
+                    }
+                }
+            }
+        }
+        if (url == null) {
+            throw new IOException("No object storage endpoint available.");
+        }
+        return url.endsWith("/") ? url.substring(0 , url.length() - 1) : url;
+    }
+
+    /**
+     * Gets the object name of a segment.
+     */
+    private static String getSegmentName(String name, int segment) {
+        return name + segmentInfix + String.format("%08d" , segment + 1);
+    }
+
+    /**
+     * Gets the name of the container used for all transfers.
+     * @return
+     */
+    public String getContainer() {
+        return container;
+    }
+
+    /**
+     * Writes a message using the Logger.
+     * @param msg
+     */
+    private void log(String msg) {
+        Logger.log("Storage: " + msg);
+    }
+
+    /**
+     * An action that may fail and is therefore retried.
+     */
+    private interface Action<T>
+    {
+        T run() throws IOException;
+    }
+
+    /**
+     * Tracks the duration of a single file transfer and reports its throughput.
+     */
+    private class Transfer
+    {
+        private final String name;
+        private final long bytes;
+        private final int shard;
+        private final AtomicLong started = new AtomicLong();
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        Transfer(String objectName, long length, int shardNumber) {
+            name = objectName;
+            bytes = length;
+            shard = shardNumber;
+        }
+
+        void start() {
+            if (running.compareAndSet(false , true)) {
+                started.set(System.nanoTime());
+            }
+        }
+
+        void finish(int segments) {
+            long time = Math.max((System.nanoTime() - started.get()) / 1000000 , 1);
+            log(String.format("Uploaded '%s': %.1f MB in %d segment(s), %.1f s (%.1f MB/s)." ,
+                    name , (double) bytes / megabyte , segments , time / 1000.0 , (double) bytes / megabyte * 1000 / time));
+            Record(MetricsRegistry.UPLOAD , shard , started.get() , bytes);
+        }
+    }
+
+    /**
+     * Reads a range of bytes from a file.
+     */
+    private static class RangeInputStream extends InputStream
+    {
+        private final RandomAccessFile file;
+        private long remaining;
+
+        RangeInputStream(File source, long offset, long length) throws IOException {
+            file = new RandomAccessFile(source , "r");
+            file.seek(offset);
+            remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = file.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = file.read(buffer , offset , (int) Math.min(length , remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -1,34 +1,26 @@
 package edu.unibi.cluster;
 
+import edu.unibi.cluster.singularity.SingularityClient;
+import edu.unibi.cluster.singularity.SingularityDeploy;
+import edu.unibi.cluster.singularity.SingularityRequest;
+import edu.unibi.cluster.singularity.SingularityRun;
+import edu.unibi.cluster.singularity.TaskUpdate;
 import edu.unibi.cluster.tasks.ITask;
+import edu.unibi.codec.Codecs;
+import edu.unibi.codec.ICodec;
 import edu.unibi.main.Logger;
 import edu.unibi.main.Utilities;
+import edu.unibi.metrics.MetricsRegistry;
 import edu.unibi.properties.PropertiesController;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.text.SimpleDateFormat;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.util.Date;
-import java.util.List;
-import javafx.application.Platform;
-import javafx.stage.FileChooser;
-import org.codehaus.jackson.JsonFactory;
-import org.codehaus.jackson.JsonNode;
-import org.codehaus.jackson.JsonParser;
-import org.codehaus.jackson.map.MappingJsonFactory;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.openstack4j.api.OSClient.OSClientV2;
-import org.openstack4j.model.common.Payloads;
-import org.openstack4j.model.storage.object.SwiftContainer;
-import org.openstack4j.model.storage.object.options.ContainerListOptions;
-import org.openstack4j.model.storage.object.options.ObjectLocation;
-import org.openstack4j.openstack.OSFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Executes and monitors singularity tasks.
@@ -42,314 +34,451 @@ public class TaskExecutor
     private final ClusterController clusterController;
     private final PropertiesController propertiesController;
     
-    private final String objectContainerNamePrefix = "SINGULARITY-";
     private final String objectContainerNameSuffix = "-" + LocalDate.now(ZoneId.of("Europe/Berlin"));
     private final String objectContainer;
+    private final String jobId;
     
-    private final String singularityUrlPrefix = "http://";
-    private final String singularityUrlSuffix = ":7099/singularity/api";
     private final String singularityUrlApi;
     
     private final String inputFileNamePrefix = "input-";
     private final String outputFileNamePrefix = "output-";
     
-    private final String resourceCpu = "2";
-    private final String resourceMemoryMb = "24000"; // limited within singularity
+    private final double resourceCpu = 2; // used if the slave flavor is unknown
+    private final double resourceMemoryMb = 24000; // limited within singularity
     
-    private final String requestType = "RUN_ONCE";
-    private final String requestSlavePlacement = "SEPARATE_BY_REQUEST";
+    private final String requestType = "ON_DEMAND";
     
-    private OSClientV2 os;
+    private final String schedulingQueue = "queue";
+    private final int autoBatchesPerSlot = 4;
+    
+    private SwiftStorage storage;
     
     private ITask currentModule;
     
     /**
-     * Constructor. Uses the ProcessListener to access information stored within
-     * the application, such as properties, cluster IP and input file.
-     * @param listener 
+     * Constructor. Uses the ClusterController to access information stored 
+     * within the application, such as properties and cluster IP.
+     * @param controller 
+     * @param job identifier of the job, unique while the cluster is running
      */
-    public TaskExecutor(ProcessListener listener) {
+    public TaskExecutor(ClusterController controller, String job) {
         
-        clusterController = listener.getClusterController();
+        clusterController = controller;
         propertiesController = clusterController.getPropertiesController();
+        jobId = job;
         
-        objectContainer = objectContainerNamePrefix
-                          + propertiesController.get("openstack-username")
-                          + objectContainerNamePrefix;
+        // Each job uses its own container, so concurrent jobs can clean up independently
+        objectContainer = clusterController.getObjectContainerPrefix() + jobId;
         
-        singularityUrlApi = singularityUrlPrefix
-                            + clusterController.getMasterIp()
-                            + singularityUrlSuffix;
+        singularityUrlApi = clusterController.getSingularityApiUrl();
     }
     
     /**
      * Runs the given module.
      * @param module
+     * @param inputFile file containing the module's input
+     * @param targetFile file the results are moved to, NULL to let the 
+     * front end choose
+     * @return TRUE if the tasks of all shards have succeeded
      * @throws IOException 
      */
-    public void RunModule(ITask module) throws IOException {
+    public boolean RunModule(ITask module, File inputFile, File targetFile) throws IOException {
         
-        File inputFile, inputFiles[], outputFiles[];
-        String request, deploy, commands[];
+        File inputFiles[], outputFiles[];
         String requestId = module.getRequestId();
         
-        // Get the number of slaves, equals the resulting number of tasks
-        int tasks;
+        // Get the number of slaves
+        int slaves;
         try {
-            tasks = Integer.parseInt(propertiesController.get("slave-instance-count"));
+            slaves = Integer.parseInt(propertiesController.get("slave-instance-count"));
         } catch (NumberFormatException ex) {
             System.out.println("Number of slaves not specified in properties!");
             System.out.println(ex.toString());
             System.out.println("Aborting.");
-            return;
+            return false;
+        }
+        
+        // Tasks per slave, or many small batches handed out as a work queue
+        int tasksPerSlave = Math.max(propertiesController.getInt("tasks-per-slave", 1), 1);
+        int tasks = slaves * tasksPerSlave;
+        int inFlight = tasks;
+        if (schedulingQueue.equals(propertiesController.get("scheduling"))) {
+            tasks = propertiesController.getInt("batch-count", 0);
+            if (tasks <= 0) {
+                tasks = inFlight * autoBatchesPerSlot;
+            }
         }
         
-        log("Running module.");
         currentModule = module;
+        log("Running module.");
         
-        // Preparing temp files
-        inputFile = clusterController.getInputFile();
-        inputFiles = new File[tasks];
-        outputFiles = new File[tasks];
-        for (int deployId = 1; deployId <= tasks; deployId++) {
-            inputFiles[deployId-1] = Utilities.CreateTempFile(inputFileNamePrefix + deployId + "-" , null);
-            outputFiles[deployId-1] = Utilities.CreateTempFile(outputFileNamePrefix + deployId + "-", null);
+        // Size tasks to share the slave flavor's resources
+        double cpus = resourceCpu, memoryMb = resourceMemoryMb;
+        Flavor flavor = Flavor.Parse(propertiesController.get("slave-instance-type"));
+        if (flavor != null) {
+            cpus = (double) flavor.getCores() / tasksPerSlave;
+            memoryMb = Math.floor((double) flavor.getOfferedMemoryMb() / tasksPerSlave);
+            log("Slave flavor " + flavor + ".");
+        } else {
+            log("Unknown slave flavor. Using default resources.");
         }
+        double taskCpus = propertiesController.getDouble("task-cpus", 0);
+        if (taskCpus > 0) {
+            cpus = taskCpus;
+        }
+        double taskMemoryMb = propertiesController.getDouble("task-memory-mb", 0);
+        if (taskMemoryMb > 0) {
+            memoryMb = taskMemoryMb;
+        }
+        log(tasksPerSlave + " task(s) per slave, " + cpus + " cpus and " + memoryMb + " MB each.");
+        module.setResources(cpus, memoryMb);
         
-        log("Mapping input.");
-        module.setOutputFiles(outputFiles);
-        module.MapInput(inputFile, inputFiles);
-        
-        log("Uploading input.");
-        UploadInput(inputFiles);
+        // Compress shards and outputs on every transfer, if the task supports it
+        ICodec codec = Codecs.Get(propertiesController);
+        if (!module.setCodec(codec)) {
+            log("Task does not support compression '" + codec.getName() + "'. Transferring uncompressed.");
+            codec = Codecs.NONE;
+            module.setCodec(codec);
+        }
         
-        // Create and post request
-        log("Posting requests and deploys.");
-        commands = module.WriteTaskCommands(objectContainer);
-
-        int statusCode;
-        for (int taskId = 1; taskId <= commands.length; taskId++) {
-
-            // Request
-            request = "{\"id\": \"" + requestId + taskId + "\","
-                      + "\"requestType\": \"" + requestType + "\","
-                      //+ "\"slavePlacement\": \"" + requestSlavePlacement + "\","
-                      + "\"instances\": 1 }";
-
-            statusCode = PostJson(singularityUrlApi + "/requests" , request);
-
-            /* Evaluating status code
-            if (statusCode == 200) {
-                log("Request (" + taskId + ") successfully created.");
-            } else if (statusCode == 409) {
-                log("Request (" + taskId + ") pending. ");
-            } else if (statusCode == 400) {
-                log("Request (" + taskId + ") failed. Request object is invalid.");
-            } else {
-                log("Request (" + taskId + ") failed. Unknown reason. Status code: " + statusCode + ".");
-            }*/
-
-            // Deploy
-            deploy = "{\"deploy\":{"
-                        + "\"requestId\":\"" + requestId + taskId + "\","
-                        + "\"id\":\"1\","
-                        + "\"resources\":{"
-                            + "\"cpus\": " + resourceCpu + ","
-                            + "\"memoryMb\": " + resourceMemoryMb + ","
-                            + "\"numPorts\": 0"
-                        + "},\"command\":\""
-                        + commands[taskId-1] + "\"}}";
-
-            statusCode = PostJson(singularityUrlApi + "/deploys" , deploy);
-
-            /* Evaluating status code
-            if (statusCode == 200) {
-                log("Deploy (" + taskId + ") successfully scheduled.");
-            } else if (statusCode == 409) {
-                log("Deploy (" + taskId + ") pending. A current deploy is in progress.");
-            } else if (statusCode == 400) {
-                log("Deploy (" + taskId + ") failed. Deploy object is invalid.");
-            } else {
-                log("Deploy (" + taskId + ") failed. Unknown reason. Status code: " + statusCode + ".");
-            }*/
+        // Upload outputs incrementally in parts, if the task supports it
+        int partQueries = propertiesController.getInt("part-queries", 0);
+        boolean parts = partQueries > 0 && module.setPartSize(partQueries);
+        if (partQueries > 0 && !parts) {
+            log("Task does not support partial outputs. Collecting whole outputs.");
         }
         
-        // Wait for tasks to finish
-        log("Waiting for tasks to finish. This may take a while...");
-        long time = System.currentTimeMillis();
-        do {
-            synchronized (this) {
-                try {
-                    wait(10000); // wait 10 seconds before getting status again
-                } catch (Exception ex) {
-                    break;
-                }
+        // Preparing temp files
+        inputFiles = new File[tasks];
+        outputFiles = new File[tasks];
+        MetricsRegistry metrics = new MetricsRegistry(requestId + "-" + jobId);
+        try {
+            for (int deployId = 1; deployId <= tasks; deployId++) {
+                inputFiles[deployId-1] = Utilities.CreateTempFile(inputFileNamePrefix + deployId + "-" , null);
+                outputFiles[deployId-1] = Utilities.CreateTempFile(outputFileNamePrefix + deployId + "-", null);
             }
-        } while (GetActiveTasks() != 0);
-        log("All tasks finished!");
-        
-        // Elapsed time
-        time = System.currentTimeMillis() - time;
-        Date date = new Date(time);
-        SimpleDateFormat formatter = new SimpleDateFormat("HH:mm:ss");
-        log("Elapsed time: " + formatter.format(date));
-        
-        // Download output
-        log("Downloading output.");
-        outputFiles = Download(outputFiles); 
-        
-        // Save results and clear object storage
-        final File[] inputFilesCopy = inputFiles;
-        final File[] outputFilesCopy = outputFiles;
-        Platform.runLater(() -> {
             
-            // Store results
-            FileChooser fileChooser = new FileChooser();
-            fileChooser.setTitle("Save results");
-            File outputFile = fileChooser.showSaveDialog(null);
-            if (outputFile == null) {
-                outputFile = new File(inputFile.getName() + ".results");
-            }
+            log("Mapping input.");
+            long started = System.nanoTime();
+            module.setOutputFiles(outputFiles);
+            module.MapInput(inputFile, inputFiles);
+            metrics.Record(MetricsRegistry.MAP, started, inputFile.length());
+            
+            log("Uploading input.");
+            UploadInput(inputFiles, codec, metrics);
+            
+            // Merge outputs as soon as their tasks have finished
+            File resultFile = Utilities.CreateTempFile("result-", null);
+            ReducePipeline pipeline = new ReducePipeline(storage, module.CreateReducer(resultFile), outputFiles,
+                                                         !"arrival".equals(propertiesController.get("reduce-order")), codec);
             try {
-                module.ReduceOutput(outputFile , outputFilesCopy);
-            } catch (IOException ex) {
-                log("Exception writing results to output file.");
-                log(ex.toString());
+                pipeline.setMetrics(metrics);
+                if (parts) {
+                    pipeline.StartPartPolling(Math.max(propertiesController.getLong("part-poll-interval-ms", 10000), 1000));
+                }
+                
+                SingularityClient client = new SingularityClient(singularityUrlApi, propertiesController);
+                TaskMonitor monitor = new TaskMonitor(client, clusterController.getMasterIp(), propertiesController);
+                monitor.Start();
+                
+                // Post a single request and deploy for the job, launch each task as a run
+                log("Posting request and deploy. " + tasks + " task(s), at most " + inFlight + " in flight.");
+                Job job = new Job(requestId + "-" + jobId, client, monitor, pipeline, metrics);
+                ShardStatus[] statuses = new ShardStatus[tasks];
+                for (int shard = 0; shard < tasks; shard++) {
+                    statuses[shard] = new ShardStatus(shard, job.requestId);
+                }
+                
+                long time = System.currentTimeMillis();
+                try {
+                    job.client.PostRequest(WriteRequest(job.requestId));
+                    job.client.PostDeploy(WriteDeploy(job.requestId, job.deployId, module.WriteRunCommand(objectContainer), cpus, memoryMb,
+                                                      codec, parts ? partQueries : 0));
+                    job.client.AwaitDeploy(job.requestId, job.deployId);
+                    
+                    WorkQueue queue = new WorkQueue(tasks, inFlight, (int shard) -> {
+                        ShardStatus status = statuses[shard];
+                        
+                        // Batches left empty by the mapping have nothing to compute
+                        if (inputFiles[shard].length() == 0) {
+                            status.Complete(ShardStatus.Outcome.SUCCEEDED, null);
+                            pipeline.CompleteEmpty(shard);
+                            return CompletableFuture.completedFuture(status);
+                        }
+                        return RunShard(job, status).exceptionally((Throwable ex) -> {
+                            status.Complete(ShardStatus.Outcome.FAILED, ex.getCause() != null ? ex.getCause().toString() : ex.toString());
+                            return status;
+                        });
+                    }, job.submitter);
+                    
+                    log("Waiting for tasks to finish. This may take a while...");
+                    queue.Start().join();
+                } finally {
+                    job.close();
+                }
+                log("All tasks finished!");
+                
+                // Report the outcome of every shard
+                int succeeded = 0;
+                for (ShardStatus status : statuses) {
+                    log(status.toString());
+                    if (status.getOutcome() == ShardStatus.Outcome.SUCCEEDED) {
+                        succeeded++;
+                    }
+                }
+                log(succeeded + " of " + statuses.length + " shards succeeded.");
+                metrics.Increment("shards_succeeded", succeeded);
+                metrics.Increment("shards_failed", statuses.length - succeeded);
+                
+                // Elapsed time
+                time = System.currentTimeMillis() - time;
+                log("Elapsed time: " + Utilities.FormatDuration(time));
+                
+                // Download and reduce remaining output
+                log("Waiting for remaining output.");
+                int merged = pipeline.Await();
+                log("Reduced " + merged + " of " + outputFiles.length + " outputs.");
+                metrics.Increment("outputs_reduced", merged);
+                
+                // Store results
+                File outputFile = targetFile != null ? targetFile 
+                                  : clusterController.ChooseOutputFile(new File(inputFile.getName() + ".results"));
+                Files.move(resultFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                log("Results written to '" + outputFile.getAbsolutePath() + "'.");
+                
+                return succeeded == statuses.length;
+            } finally {
+                pipeline.close();
+                resultFile.delete();
             }
-            
-            // Remove temporary files from object storage
-            CleanObjectStorage(inputFilesCopy, outputFilesCopy);
-        });
+        } finally {
+            // Clean up after failed jobs as well
+            CleanObjectStorage();
+            DeleteTempFiles(inputFiles);
+            DeleteTempFiles(outputFiles);
+            WriteMetrics(metrics);
+        }
     }
     
     /**
-     * Uploads files to the object storage. Creates the temporary container
-     * if it is not existing already.
-     * @param files 
+     * Logs the metrics of a finished job and writes them as JSON and in the
+     * Prometheus text format to the metrics directory, unless disabled.
+     * @param metrics 
      */
-    private void UploadInput(File[] files) {
+    private void WriteMetrics(MetricsRegistry metrics) {
         
-        if (files == null) {
-            return;
+        metrics.Finish();
+        log("Runtime " + Utilities.FormatDuration(metrics.getRuntime()) + ".");
+        for (String line : metrics.toString().split("\n")) {
+            log("Metrics: " + line);
         }
         
-        os = OSFactory.builderV2()
-                .endpoint(propertiesController.get("openstack-endpoint"))
-                .credentials(propertiesController.get("openstack-username"), propertiesController.get("openstack-password"))
-                .tenantName(propertiesController.get("openstack-tenantname"))
-                .authenticate();
+        String directory = propertiesController.get("metrics-directory");
+        if ("no".equals(directory)) {
+            return;
+        }
+        File metricsDirectory = new File(directory == null || directory.trim().isEmpty() ? "metrics" : directory.trim());
+        String name = currentModule.getRequestId() + "-" + jobId;
+        try {
+            Files.createDirectories(metricsDirectory.toPath());
+            metrics.WriteJson(new File(metricsDirectory, name + ".metrics.json"));
+            metrics.WritePrometheus(new File(metricsDirectory, name + ".prom"));
+            log("Metrics written to '" + metricsDirectory.getAbsolutePath() + "'.");
+        } catch (IOException | RuntimeException ex) {
+            log("Exception writing metrics.");
+            log(ex.toString());
+        }
+    }
+    
+    /**
+     * Launches the next attempt of a shard as a run and watches it. Once the
+     * task has finished, its output is collected. Failed and lost tasks, as
+     * well as tasks whose output cannot be downloaded, are launched again as
+     * a new run until the retry budget is exhausted.
+     * @param job the job the shard belongs to
+     * @param status status of the shard
+     * @return future completing with the status once the shard has an outcome
+     */
+    private CompletableFuture<ShardStatus> RunShard(Job job, ShardStatus status) {
         
-        // Find containers matching the current container name
-        List<? extends SwiftContainer> containers = os.objectStorage()
-                .containers()
-                .list(ContainerListOptions.create()
-                        .startsWith(objectContainer));
+        int shard = status.getShard();
+        String runId = job.requestId + "-" + (shard + 1) + "-" + (status.getAttempts() + 1);
         
-        // Create temporary container if not existing
-        if (containers.isEmpty()) {
-            os.objectStorage().containers().create(objectContainer);
-        } 
+        // Watch task before launching, so no update can be missed
+        CompletableFuture<TaskUpdate> task = job.monitor.Watch(job.requestId, job.deployId, runId);
+        status.Submitted(job.deployId, runId);
+        job.metrics.Increment("attempts", 1);
+        long submitted = System.nanoTime();
         
-        // Upload files to object storage
-        for (File file : files) {
-            os.objectStorage().objects().put(objectContainer, file.getName(), Payloads.create(file));
-        }
+        return job.client.RunAsync(job.requestId, new SingularityRun(runId, currentModule.getRunArguments(shard)))
+                .handle((Void accepted, Throwable ex) -> {
+                    job.metrics.RecordShard(MetricsRegistry.SUBMIT, shard, submitted, System.nanoTime(), 0);
+                    return ex;
+                })
+                .thenComposeAsync((Throwable ex) -> {
+                    if (ex != null) {
+                        return Retry(job, status, ex.getCause() != null ? ex.getCause().toString() : ex.toString());
+                    }
+                    long accepted = System.nanoTime();
+                    return task.thenComposeAsync((TaskUpdate update) -> {
+                        RecordRun(job, shard, update, accepted);
+                        return Finished(job, status, update);
+                    }, job.submitter);
+                }, job.submitter);
     }
     
     /**
-     * Downloads data from the object storage container.
-     * Uses the given files names to target an object within the container.
-     * Streams the containing data to the corresponding local file.
-     * @param files
-     * @return 
+     * Records the time a run has waited for resources and the time it has
+     * run. The run is assumed to have started on acceptance if it has not
+     * been reported running.
      */
-    private File[] Download(File[] files) throws IOException {
-        
-        if (files == null) {
-            return null;
+    private void RecordRun(Job job, int shard, TaskUpdate update, long accepted) {
+        long ended = System.nanoTime();
+        long running = update.getRunningSince();
+        if (running > 0) {
+            job.metrics.RecordShard(MetricsRegistry.QUEUE_WAIT, shard, accepted, Math.max(running, accepted), 0);
         }
+        job.metrics.RecordShard(MetricsRegistry.RUN, shard, Math.max(running, accepted), ended, 0);
+    }
+    
+    /**
+     * Handles the terminal update of a shard's task. Collects the output of
+     * finished tasks, retries all others.
+     */
+    private CompletableFuture<ShardStatus> Finished(Job job, ShardStatus status, TaskUpdate update) {
         
-        for (File file : files) {
-            os.objectStorage().objects().download(objectContainer , file.getName()).writeToFile(file);
+        status.Update(update);
+        if (!update.isFinished()) {
+            String reason = update.getStatusMessage();
+            if (reason == null) {
+                reason = job.monitor.GetStatusMessage(update.getTaskId());
+            }
+            return Retry(job, status, reason != null ? update.getState() + ": " + reason : update.getState());
         }
         
-        return files;
+        return job.pipeline.Collect(status.getShard()).thenComposeAsync((Boolean downloaded) -> {
+            if (!downloaded) {
+                return Retry(job, status, "Output could not be downloaded.");
+            }
+            status.Complete(ShardStatus.Outcome.SUCCEEDED, null);
+            return CompletableFuture.completedFuture(status);
+        }, job.submitter);
     }
     
     /**
-     * Posts a given JSON String to the given URL.
-     * @param url
-     * @param json
-     * @return the response status code.
-     * @throws MalformedURLException
-     * @throws IOException 
+     * Launches a failed shard again, or gives up on it once the retry budget
+     * is exhausted.
      */
-    private int PostJson(String url, String json) throws MalformedURLException , IOException {
+    private CompletableFuture<ShardStatus> Retry(Job job, ShardStatus status, String reason) {
         
-        if (url == null || json == null) {
-            return -1;
+        int shard = status.getShard();
+        if (status.getAttempts() <= job.retries) {
+            job.metrics.Increment("retries", 1);
+            log("Task " + (shard + 1) + " failed (" + reason + "). Resubmitting, attempt "
+                + (status.getAttempts() + 1) + " of " + (job.retries + 1) + ".");
+            return RunShard(job, status);
         }
         
-        URL urlObj = new URL(url);
-        HttpURLConnection con = (HttpURLConnection)urlObj.openConnection();
-        
-        con.setRequestMethod("POST");
-        con.setRequestProperty("Content-Type" , "application/json");
-        con.setRequestProperty("Content-Length" , Integer.toString(json.getBytes().length));
-
-        con.setDoInput(true);
-        con.setDoOutput(true);
-        DataOutputStream wr = new DataOutputStream(con.getOutputStream());
-        wr.writeBytes(json);
-        wr.flush();
-        wr.close();
-
-        return con.getResponseCode();
+        log("Task " + (shard + 1) + " failed (" + reason + "). Giving up after " + status.getAttempts() + " attempt(s).");
+        status.Complete(ShardStatus.Outcome.FAILED, reason);
+        job.pipeline.Skip(shard);
+        return CompletableFuture.completedFuture(status);
     }
     
     /**
-     * Gets the number of active tasks from the Singularity REST API.
+     * Writes the on-demand request of a job. Uses the slave placement set
+     * in the properties, Singularity's default otherwise.
+     * @param requestId
+     * @return the request
      */
-    private int GetActiveTasks() throws MalformedURLException , IOException {
-        
-        URL urlObj = new URL(singularityUrlApi + "/state");
-        HttpURLConnection con = (HttpURLConnection)urlObj.openConnection();
+    private SingularityRequest WriteRequest(String requestId) {
+        SingularityRequest request = new SingularityRequest(requestId, requestType);
+        String slavePlacement = propertiesController.get("slave-placement");
+        if (slavePlacement != null && !slavePlacement.trim().isEmpty()) {
+            request.setSlavePlacement(slavePlacement.trim().toUpperCase());
+        }
+        return request;
+    }
+    
+    /**
+     * Writes the deploy of a job. The given command is run as script of a
+     * shell, followed by the request ID as $0, so the command line arguments
+     * each run appends become the positional parameters $1, $2 and so on.
+     * The objects transferred by the tasks are described in its metadata.
+     * @param requestId
+     * @param deployId
+     * @param command
+     * @param cpus cpus reserved per task
+     * @param memoryMb memory reserved per task
+     * @param codec codec compressing inputs and outputs
+     * @param partQueries number of queries per output part, 0 if outputs are
+     * uploaded whole
+     * @return the deploy
+     */
+    private SingularityDeploy WriteDeploy(String requestId, String deployId, String command, double cpus, double memoryMb,
+                                          ICodec codec, int partQueries) {
+        SingularityDeploy deploy = new SingularityDeploy(requestId, deployId, "sh", new String[]{"-c", command, requestId},
+                                                         cpus, memoryMb);
+        deploy.setMetadata("objectContainer", objectContainer);
+        deploy.setMetadata("outputExtension", codec.getExtension());
+        deploy.setMetadata("partQueries", String.valueOf(partQueries));
+        return deploy;
+    }
+    
+    /**
+     * Uploads files to the object storage. Creates the temporary container
+     * if it is not existing already. Files are uploaded concurrently, large 
+     * files as segmented static large objects.
+     * @param files 
+     * @param codec codec compressing the files
+     * @param metrics metrics recording each file's transfer
+     * @throws IOException
+     */
+    private void UploadInput(File[] files, ICodec codec, MetricsRegistry metrics) throws IOException {
         
-        con.setRequestMethod("GET");
+        if (files == null) {
+            return;
+        }
         
-        ObjectMapper mapper = new ObjectMapper();
-        JsonFactory jf = new MappingJsonFactory();
-        JsonParser jp;
-        JsonNode elements;
-            
-        jp = jf.createJsonParser(new InputStreamReader(con.getInputStream()));
-        elements = mapper.readTree(jp);
-        jp.close();
+        storage = new SwiftStorage(propertiesController, objectContainer);
+        storage.setMetrics(metrics);
+        storage.CreateContainer();
         
-        return elements.get("activeTasks").getIntValue();
+        // Upload files to object storage
+        storage.Upload(files, codec);
     }
     
     /**
-     * Cleans the object storage. Removes the given input and output files from 
-     * the current object storage container and deletes the container.
-     * @param input
-     * @param output 
+     * Cleans the object storage. Removes all objects, including inputs,
+     * outputs and any segments, from the current object storage container
+     * and deletes the container.
      */
-    private void CleanObjectStorage(File[] input, File[] output) {
+    private void CleanObjectStorage() {
         
-            os = OSFactory.builderV2()
-                    .endpoint(propertiesController.get("openstack-endpoint"))
-                    .credentials(propertiesController.get("openstack-username") , propertiesController.get("openstack-password"))
-                    .tenantName(propertiesController.get("openstack-tenantname"))
-                    .authenticate();
-            
-            for (File file : input) {
-                os.objectStorage().objects().delete(ObjectLocation.create(objectContainer , file.getName()));
-            }
-            for (File file : output) {
-                os.objectStorage().objects().delete(ObjectLocation.create(objectContainer , file.getName()));
+        if (storage == null) {
+            return;
+        }
+        try {
+            storage.Clear();
+        } catch (RuntimeException ex) {
+            log("Exception cleaning object storage container '" + objectContainer + "'.");
+            log(ex.toString());
+        } finally {
+            storage.close();
+            storage = null;
+        }
+    }
+    
+    /**
+     * Deletes local temporary files, skipping those not created.
+     * @param files 
+     */
+    private void DeleteTempFiles(File[] files) {
+        for (File file : files) {
+            if (file != null) {
+                file.delete();
             }
-            os.objectStorage().containers().delete(objectContainer);
+        }
     }
     
     /**
@@ -357,8 +486,45 @@ public class TaskExecutor
      * @param msg 
      */
     private void log(String msg) {
-        Platform.runLater(() -> {
-            Logger.log(currentModule.getRequestId() + ": " + msg);
+        Logger.log(currentModule.getRequestId() + ": " + msg);
+    }
+    
+    /**
+     * Singularity request, deploy and helpers shared by all tasks of a job.
+     */
+    private class Job
+    {
+        private final String requestId;
+        private final String deployId = "1";
+        private final int retries = Math.max(propertiesController.getInt("task-retries", 2), 0);
+        
+        private final TaskMonitor monitor;
+        private final ReducePipeline pipeline;
+        private final SingularityClient client;
+        private final MetricsRegistry metrics;
+        private final ExecutorService submitter = Executors.newSingleThreadExecutor((Runnable runnable) -> {
+            Thread thread = new Thread(runnable, "task-submitter");
+            thread.setDaemon(true);
+            return thread;
         });
+        
+        Job(String request, SingularityClient singularityClient, TaskMonitor taskMonitor, ReducePipeline reducePipeline,
+            MetricsRegistry jobMetrics) {
+            requestId = request;
+            client = singularityClient;
+            monitor = taskMonitor;
+            pipeline = reducePipeline;
+            metrics = jobMetrics;
+        }
+        
+        /**
+         * Stops monitoring and submitting, removes the job's request.
+         */
+        void close() {
+            monitor.close();
+            submitter.shutdownNow();
+            client.DeleteRequest(requestId);
+            client.close();
+        }
     }
 }
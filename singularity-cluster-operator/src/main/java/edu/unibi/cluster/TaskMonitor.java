@@ -0,0 +1,312 @@
+package edu.unibi.cluster;
+
+import edu.unibi.cluster.singularity.SingularityClient;
+import edu.unibi.cluster.singularity.TaskUpdate;
+import edu.unibi.main.Logger;
+import edu.unibi.properties.PropertiesController;
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monitors Singularity tasks and completes a future per request, or per run
+ * of an on-demand request, once its task has reached a terminal state. Task
+ * updates are received through a Singularity webhook posting to an embedded
+ * HTTP server. If webhooks are unavailable, the task history of each watched
+ * request is polled with an adaptive backoff instead. While webhooks are
+ * active, polling continues at the maximum interval to reconcile updates
+ * that have not been delivered. Watches are removed once completed.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class TaskMonitor
+{
+    private static final int historyPageSize = 100;
+
+    private static final Set<String> terminalStates = new HashSet(Arrays.asList(
+            "TASK_FINISHED" , "TASK_FAILED" , "TASK_KILLED" , "TASK_LOST" , "TASK_LOST_WHILE_DOWN" , "TASK_ERROR"));
+
+    private final SingularityClient client;
+    private final String masterIp;
+    private final PropertiesController propertiesController;
+
+    private final Map<String , Watch> watches = new ConcurrentHashMap();
+    private final ScheduledExecutorService scheduler;
+
+    private final long minInterval;
+    private final long maxInterval;
+    private long interval;
+    private volatile boolean changed = false;
+
+    private WebhookReceiver receiver = null;
+    private String webhookId = null;
+
+    /**
+     * Constructor.
+     * @param singularityClient client of the Singularity REST API
+     * @param ip IP of the Singularity master, used to determine the address
+     * webhooks are sent to
+     * @param properties
+     */
+    public TaskMonitor(SingularityClient singularityClient, String ip, PropertiesController properties) {
+
+        client = singularityClient;
+        masterIp = ip;
+        propertiesController = properties;
+
+        minInterval = Math.max(properties.getLong("poll-interval-min-ms" , 1000) , 100);
+        maxInterval = Math.max(properties.getLong("poll-interval-max-ms" , 30000) , minInterval);
+        interval = minInterval;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(( Runnable runnable ) -> {
+            Thread thread = new Thread(runnable , "task-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts monitoring. Registers the webhook if enabled, falls back to
+     * polling otherwise.
+     */
+    public void Start() {
+
+        if (!"no".equals(propertiesController.get("webhooks"))) {
+            try {
+                receiver = new WebhookReceiver(propertiesController.getInt("webhook-port" , 0) , this::Update);
+                RegisterWebhook();
+                log("Receiving task updates at port " + receiver.getPort() + ".");
+            } catch (IOException | RuntimeException ex) {
+                log("Webhooks unavailable. Polling task history instead.");
+                log(ex.toString());
+                if (receiver != null) {
+                    receiver.close();
+                    receiver = null;
+                }
+                webhookId = null;
+            }
+        }
+        scheduler.schedule(this::Poll , receiver != null ? maxInterval : minInterval , TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Watches the task of the given run. Has to be called before the run is
+     * launched, so no update can be missed. Watching a request without run
+     * ID watches its only task, a new deploy replacing the previous watch.
+     * @param requestId
+     * @param deployId
+     * @param runId ID of the run, NULL to watch the request's only task
+     * @return future completing with the terminal task update, carrying the
+     * time the task has been reported running first if known
+     */
+    public CompletableFuture<TaskUpdate> Watch(String requestId, String deployId, String runId) {
+        Watch watch = new Watch(requestId , deployId);
+        watches.put(getKey(requestId , runId) , watch);
+        return watch.future;
+    }
+
+    /**
+     * Gets the key of the watch of a request or run.
+     */
+    private static String getKey(String requestId, String runId) {
+        return runId != null ? requestId + "/" + runId : requestId;
+    }
+
+    /**
+     * Processes a task update. Updates of unknown requests or deploys are
+     * ignored.
+     * @param update
+     */
+    protected synchronized void Update(TaskUpdate update) {
+
+        String requestId = update.getRequestId();
+        String deployId = update.getDeployId();
+        String state = update.getState();
+        String key = getKey(requestId , update.getRunId());
+
+        Watch watch = watches.get(key);
+        if (watch == null || (deployId != null && !deployId.equals(watch.deployId)) || state.equals(watch.state)) {
+            return;
+        }
+
+        watch.state = state;
+        if ("TASK_RUNNING".equals(state) && watch.running == 0) {
+            watch.running = System.nanoTime();
+        }
+        changed = true;
+        log(key + " (deploy " + watch.deployId + "): " + state);
+
+        if (isTerminal(state)) {
+            watches.remove(key , watch);
+            watch.future.complete(update.withRunningSince(watch.running));
+        }
+    }
+
+    /**
+     * Polls the task history of all requests with unfinished watches and 
+     * schedules the next poll. Backs off while nothing changes.
+     */
+    private void Poll() {
+
+        Map<String , Integer> requests = new HashMap();
+        for (Watch watch : watches.values()) {
+            requests.merge(watch.requestId , 1 , Integer::sum);
+        }
+
+        for (Map.Entry<String , Integer> request : requests.entrySet()) {
+            try {
+                PollRequest(request.getKey() , request.getValue());
+            } catch (IOException | RuntimeException ex) {
+                log("Exception polling task history of " + request.getKey() + ".");
+                log(ex.toString());
+            }
+        }
+
+        if (receiver != null) {
+            interval = maxInterval;
+        } else if (changed) {
+            interval = minInterval;
+        } else {
+            interval = Math.min((long) (interval * 1.5) , maxInterval);
+        }
+        changed = false;
+
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::Poll , interval , TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Gets the inactive tasks of a request and passes them on as updates.
+     * The history is paged, most recent tasks first. Pages are fetched until
+     * a page is not full or enough pages for all unfinished watches of the
+     * request have been read.
+     */
+    private void PollRequest(String requestId, int unfinished) throws IOException {
+
+        int pages = unfinished / historyPageSize + 2;
+        for (int page = 1; page <= pages; page++) {
+
+            List<TaskUpdate> tasks = client.GetTaskHistory(requestId , historyPageSize , page);
+            for (TaskUpdate task : tasks) {
+                Update(task);
+            }
+            if (tasks.size() < historyPageSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the last status message of a task from its history, e.g. the
+     * reason a task has failed or was lost.
+     * @param taskId Singularity task ID
+     * @return the message, or NULL if there is none
+     */
+    public String GetStatusMessage(String taskId) {
+
+        if (taskId == null) {
+            return null;
+        }
+
+        try {
+            return client.GetStatusMessage(taskId);
+        } catch (IOException | RuntimeException ex) {
+            log("Exception getting task history of " + taskId + ".");
+            log(ex.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Registers the webhook at Singularity.
+     */
+    private void RegisterWebhook() throws IOException {
+
+        String host = propertiesController.get("webhook-host");
+        if (host == null || host.trim().isEmpty()) {
+            host = getLocalAddress();
+        }
+
+        String id = "singularity-cluster-operator-" + UUID.randomUUID();
+        client.PostWebhook(id , "http://" + host + ":" + receiver.getPort() + WebhookReceiver.path);
+        webhookId = id;
+    }
+
+    /**
+     * Gets the local address used to reach the master.
+     */
+    private String getLocalAddress() throws IOException {
+        DatagramSocket socket = new DatagramSocket();
+        try {
+            socket.connect(InetAddress.getByName(masterIp) , 7099);
+            return socket.getLocalAddress().getHostAddress();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Stops monitoring and removes the webhook.
+     */
+    public void close() {
+
+        scheduler.shutdownNow();
+        if (webhookId != null) {
+            try {
+                client.DeleteWebhook(webhookId);
+            } catch (IOException ex) {
+                log("Exception removing webhook.");
+                log(ex.toString());
+            }
+        }
+        if (receiver != null) {
+            receiver.close();
+        }
+    }
+
+    /**
+     * Checks if a task state is terminal.
+     * @param state
+     * @return
+     */
+    public static boolean isTerminal(String state) {
+        return terminalStates.contains(state);
+    }
+
+    /**
+     * Writes a message using the Logger.
+     * @param msg
+     */
+    private void log(String msg) {
+        Logger.log("Monitor: " + msg);
+    }
+
+    /**
+     * State of a single watched request.
+     */
+    private static class Watch
+    {
+        private final String requestId;
+        private final String deployId;
+        private final CompletableFuture<TaskUpdate> future = new CompletableFuture();
+        private volatile String state = null;
+        private long running = 0;
+
+        Watch(String request, String deploy) {
+            requestId = request;
+            deployId = deploy;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package edu.unibi.cluster;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.unibi.cluster.singularity.SingularityClient;
+import edu.unibi.cluster.singularity.TaskUpdate;
+import edu.unibi.main.Logger;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Embedded HTTP server receiving Singularity task webhooks. Every task update
+ * posted by Singularity is passed to the listener. Updates of tasks that do
+ * not belong to the application are passed as well and have to be filtered.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class WebhookReceiver
+{
+    public static final String path = "/singularity/tasks";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Listener listener;
+
+    /**
+     * Receives task updates.
+     */
+    public interface Listener
+    {
+        /**
+         * Called for every task update received.
+         * @param update
+         */
+        public void Update(TaskUpdate update);
+    }
+
+    /**
+     * Constructor. Starts listening immediately.
+     * @param port port to listen on, 0 to use any free port
+     * @param updateListener
+     * @throws IOException if the server cannot be started
+     */
+    public WebhookReceiver(int port, Listener updateListener) throws IOException {
+
+        listener = updateListener;
+
+        executor = Executors.newSingleThreadExecutor(( Runnable runnable ) -> {
+            Thread thread = new Thread(runnable , "webhook-receiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = HttpServer.create(new InetSocketAddress(port) , 0);
+        server.createContext(path , this::Handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Handles a single webhook call. Always acknowledges the call, as
+     * Singularity would otherwise retry sending unparseable updates.
+     */
+    private void Handle(HttpExchange exchange) throws IOException {
+
+        InputStream body = exchange.getRequestBody();
+        try {
+            if ("POST".equals(exchange.getRequestMethod())) {
+                TaskUpdate update = SingularityClient.ReadWebhook(body);
+                if (update != null) {
+                    listener.Update(update);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            log("Exception parsing webhook.");
+            log(ex.toString());
+        } finally {
+            body.close();
+            exchange.sendResponseHeaders(200 , -1);
+            exchange.close();
+        }
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     * @return
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Writes a message using the Logger.
+     * @param msg
+     */
+    private void log(String msg) {
+        Logger.log("Webhooks: " + msg);
+    }
+}
@@ -0,0 +1,90 @@
+package edu.unibi.cluster;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+
+/**
+ * Launches a fixed number of work items, keeping at most a given number of 
+ * them in flight. The next item is launched as soon as an earlier one has 
+ * completed, so fast workers keep pulling work until the queue is drained.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class WorkQueue
+{
+    private final int items;
+    private final int limit;
+    private final IntFunction<CompletableFuture<?>> launcher;
+    private final Executor executor;
+
+    private final CompletableFuture<?>[] completions;
+    private int next = 0;
+
+    /**
+     * Constructor.
+     * @param itemCount number of work items
+     * @param inFlight maximum number of items in flight
+     * @param itemLauncher launches the item with the given number, starting 
+     * at 0, and returns a future completing once the item is done
+     * @param launchExecutor executor launching items after others completed
+     */
+    public WorkQueue(int itemCount, int inFlight, IntFunction<CompletableFuture<?>> itemLauncher, Executor launchExecutor) {
+
+        items = itemCount;
+        limit = Math.max(inFlight , 1);
+        launcher = itemLauncher;
+        executor = launchExecutor;
+
+        completions = new CompletableFuture<?>[items];
+        for (int i = 0; i < items; i++) {
+            completions[i] = new CompletableFuture();
+        }
+    }
+
+    /**
+     * Launches the first items.
+     * @return future completing once all items are done
+     */
+    public CompletableFuture<Void> Start() {
+
+        for (int i = 0; i < Math.min(limit , items); i++) {
+            LaunchNext();
+        }
+        return CompletableFuture.allOf(completions);
+    }
+
+    /**
+     * Launches the next item, if any. Items failing to launch count as done.
+     */
+    private void LaunchNext() {
+
+        int item;
+        synchronized (this) {
+            if (next >= items) {
+                return;
+            }
+            item = next++;
+        }
+
+        CompletableFuture<?> future;
+        try {
+            future = launcher.apply(item);
+        } catch (RuntimeException ex) {
+            future = new CompletableFuture();
+            future.completeExceptionally(ex);
+        }
+
+        future.whenCompleteAsync(( Object result , Throwable ex ) -> {
+            completions[item].complete(null);
+            LaunchNext();
+        } , executor);
+    }
+
+    /**
+     * Gets the number of items launched so far.
+     * @return
+     */
+    public synchronized int getLaunched() {
+        return next;
+    }
+}
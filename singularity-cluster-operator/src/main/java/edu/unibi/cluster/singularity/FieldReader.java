@@ -0,0 +1,92 @@
+package edu.unibi.cluster.singularity;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Reads selected fields from JSON using a streaming parser. Fields are 
+ * addressed by dotted paths, elements of arrays by "[]", e.g.
+ * "taskUpdates[].statusMessage". Subtrees not leading to a selected field
+ * are skipped without being materialized.
+ * @author Philo Reipke, University Bielefeld
+ */
+class FieldReader
+{
+    private final Set<String> fields = new HashSet();
+    private final Set<String> prefixes = new HashSet();
+
+    /**
+     * Receives the selected fields.
+     */
+    interface Visitor
+    {
+        /**
+         * Called for every non-null scalar value of a selected field.
+         * @param path
+         * @param value
+         */
+        void Field(String path, String value);
+    }
+
+    /**
+     * Constructor.
+     * @param paths paths of the fields to read
+     */
+    FieldReader(String... paths) {
+        for (String path : paths) {
+            fields.add(path);
+            for (int i = 0; i < path.length(); i++) {
+                if (path.charAt(i) == '.' || path.startsWith("[]" , i)) {
+                    prefixes.add(path.substring(0 , i));
+                }
+            }
+            if (path.endsWith("[]")) {
+                prefixes.add(path.substring(0 , path.length() - 2));
+            }
+        }
+    }
+
+    /**
+     * Reads the value the parser is positioned at. Afterwards, the parser
+     * is positioned at the last token of the value.
+     * @param parser
+     * @param path path of the value, empty for the root
+     * @param visitor
+     * @throws IOException
+     */
+    void Read(JsonParser parser, String path, Visitor visitor) throws IOException {
+
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                String child = path.isEmpty() ? name : path + "." + name;
+                parser.nextToken();
+                if (isSelected(child)) {
+                    Read(parser , child , visitor);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            String child = path + "[]";
+            boolean selected = isSelected(child);
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (selected) {
+                    Read(parser , child , visitor);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } else if (token != null && token != JsonToken.VALUE_NULL && fields.contains(path)) {
+            visitor.Field(path , parser.getText());
+        }
+    }
+
+    private boolean isSelected(String path) {
+        return fields.contains(path) || prefixes.contains(path);
+    }
+}
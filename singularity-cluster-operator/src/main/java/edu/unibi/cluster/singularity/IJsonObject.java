@@ -0,0 +1,18 @@
+package edu.unibi.cluster.singularity;
+
+import java.io.IOException;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * Interface for objects sent to the Singularity REST API.
+ * @author Philo Reipke, University Bielefeld
+ */
+public interface IJsonObject
+{
+    /**
+     * Writes the object using the given generator.
+     * @param generator
+     * @throws IOException 
+     */
+    public void Write(JsonGenerator generator) throws IOException;
+}
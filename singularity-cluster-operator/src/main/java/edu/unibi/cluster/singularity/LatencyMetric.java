@@ -0,0 +1,70 @@
+package edu.unibi.cluster.singularity;
+
+/**
+ * Latency of calls to a single endpoint.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class LatencyMetric
+{
+    private final String endpoint;
+    private long count = 0;
+    private long failures = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+
+    /**
+     * Constructor.
+     * @param name name of the endpoint, e.g. POST /deploys
+     */
+    public LatencyMetric(String name) {
+        endpoint = name;
+    }
+
+    /**
+     * Records a single call.
+     * @param nanos duration of the call
+     * @param failed TRUE if the call failed or was rejected
+     */
+    public synchronized void Record(long nanos, boolean failed) {
+        count++;
+        if (failed) {
+            failures++;
+        }
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos , nanos);
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Gets the mean latency.
+     * @return latency in milliseconds
+     */
+    public synchronized double getMeanMillis() {
+        return count > 0 ? totalNanos / 1e6 / count : 0;
+    }
+
+    /**
+     * Gets the maximum latency.
+     * @return latency in milliseconds
+     */
+    public synchronized double getMaxMillis() {
+        return maxNanos / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: %d call(s), %d failed, mean %.1f ms, max %.1f ms" ,
+                             endpoint , count , failures , getMeanMillis() , getMaxMillis());
+    }
+}
@@ -0,0 +1,434 @@
+package edu.unibi.cluster.singularity;
+
+import edu.unibi.main.Logger;
+import edu.unibi.properties.PropertiesController;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Typed client of the Singularity REST API. Objects are serialized using a
+ * streaming generator, responses are read using a streaming parser picking
+ * only the required fields. Response bodies are always consumed, so
+ * connections are kept alive and reused between calls. Calls rejected with
+ * 409 (conflict, e.g. a deploy in progress) or a 5xx status, as well as
+ * calls failing with an IOException, are retried with an exponential
+ * backoff. Only idempotent calls are sent: requests and deploys are
+ * identified by their ID, runs by their run ID. The latency of every call
+ * is recorded per endpoint.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class SingularityClient
+{
+    private static final long deployPollInterval = 1000;
+    private static final long deployTimeout = 300000;
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    private static final FieldReader webhookReader = new FieldReader(
+            "taskUpdate.taskId.requestId" , "taskUpdate.taskId.deployId" , "taskUpdate.taskId.id" ,
+            "taskUpdate.taskState" , "taskUpdate.statusMessage" , "task.taskRequest.pendingTask.runId");
+    private static final FieldReader historyReader = new FieldReader(
+            "taskId.requestId" , "taskId.deployId" , "taskId.id" , "runId" , "lastTaskState");
+    private static final FieldReader taskReader = new FieldReader("taskUpdates[].statusMessage");
+    private static final FieldReader stateReader = new FieldReader("activeSlaves");
+    private static final FieldReader requestReader = new FieldReader("requestDeployState.activeDeploy.deployId");
+
+    private final String singularityUrlApi;
+    private final int retries;
+    private final ExecutorService executor;
+    private final Map<String , LatencyMetric> latencies = new ConcurrentHashMap();
+
+    /**
+     * Constructor.
+     * @param apiUrl base URL of the Singularity REST API
+     * @param properties
+     */
+    public SingularityClient(String apiUrl, PropertiesController properties) {
+
+        singularityUrlApi = apiUrl;
+        retries = Math.max(properties.getInt("submit-retries" , 5) , 0);
+
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(properties.getInt("submit-threads" , 4) , 1) , ( Runnable runnable ) -> {
+            Thread thread = new Thread(runnable , "singularity-submit-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates or updates a request.
+     * @param request
+     * @throws IOException if the request is rejected
+     */
+    public void PostRequest(SingularityRequest request) throws IOException {
+        Check(Send("POST /requests" , "POST" , "/requests" , request , null) , "Request " + request.getId());
+    }
+
+    /**
+     * Posts a deploy.
+     * @param deploy
+     * @throws IOException if the deploy is rejected
+     */
+    public void PostDeploy(SingularityDeploy deploy) throws IOException {
+        Check(Send("POST /deploys" , "POST" , "/deploys" , deploy , null) , "Deploy " + deploy.getId());
+    }
+
+    /**
+     * Waits until the given deploy has become the active deploy of its
+     * request, so runs can be launched.
+     * @param requestId
+     * @param deployId
+     * @throws IOException if the deploy does not become active in time
+     */
+    public void AwaitDeploy(String requestId, String deployId) throws IOException {
+
+        long deadline = System.currentTimeMillis() + deployTimeout;
+
+        while (System.currentTimeMillis() < deadline) {
+            String[] active = new String[1];
+            int statusCode = Send("GET /requests/request/{id}" , "GET" , "/requests/request/" + requestId , null , ( JsonParser parser ) -> {
+                parser.nextToken();
+                requestReader.Read(parser , "" , ( String path , String value ) -> active[0] = value);
+            });
+            if (statusCode == 200 && deployId.equals(active[0])) {
+                return;
+            }
+            try {
+                Thread.sleep(deployPollInterval);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for deploy " + deployId + "." , ex);
+            }
+        }
+        throw new IOException("Deploy " + deployId + " of " + requestId + " did not become active.");
+    }
+
+    /**
+     * Launches a run of the active deploy of an on-demand request.
+     * @param requestId
+     * @param run
+     * @return future completing once the run has been accepted
+     */
+    public CompletableFuture<Void> RunAsync(String requestId, SingularityRun run) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                Check(Send("POST /requests/request/{id}/run" , "POST" , "/requests/request/" + requestId + "/run" , run , null) ,
+                      "Run " + run.getRunId());
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        } , executor);
+    }
+
+    /**
+     * Checks once, without retrying, if the API is reachable.
+     * @param timeoutMs connect and read timeout
+     * @return TRUE if GET /state has succeeded
+     */
+    public boolean Ping(int timeoutMs) {
+        try {
+            HttpURLConnection con = (HttpURLConnection) new URL(singularityUrlApi + "/state").openConnection();
+            con.setConnectTimeout(timeoutMs);
+            con.setReadTimeout(timeoutMs);
+            con.setRequestProperty("Accept" , "application/json");
+            int statusCode = con.getResponseCode();
+            con.disconnect();
+            return statusCode / 100 == 2;
+        } catch (IOException ex) {
+            log("GET /state failed (" + ex + ").");
+            return false;
+        }
+    }
+
+    /**
+     * Gets the number of slaves registered and active.
+     * @return
+     * @throws IOException if the state cannot be retrieved
+     */
+    public int GetActiveSlaves() throws IOException {
+        int[] active = new int[1];
+        Check(Send("GET /state" , "GET" , "/state" , null , ( JsonParser parser ) -> {
+            parser.nextToken();
+            stateReader.Read(parser , "" , ( String path , String value ) -> active[0] = Integer.parseInt(value));
+        }) , "State");
+        return active[0];
+    }
+
+    /**
+     * Deletes a request including its deploys.
+     * @param requestId
+     */
+    public void DeleteRequest(String requestId) {
+        try {
+            Send("DELETE /requests/request/{id}" , "DELETE" , "/requests/request/" + requestId , null , null);
+        } catch (IOException ex) {
+            log("Exception deleting request " + requestId + ".");
+            log(ex.toString());
+        }
+    }
+
+    /**
+     * Gets a page of the inactive tasks of a request, most recent first.
+     * @param requestId
+     * @param count number of tasks per page
+     * @param page number of the page, starting at 1
+     * @return the terminal update of each task
+     * @throws IOException
+     */
+    public List<TaskUpdate> GetTaskHistory(String requestId, int count, int page) throws IOException {
+
+        List<TaskUpdate> updates = new ArrayList();
+        int statusCode = Send("GET /history/request/{id}/tasks" , "GET" ,
+                              "/history/request/" + requestId + "/tasks?count=" + count + "&page=" + page , null , ( JsonParser parser ) -> {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String[] task = new String[5];
+                historyReader.Read(parser , "" , ( String path , String value ) -> {
+                    switch (path) {
+                        case "taskId.requestId": task[0] = value; break;
+                        case "taskId.deployId": task[1] = value; break;
+                        case "runId": task[2] = value; break;
+                        case "taskId.id": task[3] = value; break;
+                        case "lastTaskState": task[4] = value; break;
+                    }
+                });
+                if (task[4] != null) {
+                    updates.add(new TaskUpdate(task[0] != null ? task[0] : requestId , task[1] , task[2] , task[3] , task[4] , null));
+                }
+            }
+        });
+        Check(statusCode , "Task history of " + requestId);
+        return updates;
+    }
+
+    /**
+     * Gets the last status message of a task from its history, e.g. the
+     * reason a task has failed or was lost.
+     * @param taskId Singularity task ID
+     * @return the message, or NULL if there is none
+     * @throws IOException
+     */
+    public String GetStatusMessage(String taskId) throws IOException {
+
+        String[] message = new String[1];
+        int statusCode = Send("GET /history/task/{id}" , "GET" , "/history/task/" + taskId , null , ( JsonParser parser ) -> {
+            parser.nextToken();
+            taskReader.Read(parser , "" , ( String path , String value ) -> {
+                if (!value.isEmpty()) {
+                    message[0] = value;
+                }
+            });
+        });
+        Check(statusCode , "Task history of " + taskId);
+        return message[0];
+    }
+
+    /**
+     * Registers a webhook receiving task updates.
+     * @param webhookId
+     * @param uri
+     * @throws IOException if the webhook is rejected
+     */
+    public void PostWebhook(String webhookId, String uri) throws IOException {
+        IJsonObject webhook = ( JsonGenerator generator ) -> {
+            generator.writeStartObject();
+            generator.writeStringField("id" , webhookId);
+            generator.writeStringField("uri" , uri);
+            generator.writeStringField("type" , "TASK");
+            generator.writeEndObject();
+        };
+        Check(Send("POST /webhooks" , "POST" , "/webhooks" , webhook , null) , "Webhook");
+    }
+
+    /**
+     * Removes a webhook.
+     * @param webhookId
+     * @throws IOException
+     */
+    public void DeleteWebhook(String webhookId) throws IOException {
+        Check(Send("DELETE /webhooks" , "DELETE" , "/webhooks?webhookId=" + webhookId , null , null) , "Webhook");
+    }
+
+    /**
+     * Reads the task update posted by a task webhook.
+     * @param input
+     * @return the update, or NULL if it does not contain a task update
+     * @throws IOException
+     */
+    public static TaskUpdate ReadWebhook(InputStream input) throws IOException {
+
+        String[] task = new String[6];
+        JsonParser parser = factory.createJsonParser(input);
+        try {
+            parser.nextToken();
+            webhookReader.Read(parser , "" , ( String path , String value ) -> {
+                switch (path) {
+                    case "taskUpdate.taskId.requestId": task[0] = value; break;
+                    case "taskUpdate.taskId.deployId": task[1] = value; break;
+                    case "task.taskRequest.pendingTask.runId": task[2] = value; break;
+                    case "taskUpdate.taskId.id": task[3] = value; break;
+                    case "taskUpdate.taskState": task[4] = value; break;
+                    case "taskUpdate.statusMessage": task[5] = value; break;
+                }
+            });
+        } finally {
+            parser.close();
+        }
+
+        if (task[0] == null || task[4] == null) {
+            return null;
+        }
+        return new TaskUpdate(task[0] , task[1] , task[2] , task[3] , task[4] , task[5]);
+    }
+
+    /**
+     * Gets the latency of all endpoints called so far.
+     * @return
+     */
+    public Collection<LatencyMetric> getLatencies() {
+        return latencies.values();
+    }
+
+    /**
+     * Stops the submission workers and logs the latency of all endpoints.
+     */
+    public void close() {
+        executor.shutdownNow();
+        for (LatencyMetric latency : latencies.values()) {
+            log(latency.toString());
+        }
+    }
+
+    /**
+     * Throws if the status code does not indicate success.
+     */
+    private void Check(int statusCode, String description) throws IOException {
+        if (statusCode / 100 != 2) {
+            throw new IOException(description + " rejected. Status code: " + statusCode + ".");
+        }
+    }
+
+    /**
+     * Sends a call, retrying on conflicts, server errors and IOExceptions.
+     * @param endpoint name of the endpoint the latency is recorded for
+     * @param body object to send, may be NULL
+     * @param reader reads successful responses, may be NULL
+     * @return the last status code
+     */
+    private int Send(String endpoint, String method, String path, IJsonObject body, ResponseReader reader) throws IOException {
+
+        // Serialize once, the body is sent again on retries
+        byte[] json = null;
+        if (body != null) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+            JsonGenerator generator = factory.createJsonGenerator(output , JsonEncoding.UTF8);
+            body.Write(generator);
+            generator.close();
+            json = output.toByteArray();
+        }
+
+        LatencyMetric latency = latencies.computeIfAbsent(endpoint , LatencyMetric::new);
+        for (int attempt = 0;; attempt++) {
+            long time = System.nanoTime();
+            try {
+                int statusCode = SendOnce(method , path , json , reader);
+                boolean retry = statusCode == 409 || statusCode / 100 == 5;
+                latency.Record(System.nanoTime() - time , statusCode / 100 != 2);
+                if (attempt >= retries || !retry) {
+                    return statusCode;
+                }
+                log(method + " " + path + " returned " + statusCode + ". Retrying.");
+            } catch (IOException ex) {
+                latency.Record(System.nanoTime() - time , true);
+                if (attempt >= retries) {
+                    throw ex;
+                }
+                log(method + " " + path + " failed (" + ex + "). Retrying.");
+            }
+            try {
+                Thread.sleep(Math.min(250L << attempt , 8000));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted sending " + method + " " + path + "." , ex);
+            }
+        }
+    }
+
+    /**
+     * Sends a single call. The response body is read completely and the
+     * connection is not disconnected, so it returns to the keep-alive cache.
+     */
+    private int SendOnce(String method, String path, byte[] json, ResponseReader reader) throws IOException {
+
+        HttpURLConnection con = (HttpURLConnection) new URL(singularityUrlApi + path).openConnection();
+        con.setRequestMethod(method);
+        con.setRequestProperty("Accept" , "application/json");
+
+        if (json != null) {
+            con.setRequestProperty("Content-Type" , "application/json");
+            con.setFixedLengthStreamingMode(json.length);
+            con.setDoOutput(true);
+            OutputStream output = con.getOutputStream();
+            output.write(json);
+            output.close();
+        }
+
+        int statusCode = con.getResponseCode();
+        InputStream input = statusCode < 400 ? con.getInputStream() : con.getErrorStream();
+        if (input == null) {
+            return statusCode;
+        }
+
+        try {
+            if (reader != null && statusCode / 100 == 2) {
+                JsonParser parser = factory.createJsonParser(input);
+                reader.Read(parser);
+            }
+            // Drain the remainder, so the connection can be reused
+            byte[] buffer = new byte[4096];
+            while (input.read(buffer) != -1) {
+            }
+        } finally {
+            input.close();
+        }
+        return statusCode;
+    }
+
+    /**
+     * Writes a message using the Logger.
+     * @param msg
+     */
+    private void log(String msg) {
+        Logger.log("Singularity: " + msg);
+    }
+
+    /**
+     * Reads a successful response.
+     */
+    private interface ResponseReader
+    {
+        void Read(JsonParser parser) throws IOException;
+    }
+}
@@ -0,0 +1,88 @@
+package edu.unibi.cluster.singularity;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * Singularity deploy running a command with fixed resources. The command is
+ * executed directly, not by a shell, with the deploy's arguments followed by
+ * the command line arguments of each run.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class SingularityDeploy implements IJsonObject
+{
+    private final String requestId;
+    private final String id;
+    private final String command;
+    private final String[] arguments;
+    private final double cpus;
+    private final double memoryMb;
+    private final Map<String , String> metadata = new LinkedHashMap();
+
+    /**
+     * Constructor.
+     * @param request ID of the request to deploy
+     * @param deployId
+     * @param executable command executed by every task of the deploy
+     * @param commandArguments arguments passed to the command
+     * @param cpuCount cpus reserved per task
+     * @param memory memory reserved per task in MB
+     */
+    public SingularityDeploy(String request, String deployId, String executable, String[] commandArguments, double cpuCount,
+                             double memory) {
+        requestId = request;
+        id = deployId;
+        command = executable;
+        arguments = commandArguments;
+        cpus = cpuCount;
+        memoryMb = memory;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Adds metadata describing the deploy. Does not affect its tasks.
+     * @param key
+     * @param value
+     */
+    public void setMetadata(String key, String value) {
+        metadata.put(key , value);
+    }
+
+    @Override
+    public void Write(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("deploy");
+        generator.writeStringField("requestId" , requestId);
+        generator.writeStringField("id" , id);
+        generator.writeObjectFieldStart("resources");
+        generator.writeNumberField("cpus" , cpus);
+        generator.writeNumberField("memoryMb" , memoryMb);
+        generator.writeNumberField("numPorts" , 0);
+        generator.writeEndObject();
+        generator.writeStringField("command" , command);
+        generator.writeArrayFieldStart("arguments");
+        for (String argument : arguments) {
+            generator.writeString(argument);
+        }
+        generator.writeEndArray();
+        generator.writeBooleanField("shell" , false);
+        if (!metadata.isEmpty()) {
+            generator.writeObjectFieldStart("metadata");
+            for (Map.Entry<String , String> entry : metadata.entrySet()) {
+                generator.writeStringField(entry.getKey() , entry.getValue());
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,61 @@
+package edu.unibi.cluster.singularity;
+
+import java.io.IOException;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * Singularity request. Only the fields used by the application are modeled.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class SingularityRequest implements IJsonObject
+{
+    private final String id;
+    private final String requestType;
+    private String slavePlacement = null;
+    private int instances = 0;
+
+    /**
+     * Constructor.
+     * @param requestId
+     * @param type request type, e.g. ON_DEMAND or RUN_ONCE
+     */
+    public SingularityRequest(String requestId, String type) {
+        id = requestId;
+        requestType = type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Sets the slave placement, e.g. SEPARATE_BY_REQUEST. Singularity's 
+     * default is used if not set.
+     * @param placement
+     */
+    public void setSlavePlacement(String placement) {
+        slavePlacement = placement;
+    }
+
+    /**
+     * Sets the number of instances. Not sent if not set.
+     * @param count
+     */
+    public void setInstances(int count) {
+        instances = count;
+    }
+
+    @Override
+    public void Write(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id" , id);
+        generator.writeStringField("requestType" , requestType);
+        if (slavePlacement != null) {
+            generator.writeStringField("slavePlacement" , slavePlacement);
+        }
+        if (instances > 0) {
+            generator.writeNumberField("instances" , instances);
+        }
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,40 @@
+package edu.unibi.cluster.singularity;
+
+import java.io.IOException;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * Run of an on-demand request, passing arguments to the deploy command.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class SingularityRun implements IJsonObject
+{
+    private final String runId;
+    private final String[] commandLineArgs;
+
+    /**
+     * Constructor.
+     * @param run ID identifying the run and its task
+     * @param arguments command line arguments appended to the deploy command
+     */
+    public SingularityRun(String run, String[] arguments) {
+        runId = run;
+        commandLineArgs = arguments;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    @Override
+    public void Write(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("runId" , runId);
+        generator.writeArrayFieldStart("commandLineArgs");
+        for (String argument : commandLineArgs) {
+            generator.writeString(argument);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+}
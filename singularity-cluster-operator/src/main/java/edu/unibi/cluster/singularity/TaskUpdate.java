@@ -0,0 +1,89 @@
+package edu.unibi.cluster.singularity;
+
+/**
+ * State change of a single Singularity task.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class TaskUpdate
+{
+    private final String requestId;
+    private final String deployId;
+    private final String runId;
+    private final String taskId;
+    private final String state;
+    private final String statusMessage;
+    private final long runningSince;
+
+    /**
+     * Constructor.
+     * @param request ID of the request the task belongs to
+     * @param deploy ID of the deploy the task belongs to
+     * @param run ID of the run the task executes, NULL if not launched as run
+     * @param task Singularity task ID, may be NULL if unknown
+     * @param taskState Singularity task state, e.g. TASK_RUNNING
+     * @param message status message, may be NULL
+     */
+    public TaskUpdate(String request, String deploy, String run, String task, String taskState, String message) {
+        this(request , deploy , run , task , taskState , message , 0);
+    }
+
+    private TaskUpdate(String request, String deploy, String run, String task, String taskState, String message, long running) {
+        requestId = request;
+        deployId = deploy;
+        runId = run;
+        taskId = task;
+        state = taskState;
+        statusMessage = message;
+        runningSince = running;
+    }
+
+    /**
+     * Creates a copy of the update, recording the time the task has been
+     * reported running first.
+     * @param running the time as of System.nanoTime()
+     * @return the copy
+     */
+    public TaskUpdate withRunningSince(long running) {
+        return new TaskUpdate(requestId , deployId , runId , taskId , state , statusMessage , running);
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getDeployId() {
+        return deployId;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public String getStatusMessage() {
+        return statusMessage;
+    }
+
+    /**
+     * Gets the time the task has been reported running first.
+     * @return the time as of System.nanoTime(), 0 if unknown
+     */
+    public long getRunningSince() {
+        return runningSince;
+    }
+
+    /**
+     * Checks if the task has finished successfully.
+     * @return
+     */
+    public boolean isFinished() {
+        return "TASK_FINISHED".equals(state);
+    }
+}
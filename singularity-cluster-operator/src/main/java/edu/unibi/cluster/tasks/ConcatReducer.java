@@ -0,0 +1,110 @@
+package edu.unibi.cluster.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reducer appending each output file to the target file. Files are copied
+ * using FileChannel.transferTo, so their content does not pass through the
+ * Java heap. Each file is terminated by a newline, so the last line of one
+ * output is never joined with the first line of the next.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class ConcatReducer implements IReducer
+{
+    private static final byte NEWLINE = '\n';
+
+    private final FileChannel target;
+    private final ByteBuffer newline = ByteBuffer.allocate(1);
+    private final ByteBuffer last = ByteBuffer.allocate(1);
+
+    private long bytes = 0;
+    private long nanos = 0;
+    private int files = 0;
+
+    /**
+     * Constructor. Truncates the target file.
+     * @param targetFile
+     * @throws IOException
+     */
+    public ConcatReducer(File targetFile) throws IOException {
+        target = FileChannel.open(targetFile.toPath() , StandardOpenOption.CREATE ,
+                                  StandardOpenOption.WRITE , StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Appends an output file to the target file.
+     * @param sourceFile
+     * @param index
+     * @throws IOException
+     */
+    @Override
+    public void Reduce(File sourceFile, int index) throws IOException {
+
+        long time = System.nanoTime();
+        FileChannel source = FileChannel.open(sourceFile.toPath() , StandardOpenOption.READ);
+        try {
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = source.transferTo(position , size - position , target);
+                if (transferred <= 0) {
+                    // The source has been truncated while appending it
+                    throw new IOException("Could not append '" + sourceFile + "' beyond " + position + " of " + size + " bytes.");
+                }
+                position += transferred;
+            }
+            bytes += size;
+
+            // Terminate the last line
+            if (size > 0) {
+                last.clear();
+                source.read(last , size - 1);
+                if (last.get(0) != NEWLINE) {
+                    newline.clear();
+                    newline.put(NEWLINE).flip();
+                    while (newline.hasRemaining()) {
+                        target.write(newline);
+                    }
+                    bytes++;
+                }
+            }
+        } finally {
+            source.close();
+        }
+        files++;
+        nanos += System.nanoTime() - time;
+    }
+
+    @Override
+    public void close() throws IOException {
+        target.close();
+    }
+
+    /**
+     * Gets the number of bytes written.
+     * @return
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the number of files appended.
+     * @return
+     */
+    public int getFiles() {
+        return files;
+    }
+
+    /**
+     * Gets the throughput while appending files.
+     * @return throughput in MB/s
+     */
+    public double getThroughput() {
+        return nanos > 0 ? bytes / 1048576.0 / (nanos / 1e9) : 0;
+    }
+}
@@ -0,0 +1,32 @@
+package edu.unibi.cluster.tasks;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Interface for incrementally reducing task outputs. Output files are passed
+ * one at a time as soon as they are available, so reducing can start before
+ * all tasks have finished.
+ * @author Philo Reipke, University Bielefeld
+ */
+public interface IReducer extends Closeable
+{
+    /**
+     * Merges a single output file into the reduced result. The file is 
+     * deleted once this method returns, so reducers that need it later on 
+     * have to move it elsewhere.
+     * @param sourceFile output file of a single task
+     * @param index number of the task that produced the output, starting at 0
+     * @throws IOException 
+     */
+    public void Reduce(File sourceFile, int index) throws IOException;
+    
+    /**
+     * Completes the reduced result. Called once after all available output 
+     * files have been passed.
+     * @throws IOException 
+     */
+    @Override
+    public void close() throws IOException;
+}
@@ -1,7 +1,12 @@
 package edu.unibi.cluster.tasks;
 
+import edu.unibi.codec.ICodec;
+import edu.unibi.main.Utilities;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 
 /**
  * Interface for implementing Singularity tasks.
@@ -35,6 +40,67 @@ public interface ITask
      */
     public String[] WriteTaskCommands(String objectContainer);
     
+    /**
+     * Sets the resources reserved for each task, e.g. to let the task's 
+     * commands use all reserved cpus. Has to be called before the commands
+     * are written. By default, resources are ignored.
+     * @param cpus
+     * @param memoryMb 
+     */
+    public default void setResources(double cpus, double memoryMb) {
+    }
+    
+    /**
+     * Sets the codec inputs and outputs are compressed with while being
+     * transferred through the object storage. Has to be called before the
+     * commands are written. By default, compression is not supported.
+     * @param codec
+     * @return TRUE if the task's commands handle the codec
+     */
+    public default boolean setCodec(ICodec codec) {
+        return !codec.isCompressing();
+    }
+    
+    /**
+     * Lets each task process its input in parts of the given number of
+     * queries, uploading the output of each part as a numbered part object
+     * as soon as it is computed. Has to be called before the commands are
+     * written. By default, parts are not supported.
+     * @param queries
+     * @return TRUE if the task's commands upload parts
+     */
+    public default boolean setPartSize(int queries) {
+        return false;
+    }
+    
+    /**
+     * Writes a single command executing any of the tasks. The arguments of 
+     * the task to be executed are passed to the command as positional 
+     * parameters $1, $2, ... By default, the commands written by 
+     * WriteTaskCommands are selected by the task number passed as $1.
+     * @param objectContainer object storage container to be used for all tasks
+     * @return the command
+     */
+    public default String WriteRunCommand(String objectContainer) {
+        
+        String[] commands = WriteTaskCommands(objectContainer);
+        String command = "case $1 in ";
+        for (int i = 0; i < commands.length; i++) {
+            command += i + ") " + commands[i] + " ;; ";
+        }
+        return command + "esac";
+    }
+    
+    /**
+     * Gets the arguments passed to the command written by WriteRunCommand
+     * to execute the given task. By default, the task number.
+     * @param task number of the task, starting at 0
+     * @return 
+     */
+    public default String[] getRunArguments(int task) {
+        return new String[]{Integer.toString(task)};
+    }
+    
     /**
      * Sets the files that will be used to store output data.
      * @param files 
@@ -50,4 +116,35 @@ public interface ITask
      * @throws IOException 
      */
     public void ReduceOutput(File targetFile, File[] sourceFiles) throws IOException;
+    
+    /**
+     * Creates a reducer that merges output files into the given target file
+     * one at a time, as soon as they become available. By default, all 
+     * passed files are retained and reduced using ReduceOutput on close.
+     * @param targetFile
+     * @return the reducer
+     * @throws IOException 
+     */
+    public default IReducer CreateReducer(File targetFile) throws IOException {
+        
+        final ArrayList<File> sourceFiles = new ArrayList();
+        final ITask task = this;
+        
+        return new IReducer() {
+            @Override
+            public void Reduce(File sourceFile, int index) throws IOException {
+                File retainedFile = Utilities.CreateTempFile("retained-" + index + "-", null);
+                Files.move(sourceFile.toPath(), retainedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                sourceFiles.add(retainedFile);
+            }
+            
+            @Override
+            public void close() throws IOException {
+                task.ReduceOutput(targetFile, sourceFiles.toArray(new File[sourceFiles.size()]));
+                for (File file : sourceFiles) {
+                    file.delete();
+                }
+            }
+        };
+    }
 }
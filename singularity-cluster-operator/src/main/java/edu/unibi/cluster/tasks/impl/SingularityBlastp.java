@@ -1,15 +1,19 @@
 package edu.unibi.cluster.tasks.impl;
 
+import edu.unibi.blast.TopHitsReducer;
+import edu.unibi.cluster.tasks.ConcatReducer;
+import edu.unibi.cluster.tasks.IReducer;
 import edu.unibi.cluster.tasks.ITask;
-import edu.unibi.main.Utilities;
+import edu.unibi.codec.Codecs;
+import edu.unibi.codec.ICodec;
+import edu.unibi.fasta.FastaIndex;
+import edu.unibi.fasta.FastaSplitter;
+import edu.unibi.fasta.ShardPlan;
+import edu.unibi.fasta.ShardStatistics;
+import edu.unibi.main.Logger;
 import edu.unibi.properties.PropertiesController;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
 
 /**
  * ITask implementation for performing a protein BLAST.
@@ -24,13 +28,21 @@ public class SingularityBlastp implements ITask
     private final String databaseSwiftContainer = "BLAST-DB";
     private final String[] databaseFileNames = new String[]{"swissprot.phr", "swissprot.pin", "swissprot.psq"};
     private final String databaseName = "swissprot";
+    private final String databaseCacheDirectory = "/tmp/singularity-blastdb";
+    private final String partFilePrefix = "query.part-";
+    
+    private final String shardBalancingBytes = "bytes";
+    private final String reduceModeSorted = "sorted";
     
     private String[] inputFileNames;
     private String[] outputFileNames;
     private File[] outputFiles;
     
     private int tasks = 0;
-    private int queries = 0;
+    private int threads = 1;
+    private ICodec codec = Codecs.NONE;
+    private int partQueries = 0;
+    private long queries = 0;
 
     public SingularityBlastp(PropertiesController properties) {
         propertiesController = properties;
@@ -41,76 +53,141 @@ public class SingularityBlastp implements ITask
         return requestId;
     }
     
+    /**
+     * Maps the source file to the given target files. By default, records
+     * are weighted by their number of residues and balanced across the target
+     * files, as the runtime of blastp scales with the query length. Setting
+     * the property 'shard-balancing' to 'bytes' instead creates contiguous 
+     * shards of similar size. Records are located using an index cached next
+     * to the source file and sliced into the target files without copying 
+     * them through memory. Setting 'fasta-index' to 'no' streams the source
+     * instead, which does not require writing the index.
+     * @param sourceFile
+     * @param targetFiles
+     * @throws IOException 
+     */
     @Override
     public void MapInput(File sourceFile, File[] targetFiles) throws IOException {
         
         tasks = targetFiles.length;
         
-        ArrayList<Integer> queryLineIndices = new ArrayList();
-        ArrayList<String> queryLines = new ArrayList();
-        String line;
+        boolean balanceBytes = shardBalancingBytes.equals(propertiesController.get("shard-balancing"));
+        boolean useIndex = !"no".equals(propertiesController.get("fasta-index"));
         
-        BufferedReader br = null;
-        try {
-            br = new BufferedReader(new FileReader(sourceFile));
+        FastaSplitter splitter = new FastaSplitter();
+        ShardStatistics[] statistics;
+        
+        if (!useIndex && balanceBytes) {
+            statistics = splitter.Split(sourceFile, targetFiles);
+        } else {
+            FastaIndex index;
+            if (useIndex) {
+                index = GetIndex(sourceFile);
+            } else {
+                index = FastaIndex.Scan(sourceFile);
+            }
             
-            int currentLine = 0;
-            while ((line = br.readLine()) != null) {
-                
-                queryLines.add(line);
-                if (line.contains(">contig-")) {
-                    queryLineIndices.add(currentLine);
-                }
-                currentLine++;
+            ShardPlan plan;
+            if (balanceBytes) {
+                plan = ShardPlan.Contiguous(index, tasks);
+            } else {
+                plan = ShardPlan.Balance(index, tasks);
+            }
+            
+            for (int i = 0; i < tasks; i++) {
+                log("Shard " + targetFiles[i].getName() + ": " + plan.getRecords(i) 
+                        + " records, predicted weight " + plan.getWeight(i) + " residues.");
+            }
+            log(String.format("Predicted imbalance (heaviest / mean shard): %.3f.", plan.getImbalance()));
+            
+            if (useIndex) {
+                statistics = splitter.Slice(sourceFile, targetFiles, index, plan);
+            } else {
+                statistics = splitter.Split(sourceFile, targetFiles, plan);
             }
-        } catch (Exception ex) {
-            System.out.println("Exception reading input file.");
-            System.out.println(ex.toString());
-        } finally {
-            Utilities.close(br);
         }
         
-        queries = queryLineIndices.size();
-        int queriesPerDeploy = (int) Math.ceil(queries / tasks);
+        queries = 0;
+        for (ShardStatistics shard : statistics) {
+            queries += shard.getRecords();
+        }
         
-        System.out.println("Queries in input file: " + queryLineIndices.size() + ".");
-        System.out.println("Scheduling " + queriesPerDeploy + " per deploy.");
+        log("Queries in input file: " + queries + ".");
+        if (splitter.getSkippedBytes() > 0) {
+            log("Skipped " + splitter.getSkippedBytes() + " bytes preceding the first query.");
+        }
+        for (ShardStatistics shard : statistics) {
+            log("Shard " + shard + ".");
+        }
         
         // Create slave input files
         inputFileNames = new String[tasks];
-        
         for (int i = 0; i < targetFiles.length; i++) {
             inputFileNames[i] = targetFiles[i].getName();
-            
-            // Write queries to file
-            PrintWriter out = null;
-            try {
-                out = new PrintWriter(new FileOutputStream(targetFiles[i] , false));
-                for (int j = 0; j < queriesPerDeploy; j++) {
-                    
-                    // Get number of lines in between current and next query
-                    int from, to;
-                    from = queryLineIndices.get(i * queriesPerDeploy + j);
-                    if (queryLineIndices.size() > i * queriesPerDeploy + j + 1) {
-                        to = queryLineIndices.get(i * queriesPerDeploy + j + 1);
-                    } else {
-                        to = queryLines.size();
-                    }
-                    
-                    // Write query lines to file
-                    for (int k = from; k < to; k++) {
-                        out.println(queryLines.get(k));
-                    }
-                }
-            } catch (Exception ex) {
-                System.out.println("Exception writing queries to input files.");
-                System.out.println(ex.toString());
-            } finally {
-                Utilities.close(out);
-            }
         }
     }
 
+    /**
+     * Gets the index of the source file. Loads the cached index if it is 
+     * still valid, builds and caches it otherwise.
+     * @param sourceFile
+     * @return
+     * @throws IOException 
+     */
+    private FastaIndex GetIndex(File sourceFile) throws IOException {
+        
+        FastaIndex index = FastaIndex.Load(sourceFile);
+        if (index != null) {
+            log("Using cached index '" + FastaIndex.getCacheFile(sourceFile) + "'.");
+            return index;
+        }
+        
+        long time = System.currentTimeMillis();
+        index = FastaIndex.Build(sourceFile, Runtime.getRuntime().availableProcessors());
+        log("Indexed " + index.getRecords() + " records in " + (System.currentTimeMillis() - time) + " ms.");
+        
+        try {
+            index.Save(sourceFile);
+        } catch (IOException ex) {
+            log("Exception caching index. Continuing without.");
+            log(ex.toString());
+        }
+        return index;
+    }
+
+    /**
+     * Runs blastp with one thread per reserved cpu.
+     * @param cpus
+     * @param memoryMb 
+     */
+    @Override
+    public void setResources(double cpus, double memoryMb) {
+        threads = Math.max((int) cpus, 1);
+    }
+
+    /**
+     * Streams inputs and outputs through the codec on the slaves.
+     * @param transferCodec
+     * @return TRUE, all codecs with shell commands are supported
+     */
+    @Override
+    public boolean setCodec(ICodec transferCodec) {
+        codec = transferCodec;
+        return true;
+    }
+
+    /**
+     * Runs blastp on parts of the given number of queries, uploading the
+     * output of each part as soon as it is computed.
+     * @param queries
+     * @return TRUE
+     */
+    @Override
+    public boolean setPartSize(int queries) {
+        partQueries = queries;
+        return true;
+    }
+
     /**
      * Sets the files that will be used to store output data.
      * @param files 
@@ -130,41 +207,193 @@ public class SingularityBlastp implements ITask
     public String[] WriteTaskCommands(String objectContainer) {
         
         String[] commands = new String[tasks];
-        outputFileNames = new String[tasks];
+        setOutputFileNames();
         
-        String endpoint, user, password, tenant;
+        for (int i = 0; i < commands.length; i++) {
+            commands[i] = WriteCommand(objectContainer, inputFileNames[i], outputFileNames[i]);
+        }
+        return commands;
+    }
+    
+    /**
+     * Writes a single command executing any task. The input and output file
+     * names are passed as $1 and $2.
+     * @param objectContainer object storage container to be used for all tasks
+     * @return the command
+     */
+    @Override
+    public String WriteRunCommand(String objectContainer) {
+        setOutputFileNames();
+        return WriteCommand(objectContainer, "$1", "$2");
+    }
+    
+    /**
+     * Gets the input and output file names of a task.
+     * @param task
+     * @return 
+     */
+    @Override
+    public String[] getRunArguments(int task) {
+        return new String[]{inputFileNames[task], outputFileNames[task]};
+    }
+    
+    /**
+     * Writes the pipeline of commands processing the given input file.
+     */
+    private String WriteCommand(String objectContainer, String inputFileName, String outputFileName) {
+        
+        String endpoint, user, password, tenant, command;
         endpoint = propertiesController.get("openstack-endpoint");
         user = propertiesController.get("openstack-username");
         password = propertiesController.get("openstack-password");
         tenant = propertiesController.get("openstack-tenantname");
         
-        for (int i = 0; i < commands.length; i++) {
+                        // set env
+        command =         "export OS_AUTH_URL=" + endpoint + " ; "
+                        + "export OS_USERNAME=" + user + " ; "
+                        + "export OS_PASSWORD=" + password + " ; "
+                        + "export OS_TENANT_NAME=" + tenant + " ; ";
+        
+                        // download database
+        String cacheDirectory = propertiesController.get("blastdb-cache-dir");
+        if ("no".equals(cacheDirectory)) {
+            command +=    WriteDatabaseDownload(".") + " ; "
+                        + "database=" + databaseName + " ; ";
+        } else {
+            command +=    WriteDatabaseCache(cacheDirectory != null && !cacheDirectory.trim().isEmpty()
+                                             ? cacheDirectory.trim() : databaseCacheDirectory);
+        }
+        if (partQueries > 0) {
+            return command + WritePartCommand(objectContainer, inputFileName, outputFileName);
+        }
+        if (codec.isCompressing()) {
+                        // stream input from the object storage into blastp
+            command +=    "swift download " + objectContainer + " " + inputFileName + " -o - | "
+                            + codec.getDecompressCommand() + " | "
+                        + "blastp -outfmt 6 -num_threads " + threads + " -db $database"
+                            + " -query -"
+                            + " -out " + outputFileName + " && "
+                        // compress and upload output
+                        + WriteUpload(objectContainer, outputFileName);
+            return command;
+        }
+                        // download input
+        command +=        "swift download " + objectContainer + " " + inputFileName + " ; "
+                        // execute blastp
+                        + "blastp -outfmt 6 -num_threads " + threads + " -db $database"
+                            + " -query " + inputFileName
+                            + " -out " + outputFileName + " ; "
+                        // upload output
+                        + WriteUpload(objectContainer, outputFileName);
+        return command;
+    }
+    
+    /**
+     * Writes commands splitting the input into parts of a fixed number of
+     * queries, running blastp on each part and uploading its output as a
+     * numbered part object right away. Parts uploaded by an earlier run of
+     * the task are skipped. Finally, a marker object carrying the number of
+     * parts is uploaded.
+     */
+    private String WritePartCommand(String objectContainer, String inputFileName, String outputFileName) {
+        
+        String command;
+                        // download input
+        if (codec.isCompressing()) {
+            command =     "swift download " + objectContainer + " " + inputFileName + " -o - | "
+                            + codec.getDecompressCommand() + " > " + inputFileName + " && ";
+        } else {
+            command =     "swift download " + objectContainer + " " + inputFileName + " && ";
+        }
+                        // split input into parts
+        command +=        "awk -v n=" + partQueries + " '/^>/ { if (c % n == 0) { if (o) close(o) ; "
+                            + "o = sprintf(\"" + partFilePrefix + "%04d\", c / n + 1) } c++ } o { print > o }' "
+                            + inputFileName + " && "
+                        + "parts=$(ls " + partFilePrefix + "* 2>/dev/null | wc -l) || exit 1 ; "
+                        // run blastp and upload output per part
+                        + "for part in $(seq -f %04g 1 $parts) ; do "
+                            + "out=" + outputFileName + ".part-$part ; "
+                            + "if ! swift stat " + objectContainer + " $out > /dev/null 2>&1 ; then "
+                                + "blastp -outfmt 6 -num_threads " + threads + " -db $database"
+                                    + " -query " + partFilePrefix + "$part"
+                                    + " -out $out && "
+                                + WriteUpload(objectContainer, "$out") + " || exit 1 ; "
+                            + "fi ; "
+                        + "done ; "
+                        // upload part count
+                        + "count=" + outputFileName + ".parts-$(printf %04d $parts) ; "
+                        + "touch $count && swift upload " + objectContainer + " $count";
+        return command;
+    }
+    
+    /**
+     * Writes commands uploading an output file, compressed by the codec.
+     */
+    private String WriteUpload(String objectContainer, String outputFileName) {
+        
+        if (!codec.isCompressing()) {
+            return "swift upload " + objectContainer + " " + outputFileName
+                    + "  --object-name " + outputFileName;
+        }
+        return codec.getCompressCommand() + " < " + outputFileName
+                + " > " + outputFileName + codec.getExtension() + " && "
+                + "swift upload " + objectContainer + " " + outputFileName + codec.getExtension()
+                + "  --object-name " + outputFileName;
+    }
+    
+    /**
+     * Writes commands providing the database through a cache shared by all
+     * tasks on a slave. The cache is keyed by the checksums (ETags) of the
+     * database objects, so a changed database is fetched again. The first
+     * task holding the lock downloads the database into a temporary 
+     * directory and moves it into place, so other tasks never see a partial
+     * copy. If the cache cannot be used, the database is downloaded into
+     * the task's sandbox instead. Sets $database to the database path.
+     */
+    private String WriteDatabaseCache(String cacheDirectory) {
+        
+        String files = String.join(" ", databaseFileNames);
+        
+                        // key cache entry by checksums of database objects
+        return            "cache=" + cacheDirectory + " ; "
+                        + "etags=$(for f in " + files + " ; do swift stat " + databaseSwiftContainer 
+                            + " $f | grep -i etag || echo missing ; done) ; "
+                        + "case \"$etags\" in *missing*) db= ;; *) db=$cache/$(echo \"$etags\" | md5sum | cut -c1-32) ;; esac ; "
+                        // populate cache under lock, reuse if complete
+                        + "if [ -n \"$db\" ] && mkdir -p $cache && ( flock -x 9 && "
+                            + "if [ ! -f $db/.complete ] ; then "
+                                + "tmp=$(mktemp -d $cache/.download.XXXXXX) && " + WriteDatabaseDownload("$tmp")
+                                + " && touch $tmp/.complete && chmod 755 $tmp && rm -rf $db && mv $tmp $db || { rm -rf $tmp ; exit 1 ; } ; "
+                            + "fi ) 9>$cache/.lock ; "
+                        + "then database=$db/" + databaseName + " ; "
+                        // fall back to sandbox
+                        + "else " + WriteDatabaseDownload(".") + " ; database=" + databaseName + " ; fi ; ";
+    }
+    
+    /**
+     * Writes commands downloading all database files into a directory.
+     */
+    private String WriteDatabaseDownload(String directory) {
+        
+        String command = "";
+        for (int j = 0; j < databaseFileNames.length; j++) {
+            command +=    (j > 0 ? " && " : "")
+                        + "swift download"
+                        + " " + databaseSwiftContainer
+                        + " " + databaseFileNames[j]
+                        + " -o " + directory + "/" + databaseFileNames[j];
+        }
+        return command;
+    }
+    
+    /**
+     * Sets the names of the output objects, equal to the output file names.
+     */
+    private void setOutputFileNames() {
+        outputFileNames = new String[tasks];
+        for (int i = 0; i < tasks; i++) {
             outputFileNames[i] = outputFiles[i].getName();
-            
-                            // set env
-            commands[i] =     "export OS_AUTH_URL=" + endpoint + " ; "
-                            + "export OS_USERNAME=" + user + " ; "
-                            + "export OS_PASSWORD=" + password + " ; "
-                            + "export OS_TENANT_NAME=" + tenant + " ; ";
-            
-                            // download database
-            for (int j = 0; j < databaseFileNames.length; j++) {
-                commands[i] += "swift download"
-                               + " " + databaseSwiftContainer
-                               + " " + databaseFileNames[j]
-                               + " -o " + databaseFileNames[j] + " ; ";
-            }
-                            // download input
-            commands[i] +=    "swift download " + objectContainer + " " + inputFileNames[i] + " ; "
-                            // execute blastp
-                            + "blastp -outfmt 6 -db " + databaseName
-                                + " -query " + inputFileNames[i]
-                                + " -out " + outputFileNames[i] + " ; "
-                            // upload output
-                            + "swift upload " + objectContainer + " " + outputFileNames[i]
-                                + "  --object-name " + outputFileNames[i];
         }
-        return commands;
     }
     
     /**
@@ -177,28 +406,70 @@ public class SingularityBlastp implements ITask
     @Override
     public void ReduceOutput(File targetFile , File[] sourceFiles) throws IOException {
         
-        PrintWriter writer = new PrintWriter(targetFile);
-        BufferedReader br;
-        String line;
-        int read;
+        IReducer reducer = CreateReducer(targetFile);
+        try {
+            for (int i = 0; i < sourceFiles.length; i++) {
+                reducer.Reduce(sourceFiles[i], i);
+            }
+        } finally {
+            reducer.close();
+        }
+    }
+    
+    /**
+     * Creates a reducer appending each output file to the target file as
+     * soon as it is passed. Setting the property 'reduce-mode' to 'sorted'
+     * instead merges all hits sorted by query, e-value and bit score, 
+     * optionally keeping the top hits per query ('reduce-top-hits') or hits
+     * up to an e-value cutoff ('reduce-max-evalue') only.
+     * @param targetFile
+     * @return the reducer
+     * @throws IOException 
+     */
+    @Override
+    public IReducer CreateReducer(File targetFile) throws IOException {
         
-        for (File file : sourceFiles) {
+        if (reduceModeSorted.equals(propertiesController.get("reduce-mode"))) {
+            int topHits = propertiesController.getInt("reduce-top-hits", 0);
+            double maxEvalue = propertiesController.getDouble("reduce-max-evalue", Double.POSITIVE_INFINITY);
+            long memoryMb = propertiesController.getLong("reduce-memory-mb", 256);
             
-            br = new BufferedReader(new FileReader(file));
-            read = 0;
-            
-            while ((line = br.readLine()) != null) {
-                
-                writer.println(line);
+            TopHitsReducer reducer = new TopHitsReducer(targetFile, topHits, maxEvalue, memoryMb << 20);
+            return new IReducer() {
+                @Override
+                public void Reduce(File sourceFile, int index) throws IOException {
+                    reducer.Reduce(sourceFile, index);
+                }
                 
-                if (read % 50 == 0) {
-                    writer.flush();
+                @Override
+                public void close() throws IOException {
+                    reducer.close();
+                    log("Merged " + reducer.getKept() + " of " + reducer.getHits() + " hits, sorted by query.");
                 }
+            };
+        }
+        
+        ConcatReducer reducer = new ConcatReducer(targetFile);
+        return new IReducer() {
+            @Override
+            public void Reduce(File sourceFile, int index) throws IOException {
+                reducer.Reduce(sourceFile, index);
             }
-            writer.flush();
             
-            br.close();
-        }
-        writer.close();
+            @Override
+            public void close() throws IOException {
+                reducer.close();
+                log(String.format("Appended %d outputs, %d bytes at %.1f MB/s.",
+                                  reducer.getFiles(), reducer.getBytes(), reducer.getThroughput()));
+            }
+        };
+    }
+    
+    /**
+     * Writes a message using the Logger.
+     * @param msg 
+     */
+    private void log(String msg) {
+        Logger.log(requestId + ": " + msg);
     }
 }
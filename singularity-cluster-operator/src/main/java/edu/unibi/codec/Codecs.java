@@ -0,0 +1,92 @@
+package edu.unibi.codec;
+
+import edu.unibi.main.Logger;
+import edu.unibi.properties.PropertiesController;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Provides the available codecs.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class Codecs
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public static final ICodec NONE = new IdentityCodec();
+
+    /**
+     * Gets the codec configured by the properties 'compression' and
+     * 'compression-level'. Unknown codecs are logged and replaced by none.
+     * @param properties
+     * @return
+     */
+    public static ICodec Get(PropertiesController properties) {
+
+        String name = properties.get("compression");
+        if (name == null || name.trim().isEmpty() || NONE.getName().equals(name.trim())) {
+            return NONE;
+        }
+        if ("gzip".equals(name.trim())) {
+            return new GzipCodec(properties.getInt("compression-level" , 1));
+        }
+        Logger.log("Properties: Unknown compression '" + name + "'. Transferring uncompressed.");
+        return NONE;
+    }
+
+    /**
+     * Compresses a file into another file.
+     * @param codec
+     * @param sourceFile
+     * @param targetFile
+     * @throws IOException
+     */
+    public static void Compress(ICodec codec, File sourceFile, File targetFile) throws IOException {
+        InputStream input = new FileInputStream(sourceFile);
+        try {
+            OutputStream output = codec.Compress(new BufferedOutputStream(new FileOutputStream(targetFile) , BUFFER_SIZE));
+            try {
+                Copy(input , output);
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Decompresses a stream into a file.
+     * @param codec
+     * @param input compressed stream, closed afterwards
+     * @param targetFile
+     * @throws IOException
+     */
+    public static void Decompress(ICodec codec, InputStream input, File targetFile) throws IOException {
+        try {
+            InputStream decompressed = codec.Decompress(new BufferedInputStream(input , BUFFER_SIZE));
+            OutputStream output = new FileOutputStream(targetFile);
+            try {
+                Copy(decompressed , output);
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void Copy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer , 0 , read);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package edu.unibi.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Codec compressing data using gzip. Uses a fast compression level, as
+ * FASTA and tabular outputs compress well even then and transfers should
+ * not be bound by compression.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class GzipCodec implements ICodec
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int level;
+
+    /**
+     * Constructor.
+     * @param compressionLevel level from 1 (fastest) to 9 (smallest)
+     */
+    public GzipCodec(int compressionLevel) {
+        level = Math.min(Math.max(compressionLevel , 1) , 9);
+    }
+
+    @Override
+    public String getName() {
+        return "gzip";
+    }
+
+    @Override
+    public String getExtension() {
+        return ".gz";
+    }
+
+    @Override
+    public OutputStream Compress(OutputStream output) throws IOException {
+        return new GZIPOutputStream(output , BUFFER_SIZE) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    @Override
+    public InputStream Decompress(InputStream input) throws IOException {
+        return new GZIPInputStream(input , BUFFER_SIZE);
+    }
+
+    @Override
+    public String getCompressCommand() {
+        return "gzip -" + level + " -c";
+    }
+
+    @Override
+    public String getDecompressCommand() {
+        return "gzip -dc";
+    }
+}
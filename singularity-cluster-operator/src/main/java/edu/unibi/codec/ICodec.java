@@ -0,0 +1,62 @@
+package edu.unibi.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Interface for codecs compressing data transferred through the object
+ * storage. Data is compressed and decompressed as a stream on the client,
+ * and using shell filters on the slaves.
+ * @author Philo Reipke, University Bielefeld
+ */
+public interface ICodec
+{
+    /**
+     * Gets the name of the codec, as used in the properties.
+     * @return
+     */
+    public String getName();
+    
+    /**
+     * Gets the extension of compressed files, e.g. ".gz".
+     * @return 
+     */
+    public String getExtension();
+    
+    /**
+     * Checks if the codec compresses data at all.
+     * @return 
+     */
+    public default boolean isCompressing() {
+        return true;
+    }
+    
+    /**
+     * Wraps a stream, compressing all data written to it.
+     * @param output
+     * @return
+     * @throws IOException 
+     */
+    public OutputStream Compress(OutputStream output) throws IOException;
+    
+    /**
+     * Wraps a stream, decompressing all data read from it.
+     * @param input
+     * @return
+     * @throws IOException 
+     */
+    public InputStream Decompress(InputStream input) throws IOException;
+    
+    /**
+     * Gets a shell command compressing stdin to stdout.
+     * @return 
+     */
+    public String getCompressCommand();
+    
+    /**
+     * Gets a shell command decompressing stdin to stdout.
+     * @return 
+     */
+    public String getDecompressCommand();
+}
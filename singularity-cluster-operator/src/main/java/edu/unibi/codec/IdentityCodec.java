@@ -0,0 +1,46 @@
+package edu.unibi.codec;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Codec passing data unchanged.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class IdentityCodec implements ICodec
+{
+    @Override
+    public String getName() {
+        return "none";
+    }
+
+    @Override
+    public String getExtension() {
+        return "";
+    }
+
+    @Override
+    public boolean isCompressing() {
+        return false;
+    }
+
+    @Override
+    public OutputStream Compress(OutputStream output) {
+        return output;
+    }
+
+    @Override
+    public InputStream Decompress(InputStream input) {
+        return input;
+    }
+
+    @Override
+    public String getCompressCommand() {
+        return "cat";
+    }
+
+    @Override
+    public String getDecompressCommand() {
+        return "cat";
+    }
+}
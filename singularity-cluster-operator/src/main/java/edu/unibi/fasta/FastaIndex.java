@@ -0,0 +1,426 @@
+package edu.unibi.fasta;
+
+import edu.unibi.main.Utilities;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stores the start offset and the number of residues of every record within
+ * a FASTA file. Uses primitive arrays only, so even files holding millions of
+ * records can be indexed without keeping any of their content in memory.
+ * Indices can be cached next to the indexed file and are reused as long as
+ * the file's length and modification time do not change.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class FastaIndex
+{
+    private static final int defaultBufferSize = 1 << 16;
+    
+    private static final String cacheFileSuffix = ".fidx";
+    private static final int cacheMagic = 0x46494458; // "FIDX"
+    private static final int cacheVersion = 1;
+    
+    private static final long maxChunkSize = 1L << 28;
+
+    private final long sourceLength;
+
+    private long[] offsets;
+    private int[] residues;
+    private int records;
+    
+    private long leadingResidues = 0;
+
+    /**
+     * Constructor.
+     * @param length length of the indexed file in bytes
+     * @param capacity initial number of records that can be stored
+     */
+    protected FastaIndex(long length, int capacity) {
+        sourceLength = length;
+        offsets = new long[Math.max(capacity , 16)];
+        residues = new int[Math.max(capacity , 16)];
+        records = 0;
+    }
+
+    /**
+     * Scans the given FASTA file sequentially and indexes its records. A record
+     * starts with a '>' at the beginning of a line. Residues are counted over
+     * all non-whitespace characters following the header line.
+     * @param sourceFile
+     * @return the index
+     * @throws IOException
+     */
+    public static FastaIndex Scan(File sourceFile) throws IOException {
+
+        FastaIndex index = new FastaIndex(sourceFile.length() , 1024);
+
+        InputStream input = null;
+        try {
+            input = new FileInputStream(sourceFile);
+
+            byte[] buffer = new byte[defaultBufferSize];
+            boolean lineStart = true;
+            boolean header = false;
+            long position = 0;
+            long count = 0;
+            int read;
+
+            while ((read = input.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+
+                    byte b = buffer[i];
+                    if (lineStart && b == FastaSplitter.HEADER) {
+                        if (index.records > 0) {
+                            index.setResidues(index.records - 1 , count);
+                        }
+                        index.add(position + i , 0);
+                        header = true;
+                        count = 0;
+                    } else if (b == FastaSplitter.NEWLINE) {
+                        header = false;
+                    } else if (!header && !isWhitespace(b)) {
+                        count++;
+                    }
+                    lineStart = b == FastaSplitter.NEWLINE;
+                }
+                position += read;
+            }
+            if (index.records > 0) {
+                index.setResidues(index.records - 1 , count);
+            }
+        } finally {
+            Utilities.close(input);
+        }
+
+        return index;
+    }
+
+    /**
+     * Builds the index by scanning the memory-mapped file in parallel. The 
+     * file is divided into chunks starting at line boundaries, so that header
+     * lines never span two chunks. Residues preceding the first header of a 
+     * chunk belong to the last record of the preceding chunks.
+     * @param sourceFile
+     * @param threads number of threads scanning chunks concurrently
+     * @return the index
+     * @throws IOException 
+     */
+    public static FastaIndex Build(File sourceFile, int threads) throws IOException {
+
+        RandomAccessFile file = null;
+        ExecutorService executor = null;
+        try {
+            file = new RandomAccessFile(sourceFile , "r");
+            FileChannel channel = file.getChannel();
+            long length = channel.size();
+
+            // Divide into chunks starting at line boundaries
+            int chunks = (int) Math.max(threads , (length + maxChunkSize - 1) / maxChunkSize);
+            long[] bounds = new long[chunks + 1];
+            for (int i = 1; i < chunks; i++) {
+                bounds[i] = Math.max(bounds[i - 1] , nextLineStart(channel , length * i / chunks));
+            }
+            bounds[chunks] = length;
+
+            // Scan chunks concurrently
+            executor = Executors.newFixedThreadPool(Math.max(threads , 1));
+            List<Future<FastaIndex>> partials = new ArrayList();
+            for (int i = 0; i < chunks; i++) {
+                final long from = bounds[i], to = bounds[i + 1];
+                partials.add(executor.submit(() -> ScanChunk(channel , from , to)));
+            }
+
+            // Merge partial indices in file order
+            FastaIndex index = new FastaIndex(length , 1024);
+            for (Future<FastaIndex> future : partials) {
+                FastaIndex partial = future.get();
+                if (index.records > 0) {
+                    index.setResidues(index.records - 1 , (long) index.residues[index.records - 1] + partial.leadingResidues);
+                }
+                for (int i = 0; i < partial.records; i++) {
+                    index.add(partial.offsets[i] , partial.residues[i]);
+                }
+            }
+            return index;
+
+        } catch (InterruptedException ex) {
+            throw new IOException("Interrupted while indexing '" + sourceFile + "'." , ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Exception indexing '" + sourceFile + "'." , ex.getCause());
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            Utilities.close(file);
+        }
+    }
+
+    /**
+     * Scans part of a file, mapping it in windows of limited size.
+     * @param channel
+     * @param from first position, has to be at the start of a line
+     * @param to position following the last scanned byte
+     * @return the partial index, holding all records starting within the range
+     * @throws IOException 
+     */
+    private static FastaIndex ScanChunk(FileChannel channel, long from, long to) throws IOException {
+
+        FastaIndex partial = new FastaIndex(to , 1024);
+
+        boolean lineStart = true;
+        boolean header = false;
+        long count = 0;
+
+        for (long window = from; window < to; window += maxChunkSize) {
+
+            int size = (int) Math.min(maxChunkSize , to - window);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY , window , size);
+
+            for (int i = 0; i < size; i++) {
+
+                byte b = buffer.get(i);
+                if (lineStart && b == FastaSplitter.HEADER) {
+                    if (partial.records > 0) {
+                        partial.setResidues(partial.records - 1 , count);
+                    } else {
+                        partial.leadingResidues = count;
+                    }
+                    partial.add(window + i , 0);
+                    header = true;
+                    count = 0;
+                } else if (b == FastaSplitter.NEWLINE) {
+                    header = false;
+                } else if (!header && !isWhitespace(b)) {
+                    count++;
+                }
+                lineStart = b == FastaSplitter.NEWLINE;
+            }
+        }
+        if (partial.records > 0) {
+            partial.setResidues(partial.records - 1 , count);
+        } else {
+            partial.leadingResidues = count;
+        }
+
+        return partial;
+    }
+
+    /**
+     * Gets the position of the first line starting at or after the given one.
+     */
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+
+        if (position <= 0) {
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long current = position - 1;
+        long length = channel.size();
+
+        while (current < length) {
+            buffer.clear();
+            int read = channel.read(buffer , current);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == FastaSplitter.NEWLINE) {
+                    return current + i + 1;
+                }
+            }
+            current += read;
+        }
+        return length;
+    }
+
+    /**
+     * Loads the cached index of the given file.
+     * @param sourceFile
+     * @return the index, or NULL if no valid cache exists
+     */
+    public static FastaIndex Load(File sourceFile) {
+
+        File cacheFile = getCacheFile(sourceFile);
+        if (!cacheFile.exists()) {
+            return null;
+        }
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile) , defaultBufferSize));
+
+            if (input.readInt() != cacheMagic || input.readInt() != cacheVersion
+                    || input.readLong() != sourceFile.length()
+                    || input.readLong() != sourceFile.lastModified()) {
+                return null;
+            }
+
+            int count = input.readInt();
+            FastaIndex index = new FastaIndex(sourceFile.length() , count);
+            for (int i = 0; i < count; i++) {
+                index.offsets[i] = input.readLong();
+            }
+            for (int i = 0; i < count; i++) {
+                index.residues[i] = input.readInt();
+            }
+            index.records = count;
+            return index;
+
+        } catch (IOException ex) {
+            return null;
+        } finally {
+            Utilities.close(input);
+        }
+    }
+
+    /**
+     * Writes the index next to the given file, so it can be reused by
+     * subsequent runs on the same file.
+     * @param sourceFile the indexed file
+     * @return the written cache file
+     * @throws IOException 
+     */
+    public File Save(File sourceFile) throws IOException {
+
+        File cacheFile = getCacheFile(sourceFile);
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile) , defaultBufferSize));
+            output.writeInt(cacheMagic);
+            output.writeInt(cacheVersion);
+            output.writeLong(sourceLength);
+            output.writeLong(sourceFile.lastModified());
+            output.writeInt(records);
+            for (int i = 0; i < records; i++) {
+                output.writeLong(offsets[i]);
+            }
+            for (int i = 0; i < records; i++) {
+                output.writeInt(residues[i]);
+            }
+            output.close();
+            output = null;
+        } finally {
+            Utilities.close(output);
+        }
+
+        // Replace previous caches only once completely written
+        if (!tempFile.renameTo(cacheFile)) {
+            cacheFile.delete();
+            if (!tempFile.renameTo(cacheFile)) {
+                tempFile.delete();
+                throw new IOException("Unable to write index cache '" + cacheFile + "'.");
+            }
+        }
+        return cacheFile;
+    }
+
+    /**
+     * Gets the file used to cache the index of the given file.
+     * @param sourceFile
+     * @return
+     */
+    public static File getCacheFile(File sourceFile) {
+        return new File(sourceFile.getPath() + cacheFileSuffix);
+    }
+
+    /**
+     * Checks if a byte is ignored when counting residues.
+     * @param b
+     * @return
+     */
+    protected static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * Appends a record.
+     * @param offset position of the record's header within the file
+     * @param count number of residues
+     */
+    protected void add(long offset, long count) {
+        if (records == offsets.length) {
+            offsets = Arrays.copyOf(offsets , records * 2);
+            residues = Arrays.copyOf(residues , records * 2);
+        }
+        offsets[records] = offset;
+        residues[records] = (int) Math.min(count , Integer.MAX_VALUE);
+        records++;
+    }
+
+    /**
+     * Sets the number of residues of a record.
+     * @param record
+     * @param count
+     */
+    protected void setResidues(int record, long count) {
+        residues[record] = (int) Math.min(count , Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the number of indexed records.
+     * @return
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    /**
+     * Gets the position of a record's header within the file.
+     * @param record
+     * @return
+     */
+    public long getOffset(int record) {
+        return offsets[record];
+    }
+
+    /**
+     * Gets the length of a record in bytes, including its header line. The
+     * length is implied by the offset of the following record.
+     * @param record
+     * @return
+     */
+    public long getLength(int record) {
+        if (record + 1 < records) {
+            return offsets[record + 1] - offsets[record];
+        }
+        return sourceLength - offsets[record];
+    }
+
+    /**
+     * Gets the number of residues of a record.
+     * @param record
+     * @return
+     */
+    public int getResidues(int record) {
+        return residues[record];
+    }
+
+    /**
+     * Gets the length of the indexed file in bytes.
+     * @return
+     */
+    public long getSourceLength() {
+        return sourceLength;
+    }
+}
@@ -0,0 +1,315 @@
+package edu.unibi.fasta;
+
+import edu.unibi.main.Utilities;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Splits FASTA files into shards. Records are recognized by their header line
+ * starting with '>'. Without an index, records are streamed straight into the
+ * target files, so memory usage only depends on the buffer size and not on 
+ * the size of the source file. With an index, byte ranges are transferred
+ * from the source to the target files without copying them through the heap.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class FastaSplitter
+{
+    public static final byte HEADER = '>';
+    public static final byte NEWLINE = '\n';
+
+    private static final int defaultBufferSize = 1 << 16;
+
+    private final int bufferSize;
+
+    private long skippedBytes = 0;
+
+    public FastaSplitter() {
+        this(defaultBufferSize);
+    }
+
+    /**
+     * Constructor.
+     * @param size size of the read and write buffers in bytes
+     */
+    public FastaSplitter(int size) {
+        bufferSize = size;
+    }
+
+    /**
+     * Splits the source file into contiguous shards of similar size. Each
+     * record is written to the shard that contains its first byte, so shards
+     * only ever change on record boundaries. Every record is written to
+     * exactly one shard, target files not receiving any record stay empty.
+     * @param sourceFile FASTA file to split
+     * @param targetFiles shard files, will be overwritten
+     * @return statistics for each target file
+     * @throws IOException
+     */
+    public ShardStatistics[] Split(File sourceFile, File[] targetFiles) throws IOException {
+
+        ShardStatistics[] statistics = new ShardStatistics[targetFiles.length];
+        for (int i = 0; i < targetFiles.length; i++) {
+            statistics[i] = new ShardStatistics(targetFiles[i]);
+        }
+
+        long total = sourceFile.length();
+        long written = 0;
+        int shard = -1;
+        skippedBytes = 0;
+
+        InputStream input = null;
+        OutputStream output = null;
+        try {
+            input = new FileInputStream(sourceFile);
+
+            byte[] buffer = new byte[bufferSize];
+            boolean lineStart = true;
+            int read;
+
+            while ((read = input.read(buffer)) != -1) {
+
+                int from = 0;
+                for (int i = 0; i < read; i++) {
+
+                    if (lineStart && buffer[i] == HEADER) {
+
+                        // Write pending bytes of the previous record
+                        written += write(output, statistics, shard, buffer, from, i - from);
+                        from = i;
+
+                        // Move on to the next shard once its share is reached
+                        if (shard < 0 || (shard < targetFiles.length - 1
+                                && written >= threshold(total, targetFiles.length, shard))) {
+                            Utilities.close(output);
+                            output = null;
+                            shard++;
+                            output = new BufferedOutputStream(new FileOutputStream(targetFiles[shard], false), bufferSize);
+                        }
+                        statistics[shard].addRecord();
+                    }
+                    lineStart = buffer[i] == NEWLINE;
+                }
+                written += write(output, statistics, shard, buffer, from, read - from);
+            }
+        } finally {
+            Utilities.close(input);
+            Utilities.close(output);
+        }
+
+        // Truncate shards that did not receive any record
+        for (int i = shard + 1; i < targetFiles.length; i++) {
+            new FileOutputStream(targetFiles[i], false).close();
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Splits the source file according to the given plan. Streams the source
+     * once more and writes each record to the shard it has been assigned to,
+     * keeping the original order of records within each shard.
+     * @param sourceFile FASTA file to split, must match the planned index
+     * @param targetFiles shard files, will be overwritten
+     * @param plan assignment of records to shards
+     * @return statistics for each target file
+     * @throws IOException 
+     */
+    public ShardStatistics[] Split(File sourceFile, File[] targetFiles, ShardPlan plan) throws IOException {
+
+        if (plan.getShards() != targetFiles.length) {
+            throw new IllegalArgumentException("Plan covers " + plan.getShards()
+                    + " shards, but " + targetFiles.length + " target files are given.");
+        }
+
+        ShardStatistics[] statistics = new ShardStatistics[targetFiles.length];
+        OutputStream[] outputs = new OutputStream[targetFiles.length];
+
+        int record = -1;
+        int shard = -1;
+        skippedBytes = 0;
+
+        InputStream input = null;
+        try {
+            for (int i = 0; i < targetFiles.length; i++) {
+                statistics[i] = new ShardStatistics(targetFiles[i]);
+                outputs[i] = new BufferedOutputStream(new FileOutputStream(targetFiles[i] , false) , bufferSize);
+            }
+            input = new FileInputStream(sourceFile);
+
+            byte[] buffer = new byte[bufferSize];
+            boolean lineStart = true;
+            int read;
+
+            while ((read = input.read(buffer)) != -1) {
+
+                int from = 0;
+                for (int i = 0; i < read; i++) {
+
+                    if (lineStart && buffer[i] == HEADER) {
+
+                        // Write pending bytes of the previous record
+                        write(shard < 0 ? null : outputs[shard] , statistics , shard , buffer , from , i - from);
+                        from = i;
+
+                        record++;
+                        if (record >= plan.getRecords()) {
+                            throw new IOException("Source file contains more records than planned.");
+                        }
+                        shard = plan.getShard(record);
+                        statistics[shard].addRecord();
+                    }
+                    lineStart = buffer[i] == NEWLINE;
+                }
+                write(shard < 0 ? null : outputs[shard] , statistics , shard , buffer , from , read - from);
+            }
+        } finally {
+            Utilities.close(input);
+            for (OutputStream output : outputs) {
+                Utilities.close(output);
+            }
+        }
+
+        if (record + 1 != plan.getRecords()) {
+            throw new IOException("Source file contains " + (record + 1)
+                    + " records, but " + plan.getRecords() + " are planned.");
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Slices the source file according to the given plan. Uses the offsets
+     * of the index to transfer the byte ranges of consecutive records of the 
+     * same shard directly between the file channels.
+     * @param sourceFile FASTA file to split, must match the index
+     * @param targetFiles shard files, will be overwritten
+     * @param index offsets of all records within the source file
+     * @param plan assignment of records to shards
+     * @return statistics for each target file
+     * @throws IOException 
+     */
+    public ShardStatistics[] Slice(File sourceFile, File[] targetFiles, FastaIndex index, ShardPlan plan) throws IOException {
+
+        if (plan.getShards() != targetFiles.length || plan.getRecords() != index.getRecords()) {
+            throw new IllegalArgumentException("Plan does not match the given index or target files.");
+        }
+        if (sourceFile.length() != index.getSourceLength()) {
+            throw new IOException("Source file has changed since it has been indexed.");
+        }
+
+        ShardStatistics[] statistics = new ShardStatistics[targetFiles.length];
+        FileOutputStream[] outputs = new FileOutputStream[targetFiles.length];
+        int records = index.getRecords();
+        skippedBytes = records > 0 ? index.getOffset(0) : index.getSourceLength();
+
+        FileInputStream input = null;
+        try {
+            for (int i = 0; i < targetFiles.length; i++) {
+                statistics[i] = new ShardStatistics(targetFiles[i]);
+                outputs[i] = new FileOutputStream(targetFiles[i] , false);
+            }
+            input = new FileInputStream(sourceFile);
+            FileChannel source = input.getChannel();
+
+            int record = 0;
+            while (record < records) {
+
+                // Extend range over consecutive records of the same shard
+                int shard = plan.getShard(record);
+                long from = index.getOffset(record);
+                do {
+                    statistics[shard].addRecord();
+                    record++;
+                } while (record < records && plan.getShard(record) == shard);
+                long to = record < records ? index.getOffset(record) : index.getSourceLength();
+
+                FileChannel target = outputs[shard].getChannel();
+                transfer(source , from , to - from , target);
+                statistics[shard].addBytes(to - from);
+
+                // Terminate the last line if the source does not
+                if (to == index.getSourceLength() && !endsWithNewline(source , to)) {
+                    target.write(ByteBuffer.wrap(new byte[]{ NEWLINE }));
+                    statistics[shard].addBytes(1);
+                }
+            }
+        } finally {
+            Utilities.close(input);
+            for (OutputStream output : outputs) {
+                Utilities.close(output);
+            }
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Transfers a range of the source channel to the end of the target channel.
+     */
+    private static void transfer(FileChannel source, long position, long count, FileChannel target) throws IOException {
+        while (count > 0) {
+            long transferred = source.transferTo(position , count , target);
+            if (transferred <= 0) {
+                throw new IOException("Source file ended unexpectedly.");
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    /**
+     * Checks if the byte preceding the given position is a line break.
+     */
+    private static boolean endsWithNewline(FileChannel channel, long position) throws IOException {
+        if (position == 0) {
+            return true;
+        }
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last , position - 1);
+        return last.get(0) == NEWLINE;
+    }
+
+    /**
+     * Gets the number of bytes preceding the first record within the last
+     * split source file. These bytes are not written to any shard.
+     * @return
+     */
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    /**
+     * Gets the number of bytes that all shards up to and including the given
+     * one are supposed to hold.
+     */
+    private static long threshold(long total, int shards, int shard) {
+        return total / shards * (shard + 1) + total % shards * (shard + 1) / shards;
+    }
+
+    /**
+     * Writes part of the buffer to the current shard. Bytes preceding the
+     * first record are skipped.
+     * @return the number of bytes written
+     */
+    private long write(OutputStream output, ShardStatistics[] statistics, int shard,
+            byte[] buffer, int offset, int length) throws IOException {
+
+        if (length == 0) {
+            return 0;
+        }
+        if (shard < 0) {
+            skippedBytes += length;
+            return 0;
+        }
+        output.write(buffer, offset, length);
+        statistics[shard].addBytes(length);
+        return length;
+    }
+}
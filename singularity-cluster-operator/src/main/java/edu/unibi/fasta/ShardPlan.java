@@ -0,0 +1,199 @@
+package edu.unibi.fasta;
+
+import java.util.Arrays;
+
+/**
+ * Assigns every record of a FastaIndex to a shard. Records are weighted by
+ * their number of residues, as the runtime of a query scales with its length.
+ * Balanced plans distribute them using the longest-processing-time-first 
+ * strategy: records are placed in descending order of weight, each onto the 
+ * currently lightest shard. The heaviest shard is at most 4/3 of the optimal
+ * makespan. Contiguous plans keep consecutive records together instead.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class ShardPlan
+{
+    private final int[] assignment;
+    private final long[] weights;
+    private final int[] records;
+
+    private ShardPlan(int recordCount, int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("A plan needs at least one shard, not " + shards + ".");
+        }
+        assignment = new int[recordCount];
+        weights = new long[shards];
+        records = new int[shards];
+    }
+
+    /**
+     * Creates a plan balancing the residues of all indexed records across the
+     * given number of shards.
+     * @param index
+     * @param shards
+     * @return the plan
+     * @throws IllegalArgumentException if there are less than one shards
+     */
+    public static ShardPlan Balance(FastaIndex index, int shards) {
+
+        int count = index.getRecords();
+        ShardPlan plan = new ShardPlan(count , shards);
+
+        // Sort records by weight, packing weight and record into a single long
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) weight(index , i) << 32) | i;
+        }
+        Arrays.sort(order);
+
+        // Min-heap of shards ordered by load, ties resolved by shard number
+        int[] heap = new int[shards];
+        for (int i = 0; i < shards; i++) {
+            heap[i] = i;
+        }
+
+        for (int i = count - 1; i >= 0; i--) {
+            int record = (int) order[i];
+            int shard = heap[0];
+
+            plan.assignment[record] = shard;
+            plan.weights[shard] += order[i] >>> 32;
+            plan.records[shard]++;
+
+            plan.siftDown(heap , 0);
+        }
+
+        return plan;
+    }
+
+    /**
+     * Creates a plan splitting the indexed file into contiguous shards of 
+     * similar size in bytes.
+     * @param index
+     * @param shards
+     * @return the plan
+     * @throws IllegalArgumentException if there are less than one shards
+     */
+    public static ShardPlan Contiguous(FastaIndex index, int shards) {
+
+        int count = index.getRecords();
+        ShardPlan plan = new ShardPlan(count , shards);
+        if (count == 0) {
+            return plan;
+        }
+
+        long first = index.getOffset(0);
+        long total = index.getSourceLength() - first;
+        int shard = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            // Move on to the next shard once its share is reached
+            long written = index.getOffset(i) - first;
+            if (i > 0 && shard < shards - 1 && written >= total / shards * (shard + 1) + total % shards * (shard + 1) / shards) {
+                shard++;
+            }
+            plan.assignment[i] = shard;
+            plan.weights[shard] += weight(index , i);
+            plan.records[shard]++;
+        }
+
+        return plan;
+    }
+
+    /**
+     * Gets the weight of a record. Records without residues still weigh
+     * something, so they are spread instead of piling up on a single shard.
+     */
+    private static int weight(FastaIndex index, int record) {
+        return Math.max(index.getResidues(record) , 1);
+    }
+
+    /**
+     * Restores the heap property after the load of the shard at the given
+     * heap position has increased.
+     */
+    private void siftDown(int[] heap, int position) {
+
+        int shard = heap[position];
+        int half = heap.length >>> 1;
+
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < heap.length && lighter(heap[right] , heap[child])) {
+                child = right;
+            }
+            if (!lighter(heap[child] , shard)) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = shard;
+    }
+
+    private boolean lighter(int a, int b) {
+        return weights[a] < weights[b] || (weights[a] == weights[b] && a < b);
+    }
+
+    /**
+     * Gets the shard a record has been assigned to.
+     * @param record
+     * @return
+     */
+    public int getShard(int record) {
+        return assignment[record];
+    }
+
+    /**
+     * Gets the number of planned records.
+     * @return
+     */
+    public int getRecords() {
+        return assignment.length;
+    }
+
+    /**
+     * Gets the number of records assigned to a shard.
+     * @param shard
+     * @return
+     */
+    public int getRecords(int shard) {
+        return records[shard];
+    }
+
+    /**
+     * Gets the number of shards.
+     * @return
+     */
+    public int getShards() {
+        return weights.length;
+    }
+
+    /**
+     * Gets the predicted weight of a shard, i.e. its number of residues.
+     * @param shard
+     * @return
+     */
+    public long getWeight(int shard) {
+        return weights[shard];
+    }
+
+    /**
+     * Gets the ratio between the heaviest shard and the mean shard weight.
+     * A perfectly balanced plan has a ratio of 1.
+     * @return
+     */
+    public double getImbalance() {
+        long max = 0, sum = 0;
+        for (long weight : weights) {
+            max = Math.max(max , weight);
+            sum += weight;
+        }
+        if (sum == 0) {
+            return 1;
+        }
+        return (double) max * weights.length / sum;
+    }
+}
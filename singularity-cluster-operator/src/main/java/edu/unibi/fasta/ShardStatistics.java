@@ -0,0 +1,67 @@
+package edu.unibi.fasta;
+
+import java.io.File;
+
+/**
+ * Stores the number of records and bytes written to a single shard.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class ShardStatistics
+{
+    private final File file;
+
+    private long records = 0;
+    private long bytes = 0;
+
+    /**
+     * Constructor.
+     * @param shard the file the statistics refer to
+     */
+    public ShardStatistics(File shard) {
+        file = shard;
+    }
+
+    /**
+     * Counts an additional record.
+     */
+    protected void addRecord() {
+        records++;
+    }
+
+    /**
+     * Counts additional bytes.
+     * @param count
+     */
+    protected void addBytes(long count) {
+        bytes += count;
+    }
+
+    /**
+     * Gets the shard file.
+     * @return
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the number of records written to the shard.
+     * @return
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Gets the number of bytes written to the shard.
+     * @return
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + ": " + records + " records, " + bytes + " bytes";
+    }
+}
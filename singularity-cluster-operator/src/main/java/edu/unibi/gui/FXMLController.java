@@ -1,12 +1,19 @@
 package edu.unibi.gui;
 
 import edu.unibi.cluster.ClusterController;
+import edu.unibi.cluster.IClusterListener;
+import edu.unibi.cluster.tasks.impl.SingularityBlastp;
 import edu.unibi.properties.PropertiesController;
 import edu.unibi.main.Logger;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
@@ -24,7 +31,7 @@ import javafx.stage.FileChooser;
  * PropertiesController and ClusterController.
  * @author Philo Reipke, University Bielefeld
  */
-public class FXMLController implements Initializable
+public class FXMLController implements Initializable, IClusterListener
 {
     private FileChooser fileChooser;
     
@@ -38,6 +45,8 @@ public class FXMLController implements Initializable
     
     // Text Log
     @FXML private TextArea textLog;
+    private LogView logView;
+    private final static int defaultLogLines = 5000;
     
     // Authentification
     @FXML private TextField authEndpoint;
@@ -69,13 +78,21 @@ public class FXMLController implements Initializable
     @Override
     public void initialize(URL location , ResourceBundle resources) {
         
-        Logger.initialize(textLog);
+        // Batches arrive at most once per frame
+        logView = new LogView(textLog , defaultLogLines);
+        Logger.initialize(( List<String> messages ) -> {
+            Platform.runLater(() -> {
+                logView.Append(messages);
+            });
+        });
         
         fileChooser = new FileChooser();
         fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
         
         // Properties
         propertiesController = new PropertiesController(new File("openstack.properties"));
+        logView.setCapacity(propertiesController.getInt("log-lines" , defaultLogLines));
+        Logger.configure(propertiesController);
         File file = propertiesController.getCustomPropertiesFile();
         if (file != null) {
             propertiesFile.setText(file.getAbsolutePath());
@@ -85,8 +102,8 @@ public class FXMLController implements Initializable
         // Cluster
         try {
             clusterController = new ClusterController(this , propertiesController);
-            clusterMasterSize.setItems(clusterController.getFlavorChoices());
-            clusterSlaveSize.setItems(clusterController.getFlavorChoices());
+            clusterMasterSize.setItems(FXCollections.observableArrayList(clusterController.getFlavorChoices()));
+            clusterSlaveSize.setItems(FXCollections.observableArrayList(clusterController.getFlavorChoices()));
             file = new File("singularity.input");
             if (file.exists()) {
                 clusterController.setInputFile(file);
@@ -148,6 +165,11 @@ public class FXMLController implements Initializable
             clusterController.setInputFile(file);
             singularityInputFile.setText(file.getPath());
             VerifyTextIsFile(singularityInputFile);
+            
+            // Queue further inputs on the running cluster
+            if (clusterController.isRunning()) {
+                SubmitJob(file);
+            }
         }
     }
     
@@ -162,13 +184,29 @@ public class FXMLController implements Initializable
         LockSettings();
         
         try {
-            clusterController.StartCluster();
+            if (clusterController.StartCluster()) {
+                File inputFile = clusterController.getInputFile();
+                if (inputFile != null) {
+                    SubmitJob(inputFile);
+                } else {
+                    Logger.log("No input file selected. Select an input file to queue a job.");
+                }
+            }
         } catch (IOException ex) {
             Logger.log("Exception starting the cluster.");
             Logger.log(ex.toString());
         }
     }
     
+    /**
+     * Queues a BLASTP job for the given input file.
+     * @param file 
+     */
+    private void SubmitJob(File file) {
+        clusterController.SubmitJob(propertiesController.get("openstack-username"),
+                                    new SingularityBlastp(propertiesController), file, null);
+    }
+    
     @FXML
     public void StopCluster() {
         
@@ -269,6 +307,7 @@ public class FXMLController implements Initializable
      */
     public void UnlockStopButton() {
         clusterStopButton.setDisable(false);
+        singularityInputFileButton.setDisable(false);
     }
     
     /**
@@ -302,6 +341,63 @@ public class FXMLController implements Initializable
     
     // </editor-fold>
     
+    // <editor-fold defaultstate="collapsed" desc=" Cluster Events " > 
+    
+    @Override
+    public void ClusterStarted() {
+        Platform.runLater(() -> {
+            UpdateTextfieldEntries(); // an attached cluster may differ in size
+            UnlockStopButton();
+        });
+    }
+    
+    @Override
+    public void ClusterStopped() {
+        Platform.runLater(() -> {
+            UnlockSettings();
+        });
+    }
+    
+    @Override
+    public void ClusterFailed() {
+        Platform.runLater(() -> {
+            UnlockStopButton();
+        });
+    }
+    
+    @Override
+    public void TasksFinished(boolean success) {
+        Logger.log(success ? "All jobs succeeded. Queue further inputs or stop the cluster when done." 
+                           : "Some jobs failed. Queue further inputs or stop the cluster when done.");
+    }
+    
+    /**
+     * Lets the user choose the file to store results in. Blocks until a file
+     * has been chosen on the JavaFX application thread.
+     * @param defaultFile file used if no file is chosen
+     * @return 
+     */
+    @Override
+    public File ChooseOutputFile(File defaultFile) {
+        
+        FutureTask<File> chooser = new FutureTask(() -> {
+            FileChooser outputChooser = new FileChooser();
+            outputChooser.setTitle("Save results");
+            return outputChooser.showSaveDialog(null);
+        });
+        Platform.runLater(chooser);
+        
+        try {
+            return chooser.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            Logger.log("Exception choosing output file.");
+            Logger.log(ex.toString());
+            return null;
+        }
+    }
+    
+    // </editor-fold>
+    
     /**
      * Verifies that the text set within a TextField represents an existing File.
      * @param textfield
@@ -0,0 +1,70 @@
+package edu.unibi.gui;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import javafx.scene.control.TextArea;
+
+/**
+ * Bounded log in a TextArea. Each batch of messages delivered by the Logger
+ * is appended in a single update, and the oldest lines beyond the capacity
+ * are removed, so the TextArea does not grow over long sessions.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class LogView
+{
+    private final TextArea textArea;
+    private final ArrayDeque<Integer> lineLengths = new ArrayDeque();
+    private int capacity;
+
+    /**
+     * Constructor.
+     * @param area text area showing the log
+     * @param maxLines number of lines shown
+     */
+    public LogView(TextArea area, int maxLines) {
+        textArea = area;
+        capacity = Math.max(maxLines , 1);
+    }
+
+    /**
+     * Sets the number of lines shown. Must be called on the JavaFX
+     * application thread.
+     * @param maxLines
+     */
+    public void setCapacity(int maxLines) {
+        capacity = Math.max(maxLines , 1);
+        Append(Collections.emptyList());
+    }
+
+    /**
+     * Appends messages and removes the oldest lines beyond the capacity.
+     * Must be called on the JavaFX application thread.
+     * @param messages
+     */
+    public void Append(List<String> messages) {
+
+        StringBuilder text = new StringBuilder();
+        for (int i = Math.max(messages.size() - capacity , 0); i < messages.size(); i++) {
+            text.append(messages.get(i)).append('\n');
+            lineLengths.add(messages.get(i).length() + 1);
+        }
+
+        int removed = 0;
+        while (lineLengths.size() > capacity) {
+            removed += lineLengths.poll();
+        }
+
+        if (removed >= textArea.getLength()) {
+            textArea.setText(text.toString());
+            textArea.positionCaret(textArea.getLength());
+        } else {
+            if (removed > 0) {
+                textArea.deleteText(0 , removed);
+            }
+            if (text.length() > 0) {
+                textArea.appendText(text.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package edu.unibi.main;
+
+import edu.unibi.cluster.ClusterController;
+import edu.unibi.cluster.IClusterListener;
+import edu.unibi.cluster.tasks.impl.SingularityBlastp;
+import edu.unibi.properties.PropertiesController;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides the headless entry point. Starts a cluster, executes the jobs of
+ * all given inputs on it through the JobQueue, stores their results and 
+ * terminates the cluster once the queue is drained, all without JavaFX. The
+ * exit status reports the outcome, so runs can be scripted and scheduled.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class Headless implements IClusterListener
+{
+    public static final int EXIT_SUCCESS = 0;
+    public static final int EXIT_TASKS_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int EXIT_CLUSTER_FAILED = 3;
+    public static final int EXIT_TIMEOUT = 4;
+
+    private static final String usage =
+              "Usage: java -cp <jar> edu.unibi.main.Headless -i <input> -o <output> [-i <input> -o <output> ...] [options]\n"
+            + "  -p, --properties <file>     properties file (default: openstack.properties)\n"
+            + "  -i, --input <file>          input file of a job (at least one required)\n"
+            + "  -o, --output <file>         file the results of the preceding input are written to\n"
+            + "  -u, --owner <name>          owner of the following jobs, sharing the cluster fairly\n"
+            + "  -n, --slaves <count>        number of slaves\n"
+            + "  -m, --master-type <flavor>  master instance flavor\n"
+            + "  -s, --slave-type <flavor>   slave instance flavor\n"
+            + "  -t, --timeout <minutes>     aborts and terminates the cluster after the given time\n"
+            + "  -k, --keep-cluster          leaves the cluster running for later clients to attach to\n"
+            + "  -D<key>=<value>             sets any property\n"
+            + "Exit status: 0 all jobs succeeded, 1 any job failed, 2 invalid arguments,\n"
+            + "             3 cluster could not be started or terminated, 4 timed out";
+
+    private final BlockingQueue<Event> events = new LinkedBlockingQueue();
+
+    private enum Event { STARTED, STOPPED, FAILED, TASKS_SUCCEEDED, TASKS_FAILED }
+
+    /**
+     * Runs all tasks headless and exits with the outcome's status.
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        System.exit(Run(args));
+    }
+
+    /**
+     * Parses the arguments, then starts the cluster, executes all tasks and
+     * terminates the cluster.
+     * @param args the command line arguments
+     * @return the exit status
+     */
+    public static int Run(String[] args) {
+
+        File propertiesFile = new File("openstack.properties");
+        List<File> inputFiles = new ArrayList();
+        List<File> outputFiles = new ArrayList();
+        List<String> owners = new ArrayList();
+        String owner = null;
+        long timeoutMinutes = 0;
+        boolean keepCluster = false;
+        PropertiesController properties = null;
+        Properties overrides = new Properties();
+
+        // Parse arguments
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.startsWith("-D") && arg.contains("=")) {
+                    overrides.put(arg.substring(2 , arg.indexOf('=')) , arg.substring(arg.indexOf('=') + 1));
+                    continue;
+                }
+                if ("-h".equals(arg) || "--help".equals(arg)) {
+                    System.out.println(usage);
+                    return EXIT_USAGE;
+                }
+                if ("-k".equals(arg) || "--keep-cluster".equals(arg)) {
+                    keepCluster = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of '" + arg + "'.");
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "-p": case "--properties":  propertiesFile = new File(value); break;
+                    case "-i": case "--input":       inputFiles.add(new File(value)); owners.add(owner); break;
+                    case "-o": case "--output":      outputFiles.add(new File(value)); break;
+                    case "-u": case "--owner":       owner = value; break;
+                    case "-n": case "--slaves":      overrides.put("slave-instance-count" , String.valueOf(Integer.parseInt(value))); break;
+                    case "-m": case "--master-type": overrides.put("master-instance-type" , value); break;
+                    case "-s": case "--slave-type":  overrides.put("slave-instance-type" , value); break;
+                    case "-t": case "--timeout":     timeoutMinutes = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Unknown argument '" + arg + "'.");
+                }
+            }
+            if (inputFiles.isEmpty() || inputFiles.size() != outputFiles.size()) {
+                throw new IllegalArgumentException("An output file is required for each input file.");
+            }
+            for (File inputFile : inputFiles) {
+                if (!inputFile.isFile()) {
+                    throw new IllegalArgumentException("Input file '" + inputFile + "' does not exist.");
+                }
+            }
+            if (!propertiesFile.isFile()) {
+                throw new IllegalArgumentException("Properties file '" + propertiesFile + "' does not exist.");
+            }
+
+            PropertiesController controller = new PropertiesController(propertiesFile);
+            overrides.forEach(( Object key , Object value ) -> controller.put(key , value));
+            properties = controller;
+            Logger.configure(properties);
+
+            if (properties.get("openstack-username") == null) {
+                throw new IllegalArgumentException("No user specified in properties.");
+            }
+            if (properties.get("identity-file") == null || !new File(properties.get("identity-file")).isFile()) {
+                throw new IllegalArgumentException("Identity file '" + properties.get("identity-file") + "' does not exist.");
+            }
+            Integer.parseInt(properties.get("slave-instance-count"));
+
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid number: " + ex.getMessage());
+            System.err.println(usage);
+            return EXIT_USAGE;
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(usage);
+            return EXIT_USAGE;
+        }
+
+        Headless headless = new Headless();
+        try {
+            ClusterController cluster = new ClusterController(headless , properties);
+            for (int i = 0; i < inputFiles.size(); i++) {
+                String jobOwner = owners.get(i) != null ? owners.get(i) : properties.get("openstack-username");
+                cluster.SubmitJob(jobOwner , new SingularityBlastp(properties) , inputFiles.get(i) , outputFiles.get(i));
+            }
+            return headless.Execute(cluster , timeoutMinutes , keepCluster);
+        } catch (IOException ex) {
+            Logger.log("Exception initializing the cluster controller.");
+            Logger.log(ex.toString());
+            return EXIT_CLUSTER_FAILED;
+        } catch (InterruptedException ex) {
+            Logger.log("Interrupted.");
+            return EXIT_TIMEOUT;
+        }
+    }
+
+    /**
+     * Starts or attaches to the cluster, waits for all tasks and terminates
+     * the cluster. A cluster still running when the JVM is shut down, e.g. on
+     * Ctrl+C, is terminated forcibly, unless it is to be kept.
+     * @param cluster
+     * @param timeoutMinutes maximum runtime, 0 to wait forever
+     * @param keepCluster TRUE to leave the cluster running
+     * @return the exit status
+     */
+    private int Execute(ClusterController cluster, long timeoutMinutes, boolean keepCluster) throws IOException, InterruptedException {
+
+        long deadline = timeoutMinutes > 0 ? System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(timeoutMinutes) : Long.MAX_VALUE;
+        boolean[] terminated = new boolean[]{ keepCluster };
+
+        Thread shutdownHook = new Thread(() -> {
+            if (!terminated[0] && cluster.getClusterId() != null) {
+                Logger.log("Shutting down. Forcing cluster termination.");
+                cluster.exit();
+            }
+        } , "headless-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        Logger.log("Starting cluster...");
+        if (!cluster.StartCluster()) {
+            return EXIT_CLUSTER_FAILED;
+        }
+
+        // Wait for the queue to drain, or the cluster failing to start
+        int status;
+        Event event;
+        do {
+            event = Await(deadline);
+        } while (event == Event.STARTED);
+
+        if (event == null && keepCluster) {
+            Logger.log("Timed out. Leaving cluster '" + cluster.getClusterId() + "' running.");
+            return EXIT_TIMEOUT;
+        } else if (event == null) {
+            Logger.log("Timed out. Terminating the cluster.");
+            cluster.StopCluster(true);
+            terminated[0] = true;
+            return EXIT_TIMEOUT;
+        }
+        switch (event) {
+            case TASKS_SUCCEEDED: status = EXIT_SUCCESS; break;
+            case TASKS_FAILED:    status = EXIT_TASKS_FAILED; break;
+            default:              status = EXIT_CLUSTER_FAILED; break;
+        }
+
+        // Terminate the cluster and wait for it
+        if (keepCluster && cluster.isRunning()) {
+            Logger.log("Leaving cluster '" + cluster.getClusterId() + "' running.");
+        } else if (cluster.getClusterId() != null) {
+            Logger.log("Terminating cluster...");
+            event = cluster.StopCluster(false) ? Await(deadline) : Event.FAILED;
+            if (event == null) {
+                Logger.log("Timed out terminating the cluster. Forcing termination.");
+                cluster.StopCluster(true);
+                status = EXIT_TIMEOUT;
+            } else if (event != Event.STOPPED) {
+                Logger.log("Cluster '" + cluster.getClusterId() + "' may still be running!");
+                status = EXIT_CLUSTER_FAILED;
+            }
+        }
+        terminated[0] = true;
+
+        Logger.log("Finished with exit status " + status + ".");
+        return status;
+    }
+
+    /**
+     * Waits for the next cluster event.
+     * @return the event, or NULL once the deadline has passed
+     */
+    private Event Await(long deadline) throws InterruptedException {
+        if (deadline == Long.MAX_VALUE) {
+            return events.take();
+        }
+        return events.poll(Math.max(deadline - System.currentTimeMillis() , 0) , TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void ClusterStarted() {
+        events.add(Event.STARTED);
+    }
+
+    @Override
+    public void ClusterStopped() {
+        events.add(Event.STOPPED);
+    }
+
+    @Override
+    public void ClusterFailed() {
+        events.add(Event.FAILED);
+    }
+
+    @Override
+    public void TasksFinished(boolean success) {
+        events.add(success ? Event.TASKS_SUCCEEDED : Event.TASKS_FAILED);
+    }
+
+    /**
+     * Stores results in the default file. Jobs submitted from the command
+     * line always name their output file.
+     * @param defaultFile
+     * @return
+     */
+    @Override
+    public File ChooseOutputFile(File defaultFile) {
+        return defaultFile;
+    }
+}
@@ -0,0 +1,131 @@
+package edu.unibi.main;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Log file rotated by size. Once the file would exceed its size, it is
+ * renamed to <file>.1, shifting older files up to <file>.<count - 1>, and a
+ * new file is started. Lines are prefixed with the time they have been
+ * logged at. Not thread-safe, only the Logger's writer thread uses it.
+ * @author Philo Reipke, University Bielefeld
+ */
+final class LogFile
+{
+    private final File file;
+    private final long maxBytes;
+    private final int count;
+    private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS ");
+
+    private Writer writer = null;
+    private long size = 0;
+
+    /**
+     * Constructor. The file is opened for appending once the first line is
+     * written.
+     * @param logFile
+     * @param maxSize size in bytes the file is rotated at
+     * @param fileCount number of files kept, including the current file
+     */
+    LogFile(File logFile, long maxSize, int fileCount) {
+        file = logFile.getAbsoluteFile();
+        maxBytes = Math.max(maxSize , 1);
+        count = Math.max(fileCount , 1);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Writes a line, rotating the file first if the line would exceed it.
+     * @param time time the message has been logged at
+     * @param message
+     * @throws IOException
+     */
+    void Write(long time, String message) throws IOException {
+        String line = format.format(new Date(time)) + message + System.lineSeparator();
+        long bytes = getEncodedLength(line);
+        if (writer == null) {
+            Open();
+        }
+        if (size > 0 && size + bytes > maxBytes) {
+            Rotate();
+        }
+        writer.write(line);
+        size += bytes;
+    }
+
+    /**
+     * Gets the number of bytes a text takes encoded as UTF-8, without
+     * encoding it. Unpaired surrogates are encoded as '?'.
+     * @param text
+     * @return
+     */
+    static long getEncodedLength(CharSequence text) {
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (!Character.isSurrogate(c)) {
+                bytes += 3;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes++;
+            }
+        }
+        return bytes;
+    }
+
+    void Flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    void close() {
+        Utilities.close(writer);
+        writer = null;
+    }
+
+    private void Open() throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory '" + directory + "'.");
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file , true) , StandardCharsets.UTF_8) , 64 * 1024);
+        size = file.length();
+    }
+
+    /**
+     * Shifts the older files by one, dropping the oldest, and starts a new
+     * file.
+     */
+    private void Rotate() throws IOException {
+        close();
+        if (count > 1) {
+            new File(file.getPath() + "." + (count - 1)).delete();
+            for (int i = count - 2; i >= 0; i--) {
+                File older = i == 0 ? file : new File(file.getPath() + "." + i);
+                if (older.exists() && !older.renameTo(new File(file.getPath() + "." + (i + 1)))) {
+                    throw new IOException("Could not rotate '" + older + "'.");
+                }
+            }
+        } else {
+            file.delete();
+        }
+        Open();
+    }
+}
@@ -1,37 +1,233 @@
 package edu.unibi.main;
 
-import javafx.scene.control.TextArea;
+import edu.unibi.properties.PropertiesController;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 /**
- * Simple logging class.
+ * Simple logging class. Messages are printed to the command line, written to
+ * an optional rotating log file and passed to an optional sink, e.g. the
+ * GUI's text log. Does not depend on JavaFX, so it can be used from any
+ * thread and in headless mode.
+ *
+ * Logging is asynchronous: messages are put into a lock-free ring buffer
+ * and written by a single writer thread, so threads logging concurrently do
+ * not contend and never wait for the console, the file or the GUI, unless
+ * the buffer is full. The sink receives the messages in batches, at most
+ * once per frame. Messages the sink logs itself are printed directly while
+ * the buffer is full, as only the writer thread can drain it. Remaining
+ * messages are written when the JVM shuts down.
  * @author Philo Reipke, University Bielefeld
  */
 public class Logger
 {
-    private static boolean isInitialized = false;
-    private static TextArea textLog;
-    
+    private static final int capacity = 8192;
+    private static final int backlog = 10000;
+    private static final long frameNanos = 1000000000L / 60;
+    private static final long idleNanos = 100000000L;
+    private static final long closeTimeout = 2000;
+    private static final String defaultFile = "singularity-cluster-operator.log";
+
+    static final RingBuffer buffer = new RingBuffer(capacity);
+    private static final Thread writer;
+
+    private static volatile Consumer<List<String>> sink = null;
+    private static volatile LogFile nextFile = null;
+    private static volatile boolean waiting = false;
+    private static volatile boolean closed = false;
+    private static volatile long written = 0;
+
+    // Owned by the writer thread
+    private static final StringBuilder console = new StringBuilder();
+    private static final ArrayDeque<String> pending = new ArrayDeque();
+    private static LogFile file = null;
+
+    static {
+        writer = new Thread(Logger::Write , "logger");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Logger::close , "logger-shutdown"));
+    }
+
+    /**
+     * Initializes the Logger by setting the sink receiving all messages. The
+     * sink is called on the Logger's writer thread with the messages logged
+     * since its last call, at most once per frame, and is responsible for
+     * passing them to the GUI thread.
+     * @param messageSink
+     */
+    public static void initialize(Consumer<List<String>> messageSink) {
+        if (messageSink != null) {
+            sink = messageSink;
+        }
+    }
+
     /**
-     * Initializes the Logger by setting the target TextArea.
-     * @param textArea 
+     * Configures the log file using the properties 'log-file' (default
+     * "singularity-cluster-operator.log", "no" disables the file),
+     * 'log-file-size-mb' (default 10) and 'log-file-count' (default 5).
+     * @param properties
      */
-    public static void initialize(TextArea textArea) {
-        if (textArea != null) {
-            textLog = textArea;
-            isInitialized = true;
+    public static void configure(PropertiesController properties) {
+
+        String name = properties.get("log-file");
+        if ("no".equals(name)) {
+            nextFile = null;
+        } else {
+            File logFile = new File(name != null && !name.trim().isEmpty() ? name.trim() : defaultFile);
+            LogFile current = nextFile;
+            if (current != null && current.getFile().equals(logFile.getAbsoluteFile())) {
+                return;
+            }
+            nextFile = new LogFile(logFile , Math.max(properties.getLong("log-file-size-mb" , 10) , 1) * 1024 * 1024 ,
+                                   properties.getInt("log-file-count" , 5));
         }
+        LockSupport.unpark(writer);
     }
-    
+
     /**
-     * Prints a message to the text log and the command line.
-     * @param msg 
+     * Prints a message to the sink, the log file and the command line.
+     * @param msg
      */
-    public static synchronized void log(String msg) {
+    public static void log(String msg) {
         if (msg != null) {
-            if (isInitialized) {
-                textLog.appendText(msg + "\n");
-            } 
-            System.out.println(msg);
+            if (closed) {
+                System.out.println(msg);
+                return;
+            }
+            if (Thread.currentThread() == writer) {
+                if (!buffer.Offer(msg , System.currentTimeMillis())) {
+                    System.out.println(msg);
+                }
+                return;
+            }
+            buffer.Put(msg , System.currentTimeMillis());
+            if (waiting) {
+                LockSupport.unpark(writer);
+            }
         }
     }
+
+    /**
+     * Waits until all messages logged so far have been printed and written
+     * to the log file, e.g. before printing to the command line directly.
+     * Returns immediately if called by the sink.
+     */
+    public static void flush() {
+        if (Thread.currentThread() == writer) {
+            return;
+        }
+        long target = buffer.getClaimed();
+        LockSupport.unpark(writer);
+        while (written < target && writer.isAlive()) {
+            LockSupport.parkNanos(1000000);
+        }
+    }
+
+    /**
+     * Writes the remaining messages and stops the writer thread. Messages
+     * logged afterwards are printed to the command line directly.
+     */
+    private static void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(closeTimeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drains the buffer until the Logger is closed. Prints and writes each
+     * batch of messages at once and passes them to the sink once per frame.
+     */
+    private static void Write() {
+
+        long lastFrame = 0;
+        while (true) {
+            if (nextFile != file) {
+                if (file != null) {
+                    file.close();
+                }
+                file = nextFile;
+            }
+
+            console.setLength(0);
+            int count = buffer.Drain(Logger::Read , capacity);
+            if (count > 0) {
+                System.out.print(console);
+                if (file != null) {
+                    try {
+                        file.Flush();
+                    } catch (IOException ex) {
+                        DisableFile(ex);
+                    }
+                }
+                written += count;
+            }
+
+            long now = System.nanoTime();
+            Consumer<List<String>> messageSink = sink;
+            if (messageSink == null) {
+                pending.clear();
+            } else if (!pending.isEmpty() && now - lastFrame >= frameNanos) {
+                try {
+                    messageSink.accept(new ArrayList(pending));
+                } catch (RuntimeException ex) {
+                    System.err.println("Logger: Exception passing messages to the sink: " + ex);
+                }
+                pending.clear();
+                lastFrame = now;
+            }
+
+            if (count == 0) {
+                if (closed) {
+                    if (file != null) {
+                        file.close();
+                    }
+                    return;
+                }
+                waiting = true;
+                if (!buffer.isReadable()) {
+                    LockSupport.parkNanos(pending.isEmpty() ? idleNanos : Math.max(frameNanos - (now - lastFrame) , 1));
+                }
+                waiting = false;
+            }
+        }
+    }
+
+    /**
+     * Adds a message to the current batch.
+     */
+    private static void Read(String message, long time) {
+        console.append(message).append(System.lineSeparator());
+        if (file != null) {
+            try {
+                file.Write(time , message);
+            } catch (IOException ex) {
+                DisableFile(ex);
+            }
+        }
+        pending.add(message);
+        if (pending.size() > backlog) {
+            pending.poll();
+        }
+    }
+
+    /**
+     * Stops writing to a log file that cannot be written.
+     */
+    private static void DisableFile(IOException ex) {
+        System.err.println("Logger: Exception writing log file '" + file.getFile() + "'. Disabling the log file.");
+        System.err.println(ex.toString());
+        file.close();
+        file = null;
+        nextFile = null;
+    }
 }
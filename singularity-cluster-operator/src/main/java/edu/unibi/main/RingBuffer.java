@@ -0,0 +1,132 @@
+package edu.unibi.main;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free queue of log messages, written by any number of threads
+ * and read by a single thread. Every slot carries a sequence number telling
+ * whether it is free to be written or ready to be read, so neither side
+ * takes a lock and messages are read in the order their slots have been
+ * claimed. Writers wait while the buffer is full, unless they offer their
+ * message instead.
+ * @author Philo Reipke, University Bielefeld
+ */
+final class RingBuffer
+{
+    private final int mask;
+    private final String[] messages;
+    private final long[] times;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private long tail = 0;
+
+    /**
+     * Reads messages.
+     */
+    interface Reader
+    {
+        void Read(String message, long time);
+    }
+
+    /**
+     * Constructor.
+     * @param capacity number of messages, rounded up to a power of two
+     */
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity , 2) - 1) << 1;
+        mask = size - 1;
+        messages = new String[size];
+        times = new long[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i , i);
+        }
+    }
+
+    /**
+     * Adds a message, waiting for the reader while the buffer is full.
+     * @param message
+     * @param time time the message has been logged at
+     */
+    void Put(String message, long time) {
+        long position = head.getAndIncrement();
+        int slot = (int) position & mask;
+        for (int spins = 0; sequences.get(slot) != position; spins++) {
+            if (spins < 100) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(100000);
+            }
+        }
+        messages[slot] = message;
+        times[slot] = time;
+        sequences.set(slot , position + 1);
+    }
+
+    /**
+     * Adds a message unless the buffer is full. Never waits, so the reading
+     * thread itself can add messages.
+     * @param message
+     * @param time time the message has been logged at
+     * @return FALSE if the buffer is full
+     */
+    boolean Offer(String message, long time) {
+        while (true) {
+            long position = head.get();
+            int slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence < position) {
+                return false;
+            }
+            if (sequence == position && head.compareAndSet(position , position + 1)) {
+                messages[slot] = message;
+                times[slot] = time;
+                sequences.set(slot , position + 1);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reads the messages available, in order. Must only be called by the
+     * reading thread.
+     * @param reader
+     * @param max maximum number of messages read
+     * @return number of messages read
+     */
+    int Drain(Reader reader, int max) {
+        int count = 0;
+        while (count < max) {
+            int slot = (int) tail & mask;
+            if (sequences.get(slot) != tail + 1) {
+                break;
+            }
+            String message = messages[slot];
+            long time = times[slot];
+            messages[slot] = null;
+            sequences.lazySet(slot , tail + mask + 1);
+            tail++;
+            count++;
+            reader.Read(message , time);
+        }
+        return count;
+    }
+
+    /**
+     * Checks if the next message can be read.
+     * @return
+     */
+    boolean isReadable() {
+        return sequences.get((int) tail & mask) == tail + 1;
+    }
+
+    /**
+     * Gets the number of messages added or being added so far.
+     * @return
+     */
+    long getClaimed() {
+        return head.get();
+    }
+}
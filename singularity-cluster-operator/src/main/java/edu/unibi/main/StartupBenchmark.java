@@ -0,0 +1,131 @@
+package edu.unibi.main;
+
+import edu.unibi.cluster.BiBiGridProcess;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the client's startup costs: extracting BiBiGrid from the
+ * resources, either to a new temporary file or through the checksum keyed
+ * cache, and running BiBiGrid, either in a forked JVM or in-process. Each
+ * step is repeated and its minimum and median time are printed.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class StartupBenchmark
+{
+    private static final String usage =
+              "Usage: java -cp <jar> edu.unibi.main.StartupBenchmark [options]\n"
+            + "  -j, --jar <file>        BiBiGrid jar (default: extracted from the resources)\n"
+            + "  -r, --repetitions <n>   repetitions of each step (default 5)\n"
+            + "  -a, --args <args>       arguments BiBiGrid is run with (default: -h)\n"
+            + "In-process runs require a JVM allowing a security manager to be set,\n"
+            + "e.g. -Djava.security.manager=allow on Java 18 and later.";
+
+    private static final String resourcePath = "bibigrid/BiBiGrid-1.0.jar";
+
+    /**
+     * Runs the benchmark.
+     * @param args the command line arguments
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+
+        File jar = null;
+        int repetitions = 5;
+        String[] bibigridArgs = new String[]{ "-h" };
+
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                System.err.println(usage);
+                System.exit(2);
+            }
+            switch (args[i]) {
+                case "-j": case "--jar":         jar = new File(args[++i]); break;
+                case "-r": case "--repetitions": repetitions = Integer.parseInt(args[++i]); break;
+                case "-a": case "--args":        bibigridArgs = args[++i].trim().split("\\s+"); break;
+                default:
+                    System.err.println(usage);
+                    System.exit(2);
+            }
+        }
+
+        // Extraction
+        if (Utilities.class.getClassLoader().getResource(resourcePath) != null) {
+            File cacheDirectory = Files.createTempDirectory("singularity-benchmark").toFile();
+            Measure("extract to temporary file" , repetitions , () -> {
+                Utilities.CreateTempFile("BiBiGrid-1.0.jar" , resourcePath).delete();
+            });
+            Measure("extract to cache (cold)" , 1 , () -> {
+                Utilities.CacheResource("BiBiGrid-1.0.jar" , resourcePath , cacheDirectory);
+            });
+            Measure("extract to cache (warm)" , repetitions , () -> {
+                Utilities.CacheResource("BiBiGrid-1.0.jar" , resourcePath , cacheDirectory);
+            });
+            if (jar == null) {
+                jar = Utilities.CacheResource("BiBiGrid-1.0.jar" , resourcePath , cacheDirectory);
+            }
+        } else {
+            System.out.println("Resource '" + resourcePath + "' not available. Skipping extraction.");
+        }
+        if (jar == null || !jar.isFile()) {
+            System.err.println("No BiBiGrid jar available.");
+            System.err.println(usage);
+            System.exit(2);
+        }
+
+        // Invocation
+        File bibigrid = jar;
+        String[] invocation = bibigridArgs;
+        Measure("run BiBiGrid " + String.join(" " , invocation) + " (forked JVM)" , repetitions , () -> {
+            List<String> command = new ArrayList(Arrays.asList("java" , "-jar" , bibigrid.getAbsolutePath()));
+            command.addAll(Arrays.asList(invocation));
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            Drain(process);
+        });
+        if (BiBiGridProcess.Install()) {
+            Measure("run BiBiGrid " + String.join(" " , invocation) + " (in-process)" , repetitions , () -> {
+                Drain(new BiBiGridProcess(bibigrid , invocation));
+            });
+        } else {
+            System.out.println("In-process runs are not supported on this JVM. Skipping.");
+        }
+    }
+
+    /**
+     * Reads all output of a process and waits for it to exit.
+     */
+    private static void Drain(Process process) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        while (reader.readLine() != null) {
+        }
+        reader.close();
+        process.waitFor();
+    }
+
+    /**
+     * Runs a step repeatedly and prints its minimum and median time.
+     */
+    private static void Measure(String step, int repetitions, Step body) throws Exception {
+
+        long[] times = new long[Math.max(repetitions , 1)];
+        for (int i = 0; i < times.length; i++) {
+            long start = System.nanoTime();
+            body.Run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        System.out.println(String.format("%-50s min %8.1f ms  median %8.1f ms  (n=%d)" , step ,
+                                         times[0] / 1e6 , times[times.length / 2] / 1e6 , times.length));
+    }
+
+    private interface Step
+    {
+        void Run() throws Exception;
+    }
+}
@@ -6,6 +6,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Provides unspecific functionality used within the application.
@@ -15,6 +20,7 @@ public class Utilities
 {
     //public static Path tempDirectoryPath = null;
     private final static String filePrefix = "singularity-";
+    private final static int bufferSize = 64 * 1024;
     
     /**
      * Creates a temporary file from an optionally given resource. 
@@ -53,7 +59,7 @@ public class Utilities
             // Read resource and write to temp file
             output = new FileOutputStream(tempFile);
             if (resourcePath != null) {
-                input = Main.class.getClassLoader().getResourceAsStream(resourcePath);
+                input = Utilities.class.getClassLoader().getResourceAsStream(resourcePath);
 
                 byte[] buffer = new byte[1024];
                 int read;
@@ -75,6 +81,81 @@ public class Utilities
         return tempFile;
     }
     
+    /**
+     * Extracts a resource into a cache directory, unless it has been extracted
+     * before. The file name contains the resource's checksum, so a changed
+     * resource is extracted again instead of reusing an outdated file. The
+     * file is moved into place once complete, so clients starting at the
+     * same time never use a partial file.
+     * @param fileName name of the file, the checksum is inserted before its
+     * extension
+     * @param resourcePath path within the internal resources
+     * @param directory cache directory, created if missing
+     * @return the cached file
+     * @throws java.io.IOException 
+     */
+    public static File CacheResource(String fileName, String resourcePath, File directory) throws IOException {
+        
+        // Checksum the resource
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        InputStream input = Utilities.class.getClassLoader().getResourceAsStream(resourcePath);
+        if (input == null) {
+            return CreateTempFile(fileName , resourcePath);
+        }
+        byte[] buffer = new byte[bufferSize];
+        try {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer , 0 , read);
+            }
+        } finally {
+            close(input);
+        }
+        StringBuilder checksum = new StringBuilder();
+        for (byte b : digest.digest()) {
+            checksum.append(String.format("%02x" , b));
+        }
+        
+        int extension = fileName.lastIndexOf('.') > 0 ? fileName.lastIndexOf('.') : fileName.length();
+        File cachedFile = new File(directory , fileName.substring(0 , extension) + "-" + checksum.substring(0 , 16)
+                                              + fileName.substring(extension));
+        if (cachedFile.isFile()) {
+            return cachedFile;
+        }
+        
+        // Extract to a temporary file within the directory and move it into place
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory '" + directory + "'.");
+        }
+        File tempFile = File.createTempFile(filePrefix + fileName , null , directory);
+        OutputStream output = null;
+        try {
+            input = Utilities.class.getClassLoader().getResourceAsStream(resourcePath);
+            output = new FileOutputStream(tempFile);
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer , 0 , read);
+            }
+        } finally {
+            close(input);
+            close(output);
+        }
+        try {
+            Files.move(tempFile.toPath() , cachedFile.toPath() , StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tempFile.toPath() , cachedFile.toPath() , StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tempFile.delete();
+        }
+        Logger.log("Extracted '" + fileName + "' to '" + cachedFile + "'.");
+        return cachedFile;
+    }
+    
     /**
      * Parses part from a given String.
      * Removes all characters from before the last index of the starting 
@@ -98,6 +179,17 @@ public class Utilities
         return line.substring(s, e);
     }
 
+    /**
+     * Formats a duration as hours, minutes and seconds. Hours are not
+     * limited to a day and no time zone is involved.
+     * @param millis duration in milliseconds
+     * @return the duration, e.g. "26:03:09"
+     */
+    public static String FormatDuration(long millis) {
+        long seconds = Math.max(millis , 0) / 1000;
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
     /**
      * Closes a given Closable.
      * @param stream 
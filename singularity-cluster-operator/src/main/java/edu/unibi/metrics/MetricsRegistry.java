@@ -0,0 +1,324 @@
+package edu.unibi.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * Collects the metrics of a single job: durations, bytes and throughput of
+ * each phase, per shard where applicable, and event counters such as
+ * attempts and retries. Exported as a JSON summary and in the Prometheus
+ * text format, so runs can be scraped and compared.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class MetricsRegistry
+{
+    public static final String MAP = "map";
+    public static final String UPLOAD = "upload";
+    public static final String SUBMIT = "submit";
+    public static final String QUEUE_WAIT = "queue_wait";
+    public static final String RUN = "run";
+    public static final String DOWNLOAD = "download";
+    public static final String REDUCE = "reduce";
+
+    private static final JsonFactory factory = new JsonFactory();
+    private static final String prefix = "singularity_job_";
+
+    private final String job;
+    private final long started = System.currentTimeMillis();
+    private final Map<String , PhaseMetric> phases = new LinkedHashMap();
+    private final Map<String , Long> counters = new LinkedHashMap();
+    private long finished = 0;
+
+    /**
+     * Constructor. The job's runtime starts now.
+     * @param jobName name of the job, e.g. its Singularity request ID
+     */
+    public MetricsRegistry(String jobName) {
+        job = jobName;
+        for (String phase : new String[]{ MAP , UPLOAD , SUBMIT , QUEUE_WAIT , RUN , DOWNLOAD , REDUCE }) {
+            phases.put(phase , new PhaseMetric(phase));
+        }
+    }
+
+    /**
+     * Records a duration of a phase, ending now.
+     * @param phase
+     * @param startNanos start, as of System.nanoTime()
+     * @param bytes bytes processed, 0 if not applicable
+     */
+    public void Record(String phase, long startNanos, long bytes) {
+        getPhase(phase).Record(startNanos , System.nanoTime() , bytes , -1);
+    }
+
+    /**
+     * Records a duration of a phase for a shard.
+     * @param phase
+     * @param shard number of the shard, starting at 0
+     * @param startNanos start, as of System.nanoTime()
+     * @param endNanos end, as of System.nanoTime()
+     * @param bytes bytes processed, 0 if not applicable
+     */
+    public void RecordShard(String phase, int shard, long startNanos, long endNanos, long bytes) {
+        getPhase(phase).Record(startNanos , endNanos , bytes , shard);
+    }
+
+    /**
+     * Adds to an event counter.
+     * @param counter name of the counter, e.g. "retries"
+     * @param delta
+     */
+    public synchronized void Increment(String counter, long delta) {
+        counters.merge(counter , delta , Long::sum);
+    }
+
+    /**
+     * Ends the job's runtime.
+     */
+    public synchronized void Finish() {
+        finished = System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the metric of a phase, created if missing.
+     * @param phase
+     * @return
+     */
+    public synchronized PhaseMetric getPhase(String phase) {
+        return phases.computeIfAbsent(phase , PhaseMetric::new);
+    }
+
+    /**
+     * Gets the job's runtime, up to now if not finished.
+     * @return runtime in milliseconds
+     */
+    public synchronized long getRuntime() {
+        return (finished > 0 ? finished : System.currentTimeMillis()) - started;
+    }
+
+    /**
+     * Gets all phases with at least one recording.
+     */
+    private synchronized List<PhaseMetric> getRecordedPhases() {
+        List<PhaseMetric> recorded = new ArrayList();
+        for (PhaseMetric metric : phases.values()) {
+            if (metric.getCount() > 0) {
+                recorded.add(metric);
+            }
+        }
+        return recorded;
+    }
+
+    private synchronized Map<String , Long> getCounters() {
+        return new LinkedHashMap(counters);
+    }
+
+    /**
+     * Writes the summary as JSON. The file is replaced once written, so
+     * readers never see it partially written.
+     * @param file
+     * @throws IOException
+     */
+    public void WriteJson(File file) throws IOException {
+
+        File temp = getTempFile(file);
+        try (OutputStream output = new FileOutputStream(temp)) {
+            JsonGenerator generator = factory.createJsonGenerator(output , JsonEncoding.UTF8);
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeStringField("job" , job);
+            generator.writeNumberField("started" , started);
+            generator.writeNumberField("durationSeconds" , getRuntime() / 1000.0);
+
+            generator.writeArrayFieldStart("phases");
+            for (PhaseMetric metric : getRecordedPhases()) {
+                generator.writeStartObject();
+                generator.writeStringField("phase" , metric.getPhase());
+                generator.writeNumberField("count" , metric.getCount());
+                generator.writeNumberField("totalSeconds" , metric.getTotalSeconds());
+                generator.writeNumberField("maxSeconds" , metric.getMaxSeconds());
+                generator.writeNumberField("wallSeconds" , metric.getWallSeconds());
+                generator.writeNumberField("bytes" , metric.getBytes());
+                generator.writeNumberField("throughputBytesPerSecond" , metric.getThroughput());
+
+                generator.writeObjectFieldStart("histogram");
+                long cumulated = 0;
+                long[] bucketCounts = metric.getBucketCounts();
+                for (int i = 0; i < bucketCounts.length; i++) {
+                    cumulated += bucketCounts[i];
+                    generator.writeNumberField(FormatBound(PhaseMetric.buckets[i]) , cumulated);
+                }
+                generator.writeNumberField("+Inf" , metric.getCount());
+                generator.writeEndObject();
+
+                generator.writeArrayFieldStart("shards");
+                for (Map.Entry<Integer , long[]> shard : metric.getShards().entrySet()) {
+                    generator.writeStartObject();
+                    generator.writeNumberField("shard" , shard.getKey() + 1);
+                    generator.writeNumberField("count" , shard.getValue()[0]);
+                    generator.writeNumberField("seconds" , shard.getValue()[1] / 1e9);
+                    generator.writeNumberField("bytes" , shard.getValue()[2]);
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            generator.writeObjectFieldStart("counters");
+            for (Map.Entry<String , Long> counter : getCounters().entrySet()) {
+                generator.writeNumberField(counter.getKey() , counter.getValue());
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.close();
+        }
+        Replace(temp , file);
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format, e.g. for
+     * the node exporter's textfile collector. The job is labeled as job_id,
+     * since Prometheus sets the label job to the name of the scrape job. The
+     * file is replaced once written, so the collector never reads it
+     * partially written.
+     * @param file
+     * @throws IOException
+     */
+    public void WritePrometheus(File file) throws IOException {
+
+        String jobLabel = "job_id=\"" + Escape(job) + "\"";
+        List<PhaseMetric> recorded = getRecordedPhases();
+
+        File temp = getTempFile(file);
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(temp) , StandardCharsets.UTF_8))) {
+
+            Header(writer , "duration_seconds" , "gauge" , "Runtime of the job.");
+            Sample(writer , "duration_seconds" , jobLabel , getRuntime() / 1000.0);
+
+            Header(writer , "phase_duration_seconds" , "histogram" , "Durations recorded per phase.");
+            for (PhaseMetric metric : recorded) {
+                String labels = jobLabel + ",phase=\"" + Escape(metric.getPhase()) + "\"";
+                long cumulated = 0;
+                long[] bucketCounts = metric.getBucketCounts();
+                for (int i = 0; i < bucketCounts.length; i++) {
+                    cumulated += bucketCounts[i];
+                    Sample(writer , "phase_duration_seconds_bucket" , labels + ",le=\"" + FormatBound(PhaseMetric.buckets[i]) + "\"" , cumulated);
+                }
+                Sample(writer , "phase_duration_seconds_bucket" , labels + ",le=\"+Inf\"" , metric.getCount());
+                Sample(writer , "phase_duration_seconds_sum" , labels , metric.getTotalSeconds());
+                Sample(writer , "phase_duration_seconds_count" , labels , metric.getCount());
+            }
+
+            Header(writer , "phase_wall_seconds" , "gauge" , "Wall-clock span of each phase.");
+            for (PhaseMetric metric : recorded) {
+                Sample(writer , "phase_wall_seconds" , jobLabel + ",phase=\"" + Escape(metric.getPhase()) + "\"" , metric.getWallSeconds());
+            }
+
+            Header(writer , "phase_bytes_total" , "counter" , "Bytes processed per phase.");
+            for (PhaseMetric metric : recorded) {
+                Sample(writer , "phase_bytes_total" , jobLabel + ",phase=\"" + Escape(metric.getPhase()) + "\"" , metric.getBytes());
+            }
+
+            Header(writer , "phase_throughput_bytes_per_second" , "gauge" , "Bytes processed per second of wall-clock time.");
+            for (PhaseMetric metric : recorded) {
+                Sample(writer , "phase_throughput_bytes_per_second" , jobLabel + ",phase=\"" + Escape(metric.getPhase()) + "\"" , metric.getThroughput());
+            }
+
+            Header(writer , "shard_duration_seconds_total" , "counter" , "Durations recorded per phase and shard.");
+            for (PhaseMetric metric : recorded) {
+                for (Map.Entry<Integer , long[]> shard : metric.getShards().entrySet()) {
+                    Sample(writer , "shard_duration_seconds_total" , jobLabel + ",phase=\"" + Escape(metric.getPhase()) + "\",shard=\""
+                                                                    + (shard.getKey() + 1) + "\"" , shard.getValue()[1] / 1e9);
+                }
+            }
+
+            Header(writer , "shard_bytes_total" , "counter" , "Bytes processed per phase and shard.");
+            for (PhaseMetric metric : recorded) {
+                for (Map.Entry<Integer , long[]> shard : metric.getShards().entrySet()) {
+                    Sample(writer , "shard_bytes_total" , jobLabel + ",phase=\"" + Escape(metric.getPhase()) + "\",shard=\""
+                                                         + (shard.getKey() + 1) + "\"" , shard.getValue()[2]);
+                }
+            }
+
+            Header(writer , "events_total" , "counter" , "Events counted during the job, e.g. attempts and retries.");
+            for (Map.Entry<String , Long> counter : getCounters().entrySet()) {
+                Sample(writer , "events_total" , jobLabel + ",event=\"" + Escape(counter.getKey()) + "\"" , counter.getValue());
+            }
+            if (writer.checkError()) {
+                throw new IOException("Could not write '" + temp + "'.");
+            }
+        }
+        Replace(temp , file);
+    }
+
+    /**
+     * Gets the temporary file a file is written to before replacing it. Its
+     * extension keeps the textfile collector from reading it.
+     */
+    private static File getTempFile(File file) {
+        return new File(file.getAbsoluteFile().getParentFile() , file.getName() + ".tmp");
+    }
+
+    /**
+     * Replaces a file by a completely written temporary file.
+     */
+    private static void Replace(File temp, File file) throws IOException {
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Could not replace '" + file + "'.");
+            }
+        }
+    }
+
+    private static void Header(PrintWriter writer, String name, String type, String help) {
+        writer.println("# HELP " + prefix + name + " " + help);
+        writer.println("# TYPE " + prefix + name + " " + type);
+    }
+
+    private static void Sample(PrintWriter writer, String name, String labels, double value) {
+        writer.println(prefix + name + "{" + labels + "} " + FormatBound(value));
+    }
+
+    /**
+     * Formats a number without exponent or trailing zeros.
+     */
+    private static String FormatBound(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return String.format(Locale.ROOT , "%.6f" , value).replaceAll("0+$" , "");
+    }
+
+    /**
+     * Escapes a label value.
+     */
+    private static String Escape(String value) {
+        return value.replace("\\" , "\\\\").replace("\"" , "\\\"").replace("\n" , "\\n");
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder summary = new StringBuilder();
+        for (PhaseMetric metric : phases.values()) {
+            if (metric.getCount() > 0) {
+                summary.append(summary.length() > 0 ? "\n" : "").append(metric);
+            }
+        }
+        return summary.toString();
+    }
+}
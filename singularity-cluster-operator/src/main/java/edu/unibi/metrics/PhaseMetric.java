@@ -0,0 +1,133 @@
+package edu.unibi.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Durations and bytes recorded for one phase of a job, e.g. the upload of
+ * all shards. Keeps a histogram of the recorded durations and the totals of
+ * each shard. Throughput is computed over the wall-clock span between the
+ * start of the first and the end of the last recording, so phases running
+ * concurrently for many shards are not undercounted.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class PhaseMetric
+{
+    /** Upper bounds of the duration histogram's buckets in seconds. */
+    public static final double[] buckets = new double[]{ 0.1 , 0.5 , 1 , 5 , 10 , 30 , 60 , 300 , 600 , 1800 , 3600 };
+
+    private final String phase;
+    private final long[] bucketCounts = new long[buckets.length];
+    private final Map<Integer , long[]> shards = new TreeMap();
+
+    private long count = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+    private long bytes = 0;
+    private long firstStart = Long.MAX_VALUE;
+    private long lastEnd = Long.MIN_VALUE;
+
+    /**
+     * Constructor.
+     * @param name name of the phase
+     */
+    public PhaseMetric(String name) {
+        phase = name;
+    }
+
+    /**
+     * Records a single duration.
+     * @param startNanos start, as of System.nanoTime()
+     * @param endNanos end, as of System.nanoTime()
+     * @param byteCount bytes processed, 0 if not applicable
+     * @param shard number of the shard, negative if not shard specific
+     */
+    public synchronized void Record(long startNanos, long endNanos, long byteCount, int shard) {
+
+        long nanos = Math.max(endNanos - startNanos , 0);
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos , nanos);
+        bytes += byteCount;
+        firstStart = Math.min(firstStart , startNanos);
+        lastEnd = Math.max(lastEnd , endNanos);
+
+        double seconds = nanos / 1e9;
+        for (int i = 0; i < buckets.length; i++) {
+            if (seconds <= buckets[i]) {
+                bucketCounts[i]++;
+                break;
+            }
+        }
+
+        if (shard >= 0) {
+            long[] totals = shards.computeIfAbsent(shard , ( Integer key ) -> new long[3]);
+            totals[0]++;
+            totals[1] += nanos;
+            totals[2] += byteCount;
+        }
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getTotalSeconds() {
+        return totalNanos / 1e9;
+    }
+
+    public synchronized double getMaxSeconds() {
+        return maxNanos / 1e9;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the wall-clock time between the start of the first and the end
+     * of the last recording.
+     * @return
+     */
+    public synchronized double getWallSeconds() {
+        return count > 0 ? (lastEnd - firstStart) / 1e9 : 0;
+    }
+
+    /**
+     * Gets the bytes processed per second of wall-clock time.
+     * @return
+     */
+    public synchronized double getThroughput() {
+        double wall = getWallSeconds();
+        return wall > 0 ? bytes / wall : 0;
+    }
+
+    /**
+     * Gets the number of recordings within each bucket, not cumulated. The
+     * remainder of the count exceeds the last bucket.
+     * @return
+     */
+    public synchronized long[] getBucketCounts() {
+        return bucketCounts.clone();
+    }
+
+    /**
+     * Gets the count, total nanoseconds and bytes recorded per shard.
+     * @return
+     */
+    public synchronized Map<Integer , long[]> getShards() {
+        Map<Integer , long[]> copy = new TreeMap();
+        shards.forEach(( Integer shard , long[] totals ) -> copy.put(shard , totals.clone()));
+        return copy;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: %d, total %.1f s, max %.1f s, wall %.1f s, %.1f MB, %.1f MB/s" , phase , count ,
+                             getTotalSeconds() , getMaxSeconds() , getWallSeconds() , bytes / 1048576.0 , getThroughput() / 1048576.0);
+    }
+}
@@ -130,6 +130,64 @@ public final class PropertiesController
         return properties.getProperty(key);
     }
     
+    /**
+     * Gets the integer value for a given key within the Properties structure.
+     * @param key
+     * @param defaultValue value used if the key is missing, not a number or
+     * out of the range of an integer
+     * @return the corresponding value.
+     */
+    public int getInt(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            Logger.log("Properties: Invalid value '" + value + "' for '" + key + "'. Using " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Gets the long value for a given key within the Properties structure.
+     * @param key
+     * @param defaultValue value used if the key is missing or not a number
+     * @return the corresponding value.
+     */
+    public long getLong(String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            Logger.log("Properties: Invalid value '" + value + "' for '" + key + "'. Using " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Gets the double value for a given key within the Properties structure.
+     * @param key
+     * @param defaultValue value used if the key is missing or not a number
+     * @return the corresponding value.
+     */
+    public double getDouble(String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException ex) {
+            Logger.log("Properties: Invalid value '" + value + "' for '" + key + "'. Using " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+    
     /**
      * Gets the temporary properties file.
      * @return 
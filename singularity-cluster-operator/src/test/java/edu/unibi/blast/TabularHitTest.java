@@ -0,0 +1,72 @@
+package edu.unibi.blast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests parsing and ordering hits of BLAST tabular outputs.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class TabularHitTest
+{
+    static String Line(String query, String subject, String evalue, String bitScore) {
+        return query + "\t" + subject + "\t98.50\t200\t3\t0\t1\t200\t11\t210\t" + evalue + "\t" + bitScore;
+    }
+
+    @Test
+    public void testParse() {
+        String line = Line("query-1" , "subject-1" , "2e-50" , "180.3");
+        TabularHit hit = TabularHit.Parse(line);
+
+        assertEquals(line , hit.getLine());
+        assertEquals("query-1" , hit.getQuery());
+        assertTrue(hit.hasEvalue());
+        assertEquals(2e-50 , hit.getEvalue() , 0);
+        assertEquals(180.3 , hit.getBitScore() , 0);
+    }
+
+    @Test
+    public void testParseWithoutEvalue() {
+        TabularHit hit = TabularHit.Parse("query-1\tsubject-1\t98.50");
+
+        assertEquals("query-1" , hit.getQuery());
+        assertFalse(hit.hasEvalue());
+        assertEquals(Double.POSITIVE_INFINITY , hit.getEvalue() , 0);
+        assertEquals(Double.NEGATIVE_INFINITY , hit.getBitScore() , 0);
+    }
+
+    @Test
+    public void testParseInvalidColumns() {
+        TabularHit hit = TabularHit.Parse(Line("query-1" , "subject-1" , "n/a" , "high"));
+
+        assertFalse(hit.hasEvalue());
+        assertEquals(Double.NEGATIVE_INFINITY , hit.getBitScore() , 0);
+    }
+
+    @Test
+    public void testParseQueryOnly() {
+        TabularHit hit = TabularHit.Parse("query-1");
+
+        assertEquals("query-1" , hit.getQuery());
+        assertFalse(hit.hasEvalue());
+    }
+
+    @Test
+    public void testOrder() {
+        TabularHit withoutEvalue = TabularHit.Parse("query-1\tsubject-4");
+        TabularHit worse = TabularHit.Parse(Line("query-1" , "subject-3" , "1e-5" , "50.0"));
+        TabularHit lowerScore = TabularHit.Parse(Line("query-1" , "subject-2" , "1e-20" , "80.0"));
+        TabularHit best = TabularHit.Parse(Line("query-1" , "subject-1" , "1e-20" , "90.0"));
+        TabularHit otherQuery = TabularHit.Parse(Line("query-0" , "subject-1" , "1" , "10.0"));
+
+        List<TabularHit> hits = new ArrayList(Arrays.asList(withoutEvalue , worse , lowerScore , best , otherQuery));
+        hits.sort(TabularHit.ORDER);
+
+        assertEquals(Arrays.asList(otherQuery , best , lowerScore , worse , withoutEvalue) , hits);
+    }
+}
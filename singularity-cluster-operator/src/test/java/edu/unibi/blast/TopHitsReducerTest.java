@@ -0,0 +1,140 @@
+package edu.unibi.blast;
+
+import static edu.unibi.blast.TabularHitTest.Line;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests sorting, merging and cutting off hits of BLAST tabular outputs.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class TopHitsReducerTest
+{
+    @Test
+    public void testMergeOutputs() throws Exception {
+        File target = CreateFile();
+        TopHitsReducer reducer = new TopHitsReducer(target , 0 , Double.MAX_VALUE , 0);
+        reducer.Reduce(CreateFile(Line("query-2" , "subject-1" , "1e-10" , "60.0") ,
+                                  Line("query-1" , "subject-2" , "1e-5" , "40.0")) , 0);
+        reducer.Reduce(CreateFile(Line("query-1" , "subject-1" , "1e-30" , "99.0") ,
+                                  "" ,
+                                  Line("query-2" , "subject-2" , "1e-12" , "70.0")) , 1);
+        reducer.close();
+
+        assertEquals(Arrays.asList(Line("query-1" , "subject-1" , "1e-30" , "99.0") ,
+                                   Line("query-1" , "subject-2" , "1e-5" , "40.0") ,
+                                   Line("query-2" , "subject-2" , "1e-12" , "70.0") ,
+                                   Line("query-2" , "subject-1" , "1e-10" , "60.0")) , Read(target));
+        assertEquals(4 , reducer.getHits());
+        assertEquals(4 , reducer.getKept());
+    }
+
+    /**
+     * Every output is sorted into a run of its own, so the top hits of a
+     * query spread across outputs are only cut off when merging the runs.
+     */
+    @Test
+    public void testTopHitsAcrossRuns() throws Exception {
+        File target = CreateFile();
+        TopHitsReducer reducer = new TopHitsReducer(target , 2 , Double.MAX_VALUE , 0);
+        reducer.Reduce(CreateFile(Line("query-1" , "subject-3" , "1e-3" , "30.0") ,
+                                  Line("query-1" , "subject-1" , "1e-9" , "90.0")) , 0);
+        reducer.Reduce(CreateFile(Line("query-1" , "subject-2" , "1e-6" , "60.0") ,
+                                  Line("query-2" , "subject-1" , "1e-4" , "40.0")) , 1);
+        reducer.Reduce(CreateFile(Line("query-1" , "subject-4" , "1e-1" , "10.0")) , 2);
+        reducer.close();
+
+        assertEquals(Arrays.asList(Line("query-1" , "subject-1" , "1e-9" , "90.0") ,
+                                   Line("query-1" , "subject-2" , "1e-6" , "60.0") ,
+                                   Line("query-2" , "subject-1" , "1e-4" , "40.0")) , Read(target));
+        assertEquals(5 , reducer.getHits());
+        assertEquals(3 , reducer.getKept());
+    }
+
+    /**
+     * An output exceeding the memory budget is spilled into several runs.
+     */
+    @Test
+    public void testTopHitsAcrossSpilledRuns() throws Exception {
+        String[] lines = new String[20000];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = Line("query-1" , "subject-" + i , "0.0" , Integer.toString(i));
+        }
+        File target = CreateFile();
+        TopHitsReducer reducer = new TopHitsReducer(target , 2 , Double.MAX_VALUE , 0);
+        reducer.Reduce(CreateFile(lines) , 0);
+        reducer.close();
+
+        assertEquals(Arrays.asList(lines[19999] , lines[19998]) , Read(target));
+        assertEquals(20000 , reducer.getHits());
+    }
+
+    /**
+     * More outputs than the maximum fan-in are merged in an intermediate
+     * pass first, which must not cut off hits of the final result.
+     */
+    @Test
+    public void testTopHitsAcrossMergePasses() throws Exception {
+        int outputs = 300;
+        File target = CreateFile();
+        TopHitsReducer reducer = new TopHitsReducer(target , 3 , Double.MAX_VALUE , 0);
+        for (int i = outputs; i > 0; i--) {
+            reducer.Reduce(CreateFile(Line("query-1" , "subject-" + i , "1e-" + i , Integer.toString(i)) ,
+                                      Line("query-2" , "subject-" + i , "1e-" + (outputs - i + 1) , "1")) , i);
+        }
+        reducer.close();
+
+        assertEquals(Arrays.asList(Line("query-1" , "subject-300" , "1e-300" , "300") ,
+                                   Line("query-1" , "subject-299" , "1e-299" , "299") ,
+                                   Line("query-1" , "subject-298" , "1e-298" , "298") ,
+                                   Line("query-2" , "subject-1" , "1e-300" , "1") ,
+                                   Line("query-2" , "subject-2" , "1e-299" , "1") ,
+                                   Line("query-2" , "subject-3" , "1e-298" , "1")) , Read(target));
+        assertEquals(2 * outputs , reducer.getHits());
+    }
+
+    @Test
+    public void testEvalueCutoff() throws Exception {
+        File target = CreateFile();
+        TopHitsReducer reducer = new TopHitsReducer(target , 0 , 1e-5 , 0);
+        reducer.Reduce(CreateFile(Line("query-1" , "subject-1" , "1e-3" , "30.0") ,
+                                  "query-1\tsubject-2" ,
+                                  Line("query-1" , "subject-3" , "1e-5" , "50.0") ,
+                                  Line("query-1" , "subject-4" , "1e-8" , "80.0")) , 0);
+        reducer.close();
+
+        // Hits without e-value are kept regardless of the cutoff
+        assertEquals(Arrays.asList(Line("query-1" , "subject-4" , "1e-8" , "80.0") ,
+                                   Line("query-1" , "subject-3" , "1e-5" , "50.0") ,
+                                   "query-1\tsubject-2") , Read(target));
+    }
+
+    @Test
+    public void testEmptyOutputs() throws Exception {
+        File target = CreateFile("stale");
+        TopHitsReducer reducer = new TopHitsReducer(target , 5 , Double.MAX_VALUE , 0);
+        reducer.Reduce(CreateFile() , 0);
+        reducer.Reduce(CreateFile("") , 1);
+        reducer.close();
+
+        assertEquals(0 , target.length());
+        assertEquals(0 , reducer.getKept());
+    }
+
+    static File CreateFile(String... lines) throws IOException {
+        File file = File.createTempFile("top-hits-test" , null);
+        file.deleteOnExit();
+        Files.write(file.toPath() , Arrays.asList(lines) , StandardCharsets.UTF_8);
+        return file;
+    }
+
+    static List<String> Read(File file) throws IOException {
+        return Files.readAllLines(file.toPath() , StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,78 @@
+package edu.unibi.cluster.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests appending outputs to the target file.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class ConcatReducerTest
+{
+    @Test
+    public void testAppend() throws Exception {
+        File target = CreateFile("");
+        ConcatReducer reducer = new ConcatReducer(target);
+        reducer.Reduce(CreateFile("a\tb\nc\td\n") , 0);
+        reducer.Reduce(CreateFile("e\tf\n") , 1);
+        reducer.close();
+
+        assertEquals("a\tb\nc\td\ne\tf\n" , Read(target));
+        assertEquals(12 , reducer.getBytes());
+        assertEquals(2 , reducer.getFiles());
+    }
+
+    /**
+     * The last line of an output without trailing newline must not be
+     * joined with the first line of the next output.
+     */
+    @Test
+    public void testMissingTrailingNewline() throws Exception {
+        File target = CreateFile("");
+        ConcatReducer reducer = new ConcatReducer(target);
+        reducer.Reduce(CreateFile("a\tb\nc\td") , 0);
+        reducer.Reduce(CreateFile("e\tf") , 1);
+        reducer.close();
+
+        assertEquals("a\tb\nc\td\ne\tf\n" , Read(target));
+        assertEquals(12 , reducer.getBytes());
+    }
+
+    @Test
+    public void testEmptyOutputs() throws Exception {
+        File target = CreateFile("");
+        ConcatReducer reducer = new ConcatReducer(target);
+        reducer.Reduce(CreateFile("") , 0);
+        reducer.Reduce(CreateFile("a\tb\n") , 1);
+        reducer.Reduce(CreateFile("") , 2);
+        reducer.close();
+
+        assertEquals("a\tb\n" , Read(target));
+        assertEquals(3 , reducer.getFiles());
+    }
+
+    @Test
+    public void testTruncatesTarget() throws Exception {
+        File target = CreateFile("stale result\n");
+        ConcatReducer reducer = new ConcatReducer(target);
+        reducer.Reduce(CreateFile("a\tb\n") , 0);
+        reducer.close();
+
+        assertEquals("a\tb\n" , Read(target));
+    }
+
+    static File CreateFile(String content) throws IOException {
+        File file = File.createTempFile("concat-test" , null);
+        file.deleteOnExit();
+        Files.write(file.toPath() , content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    static String Read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()) , StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,108 @@
+package edu.unibi.codec;
+
+import edu.unibi.properties.PropertiesController;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests selecting codecs and compressing files through them.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class CodecsTest
+{
+    @Test
+    public void testGet() throws Exception {
+        assertSame(Codecs.NONE , Codecs.Get(CreateProperties(null , null)));
+        assertSame(Codecs.NONE , Codecs.Get(CreateProperties("none" , null)));
+        assertSame(Codecs.NONE , Codecs.Get(CreateProperties("zip" , null)));
+
+        ICodec codec = Codecs.Get(CreateProperties("gzip" , "6"));
+        assertEquals("gzip" , codec.getName());
+        assertEquals("gzip -6 -c" , codec.getCompressCommand());
+    }
+
+    @Test
+    public void testGzipLevelBounds() {
+        assertEquals("gzip -1 -c" , new GzipCodec(0).getCompressCommand());
+        assertEquals("gzip -9 -c" , new GzipCodec(12).getCompressCommand());
+    }
+
+    @Test
+    public void testGzipRoundTrip() throws Exception {
+        byte[] content = CreateContent();
+        File source = CreateFile(content);
+        File compressed = CreateFile(new byte[0]);
+        File decompressed = CreateFile(new byte[0]);
+
+        ICodec codec = new GzipCodec(1);
+        Codecs.Compress(codec , source , compressed);
+        Codecs.Decompress(codec , Files.newInputStream(compressed.toPath()) , decompressed);
+
+        assertTrue(compressed.length() < content.length / 4);
+        assertArrayEquals(content , Files.readAllBytes(decompressed.toPath()));
+    }
+
+    @Test
+    public void testGzipEmptyFile() throws Exception {
+        File compressed = CreateFile(new byte[0]);
+        File decompressed = CreateFile(new byte[]{1});
+
+        ICodec codec = new GzipCodec(1);
+        Codecs.Compress(codec , CreateFile(new byte[0]) , compressed);
+        Codecs.Decompress(codec , Files.newInputStream(compressed.toPath()) , decompressed);
+
+        assertEquals(0 , decompressed.length());
+    }
+
+    @Test
+    public void testIdentity() throws Exception {
+        byte[] content = CreateContent();
+        File compressed = CreateFile(new byte[0]);
+        File decompressed = CreateFile(new byte[0]);
+
+        Codecs.Compress(Codecs.NONE , CreateFile(content) , compressed);
+        Codecs.Decompress(Codecs.NONE , new ByteArrayInputStream(Files.readAllBytes(compressed.toPath())) , decompressed);
+
+        assertArrayEquals(content , Files.readAllBytes(compressed.toPath()));
+        assertArrayEquals(content , Files.readAllBytes(decompressed.toPath()));
+    }
+
+    /**
+     * Creates tabular output spanning several buffers of the codecs.
+     */
+    static byte[] CreateContent() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append("query-").append(i / 10).append("\tsubject-").append(i).append("\t98.50\t200\t3\t0\t1\t200\t11\t210\t1e-")
+                   .append(i % 180).append('\t').append(i % 500).append(".0\n");
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static File CreateFile(byte[] content) throws IOException {
+        File file = File.createTempFile("codecs-test" , null);
+        file.deleteOnExit();
+        Files.write(file.toPath() , content);
+        return file;
+    }
+
+    /**
+     * Creates properties with the given compression, missing if null.
+     */
+    static PropertiesController CreateProperties(String compression, String level) throws IOException {
+        File file = File.createTempFile("codecs-test" , ".properties");
+        file.deleteOnExit();
+        PropertiesController properties = new PropertiesController(file);
+        properties.put("compression" , compression);
+        properties.put("compression-level" , level);
+        return properties;
+    }
+}
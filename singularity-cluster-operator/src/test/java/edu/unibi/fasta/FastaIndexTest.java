@@ -0,0 +1,85 @@
+package edu.unibi.fasta;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests indexing the FASTA fixtures, sequentially and in parallel chunks.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class FastaIndexTest
+{
+    private static final long[] recordOffsets = {0 , 80 , 109 , 312};
+    private static final int[] recordResidues = {53 , 3 , 174 , 6};
+
+    static File Fixture(String name) throws URISyntaxException {
+        return new File(FastaIndexTest.class.getResource(name).toURI());
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        FastaIndex index = FastaIndex.Scan(Fixture("records.fasta"));
+
+        assertEquals(347 , index.getSourceLength());
+        assertArrayEquals(recordOffsets , getOffsets(index));
+        assertArrayEquals(recordResidues , getResidues(index));
+        assertEquals(80 , index.getLength(0));
+        assertEquals(35 , index.getLength(3));
+    }
+
+    /**
+     * With more threads than lines, chunk bounds fall within the sequences of
+     * all records, whose residues then have to be merged across chunks.
+     */
+    @Test
+    public void testBuildAcrossChunkBoundaries() throws Exception {
+        File file = Fixture("records.fasta");
+        for (int threads = 1; threads <= 32; threads++) {
+            FastaIndex index = FastaIndex.Build(file , threads);
+            assertArrayEquals("threads: " + threads , recordOffsets , getOffsets(index));
+            assertArrayEquals("threads: " + threads , recordResidues , getResidues(index));
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        File file = Fixture("empty.fasta");
+        assertEquals(0 , FastaIndex.Scan(file).getRecords());
+        assertEquals(0 , FastaIndex.Build(file , 4).getRecords());
+    }
+
+    @Test
+    public void testHeadersWithoutSequence() throws Exception {
+        File file = Fixture("headers.fasta");
+        long[] offsets = {0 , 24 , 41 , 65};
+        int[] residues = {0 , 6 , 0 , 0};
+
+        FastaIndex scanned = FastaIndex.Scan(file);
+        assertArrayEquals(offsets , getOffsets(scanned));
+        assertArrayEquals(residues , getResidues(scanned));
+        assertEquals(33 , scanned.getLength(3));
+
+        FastaIndex built = FastaIndex.Build(file , 8);
+        assertArrayEquals(offsets , getOffsets(built));
+        assertArrayEquals(residues , getResidues(built));
+    }
+
+    static long[] getOffsets(FastaIndex index) {
+        long[] offsets = new long[index.getRecords()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = index.getOffset(i);
+        }
+        return offsets;
+    }
+
+    static int[] getResidues(FastaIndex index) {
+        int[] residues = new int[index.getRecords()];
+        for (int i = 0; i < residues.length; i++) {
+            residues[i] = index.getResidues(i);
+        }
+        return residues;
+    }
+}
@@ -0,0 +1,71 @@
+package edu.unibi.fasta;
+
+import static edu.unibi.fasta.FastaIndexTest.Fixture;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests planning shards of the FASTA fixtures.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class ShardPlanTest
+{
+    @Test
+    public void testBalance() throws Exception {
+        FastaIndex index = FastaIndex.Scan(Fixture("records.fasta"));
+        ShardPlan plan = ShardPlan.Balance(index , 2);
+
+        // The longest record is heavier than all others together
+        assertEquals(2 , plan.getShards());
+        assertEquals(4 , plan.getRecords());
+        assertEquals(1 , plan.getRecords(plan.getShard(2)));
+        assertEquals(174 , plan.getWeight(plan.getShard(2)));
+        assertEquals(62 , plan.getWeight(1 - plan.getShard(2)));
+    }
+
+    @Test
+    public void testBalanceSpreadsEmptyRecords() throws Exception {
+        FastaIndex index = FastaIndex.Scan(Fixture("headers.fasta"));
+        ShardPlan plan = ShardPlan.Balance(index , 4);
+
+        for (int shard = 0; shard < 4; shard++) {
+            assertEquals(1 , plan.getRecords(shard));
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        FastaIndex index = FastaIndex.Scan(Fixture("empty.fasta"));
+        ShardPlan balanced = ShardPlan.Balance(index , 3);
+        ShardPlan contiguous = ShardPlan.Contiguous(index , 3);
+
+        assertEquals(0 , balanced.getRecords());
+        assertEquals(3 , balanced.getShards());
+        assertEquals(1 , balanced.getImbalance() , 0);
+        assertEquals(0 , contiguous.getRecords());
+    }
+
+    @Test
+    public void testContiguous() throws Exception {
+        FastaIndex index = FastaIndex.Scan(Fixture("records.fasta"));
+        ShardPlan plan = ShardPlan.Contiguous(index , 2);
+
+        int previous = 0;
+        for (int i = 0; i < plan.getRecords(); i++) {
+            assertTrue(plan.getShard(i) >= previous);
+            previous = plan.getShard(i);
+        }
+        assertEquals(1 , previous);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBalanceWithoutShards() throws Exception {
+        ShardPlan.Balance(FastaIndex.Scan(Fixture("records.fasta")) , 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testContiguousWithoutShards() throws Exception {
+        ShardPlan.Contiguous(FastaIndex.Scan(Fixture("records.fasta")) , 0);
+    }
+}
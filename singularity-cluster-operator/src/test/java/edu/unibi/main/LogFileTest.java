@@ -0,0 +1,47 @@
+package edu.unibi.main;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests counting and rotating log files by their size in bytes.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class LogFileTest
+{
+    @Test
+    public void testEncodedLength() {
+        for (String text : new String[]{"" , "query-1" , "Gr\u00f6\u00dfe" , "\u914d\u5217" , "\uD83E\uDDEC dna" , "a\uD800b" , "\uDC00"}) {
+            assertEquals(text , text.getBytes(StandardCharsets.UTF_8).length , LogFile.getEncodedLength(text));
+        }
+    }
+
+    /**
+     * Files must not exceed the maximum size with messages taking more
+     * bytes than characters.
+     */
+    @Test
+    public void testRotateNonAscii() throws Exception {
+        File directory = Files.createTempDirectory("log-file-test").toFile();
+        directory.deleteOnExit();
+        File file = new File(directory , "operator.log");
+        long maxSize = 400;
+        LogFile log = new LogFile(file , maxSize , 2);
+        try {
+            for (int i = 0; i < 20; i++) {
+                log.Write(System.currentTimeMillis() , "Gr\u00f6\u00dfe f\u00fcr Sequenz " + i + " \u00fcberschritten");
+                log.Flush();
+                assertTrue(file.length() <= maxSize);
+            }
+        } finally {
+            log.close();
+            new File(file.getPath() + ".1").deleteOnExit();
+            file.deleteOnExit();
+        }
+        assertTrue(new File(file.getPath() + ".1").length() <= maxSize);
+    }
+}
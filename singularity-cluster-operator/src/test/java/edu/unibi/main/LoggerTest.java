@@ -0,0 +1,130 @@
+package edu.unibi.main;
+
+import edu.unibi.properties.PropertiesController;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the Logger's delivery to the sink. The Logger is static, so all
+ * tests share its sink, which passes messages on to the current test.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class LoggerTest
+{
+    private static final int producers = 4;
+    private static final int messages = 2000;
+    private static final String prefix = "LoggerTest producer ";
+
+    private static volatile Consumer<List<String>> delegate = null;
+
+    @Before
+    public void setUp() throws Exception {
+        File properties = File.createTempFile("logger-test" , ".properties");
+        properties.deleteOnExit();
+        PropertiesController controller = new PropertiesController(properties);
+        controller.put("log-file" , "no");
+        Logger.configure(controller);
+        Logger.initialize(( List<String> batch ) -> {
+            Consumer<List<String>> consumer = delegate;
+            if (consumer != null) {
+                consumer.accept(batch);
+            }
+        });
+    }
+
+    @Test(timeout = 60000)
+    public void testMultipleProducers() throws Exception {
+
+        ConcurrentLinkedQueue<String> received = new ConcurrentLinkedQueue();
+        delegate = received::addAll;
+
+        List<Thread> threads = new ArrayList();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < messages; i++) {
+                    Logger.log("LoggerTest producer " + producer + ":" + i);
+                }
+            } , "producer-" + p);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Flushing drains the buffer, the sink is passed the rest within a frame
+        Logger.flush();
+        assertTrue(Logger.buffer.getClaimed() >= producers * messages);
+        assertFalse(Logger.buffer.isReadable());
+        while (count(received) < producers * messages) {
+            Thread.sleep(10);
+        }
+
+        int[] next = new int[producers];
+        for (String message : received) {
+            if (message.startsWith(prefix)) {
+                int separator = message.indexOf(':');
+                int producer = Integer.parseInt(message.substring(prefix.length() , separator));
+                assertEquals(next[producer]++ , Integer.parseInt(message.substring(separator + 1)));
+            }
+        }
+        for (int p = 0; p < producers; p++) {
+            assertEquals(messages , next[p]);
+        }
+        delegate = null;
+    }
+
+    /**
+     * A sink logging more messages than the buffer holds must not block the
+     * writer thread, which is the only one draining the buffer.
+     */
+    @Test(timeout = 60000)
+    public void testSinkLoggingWhileFull() throws Exception {
+
+        ConcurrentLinkedQueue<String> received = new ConcurrentLinkedQueue();
+        boolean[] logged = new boolean[1];
+        delegate = ( List<String> batch ) -> {
+            received.addAll(batch);
+            if (!logged[0]) {
+                logged[0] = true;
+                for (int i = 0; i < 20000; i++) {
+                    Logger.log("LoggerTest sink " + i);
+                }
+                Logger.flush();
+            }
+        };
+
+        Logger.log("LoggerTest before");
+        Logger.flush();
+        while (!logged[0]) {
+            Thread.sleep(10);
+        }
+
+        // The writer keeps draining messages logged afterwards
+        Logger.log("LoggerTest after");
+        Logger.flush();
+        while (!received.contains("LoggerTest after")) {
+            Thread.sleep(10);
+        }
+        delegate = null;
+    }
+
+    private static int count(ConcurrentLinkedQueue<String> received) {
+        int count = 0;
+        for (String message : received) {
+            if (message.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
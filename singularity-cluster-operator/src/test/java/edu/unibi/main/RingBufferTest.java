@@ -0,0 +1,80 @@
+package edu.unibi.main;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the RingBuffer with several producers and a single reader.
+ * @author Philo Reipke, University Bielefeld
+ */
+public class RingBufferTest
+{
+    private static final int producers = 4;
+    private static final int messages = 100000;
+
+    /**
+     * Producers outnumber the slots of a small buffer by far, so they
+     * repeatedly wait for the reader.
+     */
+    @Test(timeout = 60000)
+    public void testMultipleProducers() throws Exception {
+
+        RingBuffer buffer = new RingBuffer(64);
+        List<Thread> threads = new ArrayList();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < messages; i++) {
+                    buffer.Put(producer + ":" + i , producer);
+                }
+            } , "producer-" + p);
+            thread.start();
+            threads.add(thread);
+        }
+
+        // Every producer's messages have to arrive completely and in order
+        int[] next = new int[producers];
+        int[] read = new int[1];
+        while (read[0] < producers * messages) {
+            read[0] += buffer.Drain(( String message , long time ) -> {
+                int producer = Integer.parseInt(message.substring(0 , message.indexOf(':')));
+                assertEquals(producer , time);
+                assertEquals(next[producer]++ , Integer.parseInt(message.substring(message.indexOf(':') + 1)));
+            } , 64);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int p = 0; p < producers; p++) {
+            assertEquals(messages , next[p]);
+        }
+        assertFalse(buffer.isReadable());
+        assertEquals(producers * messages , buffer.getClaimed());
+    }
+
+    @Test
+    public void testOffer() {
+
+        RingBuffer buffer = new RingBuffer(3);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.Offer("message " + i , i));
+        }
+        assertFalse(buffer.Offer("message 4" , 4));
+
+        List<String> read = new ArrayList();
+        assertEquals(2 , buffer.Drain(( String message , long time ) -> read.add(message) , 2));
+        assertTrue(buffer.Offer("message 4" , 4));
+        assertEquals(3 , buffer.Drain(( String message , long time ) -> read.add(message) , 8));
+
+        assertEquals(5 , read.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("message " + i , read.get(i));
+        }
+        assertEquals(5 , buffer.getClaimed());
+    }
+}